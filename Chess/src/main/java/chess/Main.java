@@ -1,15 +1,107 @@
 package chess;
 
+import chess.domain.EndgameGenerator;
+import chess.domain.GameState;
 import chess.gui.UserInterface;
+import chess.testing.EpdSuite;
+import chess.testing.MoveGenerationBenchmark;
+import chess.testing.Perft;
+import chess.testing.PositionBatch;
+import chess.testing.SmpBenchmark;
+import chess.util.Logger;
 import javax.swing.SwingUtilities;
 
 /**
- * Projektin pääluokka.
+ * Projektin pääluokka. Ilman komentoriviparametreja käynnistää graafisen käyttöliittymän.
+ * Komento "perft <syvyys> [säikeet]" ajaa perft-testin aloitustilanteesta konsolissa, komento
+ * "bench" siirtogeneraattorin mikrobenchmarkin ja komento "epd <tiedosto> [syvyys]" lukee
+ * EPD-tiedoston ja tarkistaa sen perft-tulokset annettuun syvyyteen asti. Komento
+ * "positions <määrä> <tiedosto> [siemenluku] [säikeet]" luo satunnaisia pelitilanteita
+ * tiedostoon ja komento "endgames <materiaali> <määrä> <tiedosto> [siemenluku] [säikeet]"
+ * samoin annetulla materiaalilla (esim. KRPvKR). Komento "smp <syvyys> [säikeet] [tilanteet]"
+ * mittaa rinnakkaishaun nopeutuksen eri säiemäärillä.
  */
 public class Main
 {
 	public static void main(String[] args)
 	{
-		SwingUtilities.invokeLater(new UserInterface());
+		if (args.length >= 2 && args[0].equals("perft"))
+			runPerft(args);
+		else if (args.length >= 1 && args[0].equals("bench"))
+			new MoveGenerationBenchmark(createConsoleLogger(), 2.0).run();
+		else if (args.length >= 2 && args[0].equals("epd"))
+			new EpdSuite(createConsoleLogger(), args[1],
+					args.length >= 3 ? Integer.parseInt(args[2]) : 0).run();
+		else if (args.length >= 3 && args[0].equals("positions"))
+			runPositionBatch(args);
+		else if (args.length >= 4 && args[0].equals("endgames"))
+			runEndgameBatch(args);
+		else if (args.length >= 2 && args[0].equals("smp"))
+			runSmpBenchmark(args);
+		else
+			SwingUtilities.invokeLater(new UserInterface());
+	}
+
+	/**
+	 * Ajaa perft-testin komentoriviparametrien mukaisesti.
+	 */
+	private static void runPerft(String[] args)
+	{
+		int depth = Integer.parseInt(args[1]);
+		int threads = args.length >= 3 ? Integer.parseInt(args[2])
+				: Runtime.getRuntime().availableProcessors();
+		new Perft(createConsoleLogger(), new GameState(), depth, threads, 1 << 22, true).run();
+	}
+
+	/**
+	 * Luo satunnaiset pelitilanteet komentoriviparametrien mukaisesti.
+	 */
+	private static void runPositionBatch(String[] args)
+	{
+		long count = Long.parseLong(args[1]);
+		long seed = args.length >= 4 ? Long.parseLong(args[3]) : 0;
+		int threads = args.length >= 5 ? Integer.parseInt(args[4])
+				: Runtime.getRuntime().availableProcessors();
+		new PositionBatch(createConsoleLogger(), seed, count, threads, args[2]).run();
+	}
+
+	/**
+	 * Luo annetun materiaalin mukaiset satunnaiset pelitilanteet komentoriviparametrien mukaisesti.
+	 */
+	private static void runEndgameBatch(String[] args)
+	{
+		EndgameGenerator endgames = new EndgameGenerator(args[1]);
+		long count = Long.parseLong(args[2]);
+		long seed = args.length >= 5 ? Long.parseLong(args[4]) : 0;
+		int threads = args.length >= 6 ? Integer.parseInt(args[5])
+				: Runtime.getRuntime().availableProcessors();
+		new PositionBatch(createConsoleLogger(), seed, count, threads, args[3], endgames).run();
+	}
+
+	/**
+	 * Ajaa rinnakkaishaun skaalautuvuustestin komentoriviparametrien mukaisesti.
+	 */
+	private static void runSmpBenchmark(String[] args)
+	{
+		int depth = Integer.parseInt(args[1]);
+		int threads = args.length >= 3 ? Integer.parseInt(args[2])
+				: Runtime.getRuntime().availableProcessors();
+		int positions = args.length >= 4 ? Integer.parseInt(args[3]) : 20;
+		new SmpBenchmark(createConsoleLogger(), depth, threads, positions).run();
+	}
+
+	/**
+	 * Luo loggerin, joka tulostaa viestit konsoliin.
+	 */
+	private static Logger createConsoleLogger()
+	{
+		return new Logger()
+		{
+			@Override
+			public void logMessage(String message)
+			{
+				System.out.println(message);
+			}
+		};
 	}
 }
@@ -3,14 +3,71 @@ package chess.ai;
 import chess.domain.GameGenerator;
 import chess.domain.GameState;
 import chess.domain.Pieces;
-import java.util.Random;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Luo satunnaisen pelitilanteen, joka on mahdollisimman tasapuolinen. Tilanteen arvioimiseen
  * käytetään MinMaxAI:ta.
+ *
+ * Ehdokkaat luodaan järjestysnumeroittain (ks. GameGenerator.createGame(long, long)), ja
+ * tuloksena on pienimmällä järjestysnumerolla hyväksytty ehdokas. Tulos riippuu siten vain
+ * siemenluvusta ja sallitusta epätasapainosta, vaikka ehdokkaita arvioitaisiin rinnakkain.
+ * Ehdokkaat, joiden quiescence-haun pistemäärä on selvästi liian suuri, hylätään ennen
+ * varsinaista hakua, paitsi jos vuorossa oleva pelaaja on shakissa. Hakuun käytettävät
+ * tekoälyoliot kierrätetään kutsujen välillä.
  */
 public final class BalancedGameGenerator
 {
+	/**
+	 * Arviointihaun syvyys.
+	 */
+	private static final int SEARCH_DEPTH = 5;
+
+	/**
+	 * Arviointihaun quiescence-haun syvyys.
+	 */
+	private static final int QUIESCENCE_SEARCH_DEPTH = 30;
+
+	/**
+	 * Arviointihaun transpositiotaulun koko. Matala haku ei tarvitse oletuskokoista taulua.
+	 */
+	private static final int TRANSPOSITION_TABLE_SIZE = 64 * 1024;
+
+	/**
+	 * Kierrätettävien tekoälyolioiden enimmäismäärä. Tätä useamman säikeen ylimääräiset oliot
+	 * jätetään roskienkerääjälle.
+	 */
+	private static final int MAX_POOLED_SEARCHERS = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * Kuinka paljon quiescence-haun pistemäärä saa ylittää sallitun epätasapainon ennen kuin
+	 * ehdokas hylätään ilman varsinaista hakua. Satunnaisissa tilanteissa hiljaiset siirrot
+	 * (esim. shakit) muuttavat pistemäärää usein paljon, joten marginaalin on oltava suuri,
+	 * jotta esikarsinta ei hylkää varsinaisen haun hyväksymiä ehdokkaita. Tällä marginaalilla
+	 * hylätään noin 0,1 % hyväksyttävistä ehdokkaista.
+	 */
+	static final int QUIESCENCE_MARGIN = 15 * Scores.PIECE_VALUES[Pieces.PAWN];
+
+	/**
+	 * Vapaat arviointiin käytettävät tekoälyoliot.
+	 */
+	private static final ConcurrentLinkedQueue<MinMaxAI> searchers
+			= new ConcurrentLinkedQueue<>();
+
+	/**
+	 * Rinnakkaiseen arviointiin käytettävä säiepooli (luodaan ensimmäisellä käyttökerralla).
+	 */
+	private static ExecutorService executor;
+
 	/**
 	 * Luo uuden tasapuolisen pelitilanteen.
 	 *
@@ -20,14 +77,150 @@ public final class BalancedGameGenerator
 	 */
 	public static GameState createGame(long seed, double maxImbalance) throws InterruptedException
 	{
-		Random rnd = new Random();
-		for (;;) {
-			GameState gameState = GameGenerator.createGame(rnd.nextLong());
-			MinMaxAI testAI = new MinMaxAI(null, 5, 30, 0.0, 0);
-			testAI.getMove(gameState);
-			int score = testAI.getSearchTree().score;
-			if (Math.abs(score) < maxImbalance * Scores.PIECE_VALUES[Pieces.PAWN])
-				return gameState;
+		MinMaxAI searcher = acquireSearcher();
+		try {
+			for (long index = 0;; ++index) {
+				GameState state = GameGenerator.createGame(seed, index);
+				if (isBalanced(searcher, state, maxImbalance))
+					return state;
+			}
+		} finally {
+			releaseSearcher(searcher);
+		}
+	}
+
+	/**
+	 * Luo uuden tasapuolisen pelitilanteen arvioiden ehdokkaita rinnakkain. Tulos on sama kuin
+	 * createGame(seed, maxImbalance).
+	 *
+	 * @param seed satunnaislukusiemen
+	 * @param maxImbalance suurin sallittu epätasapaino pisteissä (yksikkönä yksi sotilas)
+	 * @param threads säikeiden määrä
+	 * @return pelitilanne
+	 */
+	public static GameState createGame(final long seed, final double maxImbalance, int threads)
+			throws InterruptedException
+	{
+		if (threads <= 1)
+			return createGame(seed, maxImbalance);
+
+		// Säikeet ottavat järjestysnumeroita jaetusta laskurista, kunnes hyväksyttyä ehdokasta
+		// pienempiä numeroita ei enää ole jaettavana. Kaikki sitä pienemmät ehdokkaat on tällöin
+		// jo otettu arvioitavaksi, joten pienin hyväksytty ehdokas löytyy varmasti.
+		final AtomicLong nextIndex = new AtomicLong();
+		final AtomicLong bestIndex = new AtomicLong(Long.MAX_VALUE);
+		Callable<Void> worker = new Callable<Void>()
+		{
+			@Override
+			public Void call() throws InterruptedException
+			{
+				MinMaxAI searcher = acquireSearcher();
+				try {
+					for (long index = nextIndex.getAndIncrement(); index < bestIndex.get();
+							index = nextIndex.getAndIncrement()) {
+						if (isBalanced(searcher, GameGenerator.createGame(seed, index),
+								maxImbalance)) {
+							long best = bestIndex.get();
+							while (index < best && !bestIndex.compareAndSet(best, index))
+								best = bestIndex.get();
+							break;
+						}
+					}
+				} finally {
+					releaseSearcher(searcher);
+				}
+				return null;
+			}
+		};
+
+		List<Future<Void>> results = new ArrayList<>(threads);
+		try {
+			for (int i = 0; i < threads; ++i)
+				results.add(getExecutor().submit(worker));
+			for (Future<Void> result : results)
+				result.get();
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		} finally {
+			for (Future<Void> result : results)
+				result.cancel(true);
+		}
+		return GameGenerator.createGame(seed, bestIndex.get());
+	}
+
+	/**
+	 * Tarkistaa, onko pelitilanne tasapuolinen.
+	 *
+	 * @param searcher arviointiin käytettävä tekoäly
+	 * @param state pelitilanne
+	 * @param maxImbalance suurin sallittu epätasapaino pisteissä (yksikkönä yksi sotilas)
+	 * @return true jos tasapuolinen
+	 */
+	static boolean isBalanced(MinMaxAI searcher, GameState state, double maxImbalance)
+			throws InterruptedException
+	{
+		double limit = maxImbalance * Scores.PIECE_VALUES[Pieces.PAWN];
+
+		// Shakkitilanteissa quiescence-haku ei löydä puolustusta, joten esikarsintaa ei tehdä.
+		// Mattia vastaavia pistemääriä ei myöskään käytetä.
+		if (!state.isKingChecked(state.getNextMovingPlayer())) {
+			int quiescenceScore = Math.abs(searcher.getQuiescenceScore(state));
+			if (quiescenceScore >= limit + QUIESCENCE_MARGIN
+					&& quiescenceScore <= Scores.CHECK_MATE_THRESHOLD)
+				return false;
+		}
+
+		searcher.getMove(state);
+		return Math.abs(searcher.getSearchTree().score) < limit;
+	}
+
+	/**
+	 * Ottaa vapaan tekoälyolion käyttöön tai luo uuden, jos vapaita ei ole.
+	 *
+	 * @return tekoäly
+	 */
+	private static MinMaxAI acquireSearcher()
+	{
+		MinMaxAI searcher = searchers.poll();
+		if (searcher == null) {
+			searcher = new MinMaxAI(null, SEARCH_DEPTH, QUIESCENCE_SEARCH_DEPTH, 0.0, 0);
+			searcher.setTranspositionTableSize(TRANSPOSITION_TABLE_SIZE);
+		}
+		return searcher;
+	}
+
+	/**
+	 * Palauttaa tekoälyolion vapaiden joukkoon, jos joukko ei ole jo täynnä. Samanaikaiset kutsut
+	 * voivat ylittää enimmäismäärän hieman, mikä ei haittaa.
+	 *
+	 * @param searcher tekoäly
+	 */
+	private static void releaseSearcher(MinMaxAI searcher)
+	{
+		if (searchers.size() < MAX_POOLED_SEARCHERS)
+			searchers.add(searcher);
+	}
+
+	/**
+	 * Palauttaa rinnakkaiseen arviointiin käytettävän säiepoolin ja luo sen tarvittaessa.
+	 * Poolin säikeet ovat daemon-säikeitä, joten poolia ei tarvitse sulkea.
+	 *
+	 * @return säiepooli
+	 */
+	private static synchronized ExecutorService getExecutor()
+	{
+		if (executor == null) {
+			executor = Executors.newCachedThreadPool(new ThreadFactory()
+			{
+				@Override
+				public Thread newThread(Runnable r)
+				{
+					Thread thread = new Thread(r, "BalancedGameGenerator worker");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
 		}
+		return executor;
 	}
 }
@@ -4,9 +4,30 @@ import chess.domain.GameState;
 import chess.domain.Move;
 import chess.game.Player;
 import chess.util.Logger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * Minmaxiin ja alfa-beta-karsintaan perustuva tekoäly.
+ *
+ * Hakua voi nopeuttaa usealla säikeellä (ks. setThreadCount). Apusäikeet suorittavat saman
+ * iterative-deepening -haun omilla pelitilanteillaan, evaluaattoreillaan ja pinoillaan, ja kaikki
+ * säikeet käyttävät yhteistä transpositiotaulua. Apusäikeiden tulokset nopeuttavat pääsäikeen
+ * hakua taulun kautta, mutta siirto valitaan aina pääsäikeen haun perusteella. Työnjako
+ * valitaan setParallelAlgorithm-metodilla:
+ * <ul>
+ * <li>LAZY_SMP: säikeet jakautuvat eri puolille hakupuuta vain taulun kautta, ja joka toinen
+ * apusäie hakee yhtä tasoa syvemmälle.</li>
+ * <li>ABDADA: solmun ensimmäinen siirto haetaan aina heti, mutta muut siirrot, joiden
+ * lapsitilannetta jokin toinen säie parhaillaan analysoi, lykätään solmun loppuun. Tällöin
+ * säikeet jakavat solmun siirrot keskenään.</li>
+ * </ul>
  */
 public final class MinMaxAI implements Player
 {
@@ -24,10 +45,26 @@ public final class MinMaxAI implements Player
 	private static final int NULL_MOVE_REDUCTION2 = 4;
 
 	/**
-	 * Transpositiotaulun maksimikoko. Rajoituksena tälle on transpositiotaulun viemän muistin
-	 * määrä.
+	 * Rinnakkaishaku Lazy SMP -menetelmällä.
 	 */
-	private static final int MAX_TRANSPOSITION_TABLE_SIZE = 1024 * 1024;
+	public static final int LAZY_SMP = 0;
+
+	/**
+	 * Rinnakkaishaku ABDADA-menetelmällä.
+	 */
+	public static final int ABDADA = 1;
+
+	/**
+	 * Pienin jäljellä oleva hakusyvyys, jolla ABDADA-haku lykkää siirtoja. Matalammissa
+	 * solmuissa merkintöjen ylläpito maksaa enemmän kuin työnjaosta saadaan hyötyä.
+	 */
+	private static final int ABDADA_MIN_DEPTH = 3;
+
+	/**
+	 * Transpositiotaulun oletuskoko. Rajoituksena tälle on transpositiotaulun viemän muistin
+	 * määrä (16 tavua tietuetta kohden).
+	 */
+	private static final int DEFAULT_TRANSPOSITION_TABLE_SIZE = 1024 * 1024;
 
 	/**
 	 * Maksimi hakusyvyys. Pitää olla vähintään 2, jottei tekoäly suorita siirtoja jotka jättävät
@@ -49,8 +86,15 @@ public final class MinMaxAI implements Player
 
 	/**
 	 * Transpositiotaulu johon tallennetaan jo analysoidut tilanteet ja parhaat siirrot niissä.
+	 * Yhteinen kaikille hakusäikeille. Luodaan vasta ensimmäisessä haussa, ja apusäikeet saavat
+	 * pääsäikeen taulun haun alussa.
+	 */
+	private SharedTranspositionTable trposTable;
+
+	/**
+	 * Transpositiotaulun koko (tietueiden määrä).
 	 */
-	private TranspositionTable trposTable = new TranspositionTable();
+	private int trposTableSize = DEFAULT_TRANSPOSITION_TABLE_SIZE;
 
 	/**
 	 * Hakutaulu aikaisempia pelitilanteita varten.
@@ -124,6 +168,59 @@ public final class MinMaxAI implements Player
 	 */
 	private final Evaluator evaluator;
 
+	/**
+	 * Pääsäikeen tekoäly, jos tämä on apusäikeen tekoäly, muuten null.
+	 */
+	private final MinMaxAI master;
+
+	/**
+	 * Hakusäikeiden määrä (pääsäie mukaan lukien).
+	 */
+	private int threadCount = 1;
+
+	/**
+	 * Apusäikeiden tekoälyt.
+	 */
+	private MinMaxAI[] helpers = new MinMaxAI[0];
+
+	/**
+	 * Kaikkien tekoälyjen yhteinen apusäikeiden suorittaja (luodaan ensimmäisellä käyttökerralla).
+	 * Säiepooli ei viittaa tekoälyihin, joten käyttämättömät tekoälyt ja niiden
+	 * transpositiotaulut vapautuvat, ja joutilaat säikeet päättyvät itsestään.
+	 */
+	private static ExecutorService helperExecutor;
+
+	/**
+	 * Asetetaan todeksi, kun apusäikeiden haku pitää lopettaa.
+	 */
+	private volatile boolean helpersStopped;
+
+	/**
+	 * Rinnakkaishaun menetelmä (LAZY_SMP tai ABDADA).
+	 */
+	private int parallelAlgorithm = LAZY_SMP;
+
+	/**
+	 * Lykätäänkö muiden säikeiden analysoimat siirrot (ABDADA usealla säikeellä).
+	 */
+	private boolean deferBusyMoves;
+
+	/**
+	 * Pino lykätyistä siirroista kullakin pelipuun tasolla.
+	 */
+	private final int[][] deferredMoves;
+
+	/**
+	 * Asetetaan todeksi, jos edellinen searchMove-kutsu lykkäsi siirron.
+	 */
+	private boolean moveDeferred;
+
+	/**
+	 * Kaikkien iteraatioiden (ja apusäikeiden) analysoimien solmujen määrä edellisessä
+	 * getMove()-kutsussa.
+	 */
+	private long totalNodeCount;
+
 	/**
 	 * Luo uuden tekoälyobjektin käyttäen annettua aikarajaa ja maksimihakusyvyyttä.
 	 *
@@ -135,9 +232,30 @@ public final class MinMaxAI implements Player
 	 */
 	public MinMaxAI(Logger logger, int searchDepth, int quiescenceSearchDepth, double timeLimit,
 			int treeGenerationDepth)
+	{
+		this(logger, searchDepth, quiescenceSearchDepth, timeLimit, treeGenerationDepth, null);
+	}
+
+	/**
+	 * Luo apusäikeen tekoälyn, joka käyttää pääsäikeen transpositiotaulua.
+	 *
+	 * @param master pääsäikeen tekoäly
+	 */
+	private MinMaxAI(MinMaxAI master)
+	{
+		this(null, master.searchDepth, master.quiescenceSearchDepth, 0.0, 0, master);
+		setParallelAlgorithm(master.parallelAlgorithm);
+	}
+
+	/**
+	 * Konstruktori.
+	 */
+	private MinMaxAI(Logger logger, int searchDepth, int quiescenceSearchDepth, double timeLimit,
+			int treeGenerationDepth, MinMaxAI master)
 	{
 		if (searchDepth < 2)
 			throw new IllegalArgumentException("Search depth too small.");
+		this.master = master;
 		this.logger = logger;
 		this.searchDepth = searchDepth;
 		this.quiescenceSearchDepth = quiescenceSearchDepth;
@@ -145,6 +263,7 @@ public final class MinMaxAI implements Player
 		this.treeGenerator = new TreeGenerator(treeGenerationDepth);
 		this.results = new StateInfo[searchDepth + 1 + quiescenceSearchDepth];
 		this.moveLists = new MoveList[searchDepth + 1 + quiescenceSearchDepth];
+		this.deferredMoves = new int[searchDepth + 1][];
 		this.ply = 0;
 		this.loggingEnabled = false;
 		this.evaluator = new Evaluator(searchDepth + quiescenceSearchDepth);
@@ -171,32 +290,128 @@ public final class MinMaxAI implements Player
 		rootScore = evaluator.getScore();
 		setEarlierStates(state);
 		startTime = System.nanoTime();
-		trposTable.clear();
+		resetTranspositionTable();
+		totalNodeCount = 0;
 		int bestMove = 0;
 		GameState stateCopy = state.clone();
-		int lastIterNodeCount = 0, lastIterTrPosTblHitCount = 0, lastIterTrposTblSize = 0;
-		double lastIterBranchingFactor = 0.0;
-
-		for (int depth = 2; depth <= searchDepth; ++depth) {
-			if (!findMove(stateCopy, depth))
-				break;
+		int lastIterNodeCount = 0, lastIterTrPosTblHitCount = 0;
+		double lastIterTrposTblUsage = 0.0, lastIterBranchingFactor = 0.0;
 
-			lastIterNodeCount = nodeCount;
-			lastIterTrPosTblHitCount = trposTblHitCount;
-			lastIterTrposTblSize = trposTable.size();
-			lastIterBranchingFactor = Math.pow(nodeCount, 1.0 / depth);
-			bestMove = results[0].bestMove;
+		List<Future<Long>> helperResults = startHelpers(state);
+		try {
+			for (int depth = 2; depth <= searchDepth; ++depth) {
+				if (!findMove(stateCopy, depth))
+					break;
+
+				lastIterNodeCount = nodeCount;
+				lastIterTrPosTblHitCount = trposTblHitCount;
+				lastIterTrposTblUsage = trposTable.getUsage();
+				lastIterBranchingFactor = Math.pow(nodeCount, 1.0 / depth);
+				bestMove = getHashMove(stateCopy, results[0]);
+				log(String.format("  t=%.3fms", (System.nanoTime() - startTime) * 1e-6));
+			}
+		} finally {
+			totalNodeCount += stopHelpers(helperResults);
 		}
 
 		log("nodeCount=" + lastIterNodeCount);
+		log("totalNodeCount=" + totalNodeCount + " (" + threadCount + " threads)");
 		log("trposTblHitCount=" + lastIterTrPosTblHitCount);
-		log("trposTblSize=" + lastIterTrposTblSize);
+		log(String.format("trposTblUsage=%.1f%%", lastIterTrposTblUsage * 100));
 		log(String.format("t=%.3fms", (System.nanoTime() - startTime) * 1e-6));
 		log(String.format("branchingFactor=%.3g", lastIterBranchingFactor));
+		if (GameState.VERIFICATION_KEYS) {
+			log(String.format("keyCollisions=%d/%d", getKeyCollisionCount(),
+					trposTable.getVerifiedHitCount() + earlierStates.getVerifiedHitCount()));
+		}
 
 		return bestMove;
 	}
 
+	/**
+	 * Asettaa hakusäikeiden määrän. Yhdellä säikeellä haku suoritetaan kokonaan kutsujan
+	 * säikeessä.
+	 *
+	 * @param threads säikeiden määrä (vähintään 1)
+	 */
+	public void setThreadCount(int threads)
+	{
+		if (threads < 1)
+			throw new IllegalArgumentException("Thread count must be at least 1.");
+		threadCount = threads;
+		helpers = new MinMaxAI[threads - 1];
+		for (int i = 0; i < helpers.length; ++i)
+			helpers[i] = new MinMaxAI(this);
+		setParallelAlgorithm(parallelAlgorithm);
+	}
+
+	/**
+	 * Asettaa transpositiotaulun koon. Taulu luodaan uudelleen seuraavassa haussa. Oletuskoolla
+	 * taulu vie noin 16 megatavua, mikä on tarpeettoman paljon esimerkiksi matalille hauille.
+	 *
+	 * @param size tietueiden määrä (kahden potenssi, vähintään 2)
+	 */
+	public void setTranspositionTableSize(int size)
+	{
+		if (size < 2 || Integer.bitCount(size) != 1)
+			throw new IllegalArgumentException("Transposition table size must be a power of two.");
+		trposTableSize = size;
+		trposTable = null;
+	}
+
+	/**
+	 * Vapauttaa apusäikeiden tekoälyt ja transpositiotaulun. Tekoälyä voi käyttää tämän jälkeen
+	 * yhdellä säikeellä, jolloin transpositiotaulu luodaan uudelleen seuraavassa haussa.
+	 */
+	public void shutdown()
+	{
+		setThreadCount(1);
+		trposTable = null;
+	}
+
+	/**
+	 * Valitsee rinnakkaishaun menetelmän. Vaikuttaa vain, jos säikeitä on useampi kuin yksi.
+	 *
+	 * @param algorithm LAZY_SMP tai ABDADA
+	 */
+	public void setParallelAlgorithm(int algorithm)
+	{
+		if (algorithm != LAZY_SMP && algorithm != ABDADA)
+			throw new IllegalArgumentException("Unknown parallel algorithm.");
+		parallelAlgorithm = algorithm;
+		deferBusyMoves = algorithm == ABDADA && (master != null || helpers.length > 0);
+		for (MinMaxAI helper : helpers)
+			helper.setParallelAlgorithm(algorithm);
+	}
+
+	/**
+	 * Laskee pelitilanteen pistemäärän pelkällä quiescence-haulla, eli käymällä läpi lyönnit
+	 * kunnes tilanne on rauhallinen. Huomattavasti nopeampi kuin getMove, mutta ei huomioi
+	 * hiljaisia siirtoja.
+	 *
+	 * @param state pelitilanne
+	 * @return pistemäärä vuorossa olevan pelaajan näkökulmasta
+	 */
+	public int getQuiescenceScore(GameState state) throws InterruptedException
+	{
+		tree = null;
+		setEarlierStates(state);
+		startTime = System.nanoTime();
+		resetTranspositionTable();
+		nodeCount = 0;
+		trposTblHitCount = 0;
+		ply = 0;
+		treeGenerator.clear();
+		GameState stateCopy = state.clone();
+		evaluator.reset(stateCopy);
+		try {
+			return search(0, Scores.MIN, Scores.MAX, stateCopy);
+		} catch (TimeLimitException e) {
+			// Aikarajaa ei tarkisteta ennen kuin puu on valmis (tree != null).
+			throw new IllegalStateException(e);
+		}
+	}
+
 	/**
 	 * Suorittaa yhden iteraation iterative-deepening -hausta, eli käynnistää minmax-haun annettuun
 	 * syvyyteen asti.
@@ -219,6 +434,8 @@ public final class MinMaxAI implements Player
 			createNodeAndSearch(depth, Scores.MIN, Scores.MAX, state, 0);
 		} catch (TimeLimitException e) {
 			return false;
+		} finally {
+			totalNodeCount += nodeCount;
 		}
 
 		tree = treeGenerator.getTree();
@@ -226,6 +443,103 @@ public final class MinMaxAI implements Player
 		return true;
 	}
 
+	/**
+	 * Käynnistää apusäikeiden haut. Jokainen apusäie saa oman kopion pelitilanteesta.
+	 *
+	 * @param state pelitilanne
+	 * @return apusäikeiden tulokset (analysoitujen solmujen määrät)
+	 */
+	private List<Future<Long>> startHelpers(GameState state)
+	{
+		List<Future<Long>> helperResults = new ArrayList<>(helpers.length);
+		if (helpers.length == 0)
+			return helperResults;
+
+		ExecutorService executor = getHelperExecutor();
+		helpersStopped = false;
+		for (int i = 0; i < helpers.length; ++i) {
+			final MinMaxAI helper = helpers[i];
+			helper.trposTable = trposTable;
+			final GameState helperState = state.clone();
+			final int index = i + 1;
+			helperResults.add(executor.submit(new Callable<Long>()
+			{
+				@Override
+				public Long call() throws InterruptedException
+				{
+					return helper.searchAsHelper(helperState, index);
+				}
+			}));
+		}
+		return helperResults;
+	}
+
+	/**
+	 * Palauttaa apusäikeiden suorittajan ja luo sen tarvittaessa.
+	 *
+	 * @return säiepooli
+	 */
+	private static synchronized ExecutorService getHelperExecutor()
+	{
+		if (helperExecutor == null) {
+			helperExecutor = Executors.newCachedThreadPool(new ThreadFactory()
+			{
+				@Override
+				public Thread newThread(Runnable r)
+				{
+					Thread thread = new Thread(r, "MinMaxAI helper");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return helperExecutor;
+	}
+
+	/**
+	 * Pysäyttää apusäikeiden haut ja odottaa niiden päättymistä.
+	 *
+	 * @param helperResults apusäikeiden tulokset
+	 * @return apusäikeiden analysoimien solmujen yhteismäärä
+	 */
+	private long stopHelpers(List<Future<Long>> helperResults) throws InterruptedException
+	{
+		helpersStopped = true;
+		long nodes = 0;
+		for (Future<Long> result : helperResults) {
+			try {
+				nodes += result.get();
+			} catch (ExecutionException e) {
+				throw new RuntimeException(e.getCause());
+			}
+		}
+		return nodes;
+	}
+
+	/**
+	 * Apusäikeen iterative-deepening -haku. Lazy SMP -haussa joka toinen apusäie aloittaa
+	 * syvyydeltä 3, jotta säikeet eivät etsi samaa syvyyttä samassa järjestyksessä; ABDADA-haussa
+	 * säikeet jakavat työn lykkäämällä siirtoja, joten kaikki hakevat samaa syvyyttä. Haku
+	 * jatkuu, kunnes pääsäie pysäyttää sen tai maksimisyvyys on käyty läpi.
+	 *
+	 * @param state apusäikeen oma kopio pelitilanteesta
+	 * @param index apusäikeen järjestysnumero (1-)
+	 * @return analysoitujen solmujen määrä
+	 */
+	private long searchAsHelper(GameState state, int index) throws InterruptedException
+	{
+		tree = null;
+		setEarlierStates(state);
+		startTime = System.nanoTime();
+		totalNodeCount = 0;
+		int firstDepth = parallelAlgorithm == LAZY_SMP ? 2 + index % 2 : 2;
+		for (int depth = firstDepth; depth <= searchDepth; ++depth) {
+			if (!findMove(state, depth))
+				break;
+		}
+		return totalNodeCount;
+	}
+
 	/**
 	 * Apufunktio, joka tallentaa hakupuun solmun tiedot ja kutsuu varsinaista hakufunktiota.
 	 *
@@ -283,12 +597,19 @@ public final class MinMaxAI implements Player
 
 		// Jos aikaisempaan pelitilanteeseen saavutaan uudestaan, pattitilanteiden välttämiseksi
 		// (tai saavuttamiseksi) näille annetaan tasapeliä vastaava pistearvo.
-		if (earlierStates.get(state.getId()) != null && ply > 0)
+		if (ply > 0 && findEntry(earlierStates, state) != null)
 			return Scores.DRAW;
 
 		if (!state.areBothKingsAlive())
 			return evaluator.getScore();
 
+		// Tilanteet, joissa kummallakaan pelaajalla ei ole mattiin riittävää materiaalia. Jos
+		// vastustajan kuningas on uhattuna, edellinen siirto oli laiton, ja kuninkaan lyönti
+		// ratkaisee tuloksen.
+		if (ply > 0 && state.isInsufficientMaterial()
+				&& !state.isKingChecked(1 - state.getNextMovingPlayer()))
+			return Scores.DRAW;
+
 		// Quiescence-haku, kun depth <= 0. Vaaditaan, että jokainen siirto parantaa staattista
 		// pistemäärää.
 		if (depth <= 0) {
@@ -299,9 +620,11 @@ public final class MinMaxAI implements Player
 				alpha = e;
 		}
 
-		// Katsotaan, voidaanko tulos hakea transpositiotaulusta.
-		StateInfo info = trposTable.get(state.getId());
-		if (info != null && info.depth >= depth) {
+		// Katsotaan, voidaanko tulos hakea transpositiotaulusta. Juurisolmussa hakua ei
+		// lopeteta, koska apusäikeet ovat voineet tallentaa juuren tuloksen ja siirto valitaan
+		// pääsäikeen tuloksista.
+		StateInfo info = findEntry(trposTable, state);
+		if (info != null && info.depth >= depth && ply > 0) {
 			++trposTblHitCount;
 			if (info.nodeType == StateInfo.NODE_TYPE_EXACT
 					|| info.nodeType == StateInfo.NODE_TYPE_LOWER_BOUND && info.score >= beta
@@ -310,14 +633,15 @@ public final class MinMaxAI implements Player
 		}
 
 		// Luodaan tietue haun tulokselle.
-		results[ply] = new StateInfo(state.getId());
+		results[ply] = new StateInfo(state.getId(), state.getVerificationKey());
 		results[ply].nodeType = StateInfo.NODE_TYPE_UPPER_BOUND;
 		results[ply].score = Scores.MIN;
 		earlierStates.put(results[ply]);
 
 		// Käydään läpi siirrot.
 		depth = applyNullMoveReduction(depth, beta, state);
-		searchAllMoves(depth, alpha, beta, state, info != null && depth > 0 ? info.bestMove : 0);
+		searchAllMoves(depth, alpha, beta, state,
+				info != null && depth > 0 ? getHashMove(state, info) : 0);
 
 		earlierStates.remove(state.getId());
 
@@ -362,15 +686,21 @@ public final class MinMaxAI implements Player
 	private void searchAllMoves(int depth, int alpha, int beta, GameState state, int tpTblMove)
 			throws TimeLimitException, InterruptedException
 	{
+		// ABDADA: ensimmäisen siirron jälkeen lykätään siirrot, joita toinen säie analysoi.
+		boolean defer = deferBusyMoves && depth >= ABDADA_MIN_DEPTH;
+		int deferredCount = 0;
+		if (defer && deferredMoves[ply] == null)
+			deferredMoves[ply] = new int[GameState.MAX_MOVES];
+
 		// Jos hakutauluun on tallennettu paras siirto, kokeillaan sitä ensimmäisenä.
 		if (tpTblMove != 0) {
-			alpha = searchMove(depth, alpha, beta, state, tpTblMove);
+			alpha = searchMove(depth, alpha, beta, state, tpTblMove, false);
 			if (alpha >= beta)
 				return;
 		}
 
 		// Muodostetaan priorisoitu siirtolista. Normaalissa haussa käydään läpi kaikki siirrot,
-		// ja quiescence-haussa (depth <= 0) ainostaan lyönnit.
+		// ja quiescence-haussa (depth <= 0) ainostaan lyönnit, jotka eivät häviä materiaalia.
 		if (moveLists[ply] == null)
 			moveLists[ply] = new MoveList();
 		moveLists[ply].populate(state, depth <= 0);
@@ -382,12 +712,23 @@ public final class MinMaxAI implements Player
 				int move = moveLists[ply].getMove(i, j);
 				if (move == tpTblMove) // Ei etsitä tätä uudestaan!
 					continue;
-				alpha = searchMove(depth, alpha, beta, state, move);
+				alpha = searchMove(depth, alpha, beta, state, move,
+						defer && results[ply].score != Scores.MIN);
 				if (alpha >= beta)
 					return;
+				if (moveDeferred)
+					deferredMoves[ply][deferredCount++] = move;
 			}
 		}
 
+		// Lykätyt siirrot haetaan lopuksi, jolloin toinen säie on todennäköisesti jo
+		// tallentanut niiden tuloksen transpositiotauluun.
+		for (int i = 0; i < deferredCount; ++i) {
+			alpha = searchMove(depth, alpha, beta, state, deferredMoves[ply][i], false);
+			if (alpha >= beta)
+				return;
+		}
+
 		// Pattitilanteiden tunnistus.
 		if (results[ply].score < -Scores.CHECK_MATE_THRESHOLD && state.isStaleMate())
 			results[ply].score = 0;
@@ -402,39 +743,59 @@ public final class MinMaxAI implements Player
 	 * @param beta alfa-beta-karsinnan beta-arvo
 	 * @param state pelitila
 	 * @param move siirto
+	 * @param deferrable voidaanko siirto lykätä, jos toinen säie analysoi sitä (ABDADA)
 	 * @return uusi alfa-arvo
 	 */
-	private int searchMove(int depth, int alpha, int beta, GameState state, int move)
-			throws TimeLimitException, InterruptedException
+	private int searchMove(int depth, int alpha, int beta, GameState state, int move,
+			boolean deferrable) throws TimeLimitException, InterruptedException
 	{
 		// Suoritetaan siirto.
 		++ply;
 		state.makeMove(move);
 		evaluator.makeMove(move);
 
+		// Jos toinen säie analysoi jo lapsitilannetta, siirto lykätään. Muuten lapsitilanne
+		// merkitään analysoitavaksi, jotta muut säikeet voivat lykätä sen.
+		long childId = state.getId();
+		moveDeferred = deferrable && trposTable.isSearching(childId);
+		if (moveDeferred) {
+			evaluator.undoMove();
+			state.undoMove(move);
+			--ply;
+			return alpha;
+		}
+		if (deferrable)
+			trposTable.markSearching(childId);
+
 		// Jatketaan hakua rekursiivisesti. PV-solmuille tehdään täysi haku ja muille haku
 		// pienennetyllä hakuikkunan koolla.
 		int score;
-		if (results[ply - 1].nodeType == StateInfo.NODE_TYPE_UPPER_BOUND) {
-			// Etsitään normaalisti niin kauan kunnes löydetään arvo välillä ]alfa,beta[
-			score = -createNodeAndSearch(depth - 1, -beta, -alpha, state, move);
-		} else {
-			// Lopuille solmuille tarkistetaan vain, että pistemäärä on korkeintaan alfa (tai
-			// aiheuttaa beta-cutoffin). Jos ei, niin suoritetaan normaali haku.
-			score = -zeroWindowSearch(depth - 1, -alpha, state, move);
-			if (score > alpha && score < beta)
+		try {
+			if (results[ply - 1].nodeType == StateInfo.NODE_TYPE_UPPER_BOUND) {
+				// Etsitään normaalisti niin kauan kunnes löydetään arvo välillä ]alfa,beta[
 				score = -createNodeAndSearch(depth - 1, -beta, -alpha, state, move);
+			} else {
+				// Lopuille solmuille tarkistetaan vain, että pistemäärä on korkeintaan alfa (tai
+				// aiheuttaa beta-cutoffin). Jos ei, niin suoritetaan normaali haku.
+				score = -zeroWindowSearch(depth - 1, -alpha, state, move);
+				if (score > alpha && score < beta)
+					score = -createNodeAndSearch(depth - 1, -beta, -alpha, state, move);
+			}
+		} finally {
+			if (deferrable)
+				trposTable.unmarkSearching(childId);
 		}
 
 		// Kumotaan siirto.
 		evaluator.undoMove();
 		state.undoMove(move);
 		--ply;
+		moveDeferred = false;
 
 		// Parannus edelliseeen parhaimpaan siirtoon verrattuna.
 		if (score > results[ply].score) {
 			results[ply].score = score;
-			results[ply].bestMove = move;
+			results[ply].bestMove = Move.toCompact(move);
 			if (score > alpha) {
 				if (ply == 0 && loggingEnabled)
 					log("  " + Move.toString(move) + " " + (score - rootScore));
@@ -505,6 +866,17 @@ public final class MinMaxAI implements Player
 		return nodeCount;
 	}
 
+	/**
+	 * Palauttaa edellisessä getMove()-kutsussa analysoitujen solmujen määrän kaikilta
+	 * iteraatioilta ja säikeiltä yhteensä.
+	 *
+	 * @return
+	 */
+	public long getTotalNodeCount()
+	{
+		return totalNodeCount;
+	}
+
 	/**
 	 * Päivittää taulun, joka sisältää aikaisemmat pelitilanteet.
 	 *
@@ -514,8 +886,65 @@ public final class MinMaxAI implements Player
 	{
 		earlierStates.clear();
 		long[] states = state.getEarlierStates();
+		long[] verificationKeys = state.getEarlierVerificationKeys();
 		for (int i = 0; i < states.length; ++i)
-			earlierStates.put(new StateInfo(states[i]));
+			earlierStates.put(new StateInfo(states[i], verificationKeys[i]));
+	}
+
+	/**
+	 * Hakee pelitilannetta vastaavan tietueen taulusta. Jos tarkistustunnisteet ovat käytössä,
+	 * tietue palautetaan vain jos myös tarkistustunniste täsmää.
+	 *
+	 * @param table transpositiotaulu
+	 * @param state pelitilanne
+	 * @return tietue tai null jos tietuetta ei löytynyt
+	 */
+	private static StateInfo findEntry(StateInfoTable table, GameState state)
+	{
+		if (GameState.VERIFICATION_KEYS)
+			return table.get(state.getId(), state.getVerificationKey());
+		return table.get(state.getId());
+	}
+
+	/**
+	 * Palauttaa tietueeseen tallennetun parhaan siirron. Siirto tarkistetaan, koska eri
+	 * pelitilanteilla voi olla sama Zobrist-tunniste.
+	 *
+	 * @param state pelitilanne
+	 * @param info tietue
+	 * @return siirto tai 0, jos siirtoa ei ole tai se ei ole pseudolaillinen
+	 */
+	private static int getHashMove(GameState state, StateInfo info)
+	{
+		if (info.bestMove == 0)
+			return 0;
+		int move = state.expandMove(info.bestMove);
+		return move != 0 && state.isPseudoLegal(move) ? move : 0;
+	}
+
+	/**
+	 * Palauttaa havaittujen Zobrist-tunnisteiden törmäysten määrän tekoälyn luomisesta lähtien.
+	 * Törmäyksiä havaitaan vain, jos tarkistustunnisteet ovat käytössä
+	 * (ks. GameState.VERIFICATION_KEYS).
+	 *
+	 * @return
+	 */
+	public long getKeyCollisionCount()
+	{
+		long collisions = trposTable != null ? trposTable.getCollisionCount() : 0;
+		return collisions + earlierStates.getCollisionCount();
+	}
+
+	/**
+	 * Luo transpositiotaulun, jos sitä ei ole vielä luotu, ja tyhjentää sen.
+	 */
+	private void resetTranspositionTable()
+	{
+		if (trposTable == null)
+			trposTable = new SharedTranspositionTable(trposTableSize);
+		if (deferBusyMoves)
+			trposTable.enableSearchMarks();
+		trposTable.clear();
 	}
 
 	/**
@@ -551,16 +980,15 @@ public final class MinMaxAI implements Player
 	}
 
 	/**
-	 * Lisää tietueen tranpositiotauluun, jos sen koko ei ylitä maksimikokoa. Quiescence-haun
-	 * (depth 0 tai pienempi) tuloksia ei tallenneta, koska kyseisiä alipuita ei ole analysoitu
-	 * kokonaan.
+	 * Lisää tietueen tranpositiotauluun. Quiescence-haun (depth 0 tai pienempi) tuloksia ei
+	 * tallenneta, koska kyseisiä alipuita ei ole analysoitu kokonaan.
 	 *
 	 * @param depth analysoitu syvyys
 	 * @param result hakua vastaava tietue
 	 */
 	private void addTranspositionTableEntry(int depth, StateInfo result)
 	{
-		if (depth > 0 && trposTable.size() < MAX_TRANSPOSITION_TABLE_SIZE) {
+		if (depth > 0) {
 			result.depth = depth;
 			trposTable.put(result);
 		}
@@ -574,6 +1002,8 @@ public final class MinMaxAI implements Player
 	 */
 	private void checkTimeLimit() throws TimeLimitException, InterruptedException
 	{
+		if (master != null && master.helpersStopped)
+			throw new TimeLimitException();
 		if ((nodeCount & 0xfff) == 0) {
 			if (Thread.interrupted())
 				throw new InterruptedException();
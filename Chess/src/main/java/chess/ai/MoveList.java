@@ -15,7 +15,13 @@ final class MoveList
 	/**
 	 * Eri prioriteettiluokkien kokonaismäärä.
 	 */
-	static final int PRIORITIES = 12;
+	static final int PRIORITIES = 13;
+
+	/**
+	 * Häviävien lyöntien (staattinen vaihtoarvo negatiivinen) prioriteetti. Ne käydään läpi
+	 * viimeisenä, ja quiescence-haussa ne jätetään kokonaan pois.
+	 */
+	static final int LOSING_CAPTURE_PRIORITY = 12;
 
 	/**
 	 * Eri lyöntien prioriteetit (CAPTURE_PRIORITIES[piece][capturedType]).
@@ -50,7 +56,7 @@ final class MoveList
 	 * Täyttää siirtolistan sisällön annetusta pelitilanteesta.
 	 *
 	 * @param state pelitilanne
-	 * @param excludeQuietMoves ainoastaan lyönnit
+	 * @param excludeQuietMoves ainoastaan lyönnit, joista häviävät lyönnit jätetään pois
 	 */
 	void populate(GameState state, boolean excludeQuietMoves)
 	{
@@ -60,61 +66,116 @@ final class MoveList
 		// Muut kuin sotilaat.
 		for (int pieceType = 0; pieceType < Pieces.COUNT - 1; ++pieceType) {
 			long pieces = state.getPieces(player, pieceType);
-			addMoves(state, pieceType, pieces, pieceType, excludeQuietMoves);
+			addMoves(state, pieceType, pieces, excludeQuietMoves);
 		}
 
-		// Korotettavat sotilaat.
-		long pieces = state.getPieces(player, Pieces.PAWN) & Movemasks.PROMOTABLE[player];
-		if (pieces != 0) {
-			for (int promotedType = Pieces.QUEEN; promotedType <= Pieces.KNIGHT; ++promotedType)
-				addMoves(state, Pieces.PAWN, pieces, promotedType, excludeQuietMoves);
+		addPawnMoves(state, excludeQuietMoves);
+	}
+
+	/**
+	 * Lisää listaan kaikkien sotilaiden siirrot. Kohderuudut lasketaan kaikille sotilaille
+	 * kerralla siirtämällä bittimaskeja, ja lähtöruutu saadaan kohderuudusta.
+	 *
+	 * @param state pelitilanne
+	 * @param excludeQuietMoves ainostaan lyönnit
+	 */
+	private void addPawnMoves(GameState state, boolean excludeQuietMoves)
+	{
+		int player = state.getNextMovingPlayer();
+		long pawns = state.getPieces(player, Pieces.PAWN);
+		if (pawns == 0)
+			return;
+		long enemies = state.getPieces(1 - player);
+		long enPassantMask = getEnPassantMask(state);
+
+		long targets = enemies | enPassantMask;
+		addPawnCaptures(state, Movemasks.getPawnWestCaptures(player, pawns, targets),
+				Movemasks.PAWN_WEST_CAPTURE_OFFSETS[player], enPassantMask);
+		addPawnCaptures(state, Movemasks.getPawnEastCaptures(player, pawns, targets),
+				Movemasks.PAWN_EAST_CAPTURE_OFFSETS[player], enPassantMask);
+
+		if (excludeQuietMoves)
+			return;
+		long empty = ~(enemies | state.getPieces(player));
+		int offset = Movemasks.PAWN_PUSH_OFFSETS[player];
+		long moves = Movemasks.getPawnPushes(player, pawns, empty);
+		for (; moves != 0; moves -= Long.lowestOneBit(moves)) {
+			int toSqr = Long.numberOfTrailingZeros(moves);
+			addPawnMove(state, toSqr - offset, toSqr, -1);
+		}
+		moves = Movemasks.getPawnDoublePushes(player, pawns, empty);
+		for (; moves != 0; moves -= Long.lowestOneBit(moves)) {
+			int toSqr = Long.numberOfTrailingZeros(moves);
+			addPawnMove(state, toSqr - 2 * offset, toSqr, -1);
 		}
+	}
 
-		// Ei-korotettavat sotilaat.
-		pieces = state.getPieces(player, Pieces.PAWN) & ~Movemasks.PROMOTABLE[player];
-		addMoves(state, Pieces.PAWN, pieces, Pieces.PAWN, excludeQuietMoves);
+	/**
+	 * Lisää listaan sotilaiden lyönnit yhteen suuntaan.
+	 *
+	 * @param state pelitilanne
+	 * @param moves kohderuudut bittimaskina
+	 * @param offset kohderuudun ja lähtöruudun erotus
+	 * @param enPassantMask ohestalyöntiruutu bittimaskina
+	 */
+	private void addPawnCaptures(GameState state, long moves, int offset, long enPassantMask)
+	{
+		int player = state.getNextMovingPlayer();
+		for (; moves != 0; moves -= Long.lowestOneBit(moves)) {
+			long toBit = Long.lowestOneBit(moves);
+			int toSqr = Long.numberOfTrailingZeros(toBit);
+			int capturedType = (toBit & enPassantMask) != 0 ? Pieces.PAWN
+					: state.getBoard().getPieceType(1 - player, toSqr);
+			addPawnMove(state, toSqr - offset, toSqr, capturedType);
+		}
 	}
 
 	/**
-	 * Lisää siirrot kaikille annetun tyyppisille nappuloille.
+	 * Lisää listaan sotilaan siirron. Viimeiselle riville etenevästä sotilaasta lisätään kaikki
+	 * neljä korotusvaihtoehtoa.
+	 */
+	private void addPawnMove(GameState state, int fromSqr, int toSqr, int capturedType)
+	{
+		if ((toSqr & ~7) == 0 || (toSqr & ~7) == 56) {
+			for (int promotedType = Pieces.QUEEN; promotedType <= Pieces.KNIGHT; ++promotedType)
+				add(state, Pieces.PAWN, fromSqr, toSqr, capturedType, promotedType, false);
+		} else
+			add(state, Pieces.PAWN, fromSqr, toSqr, capturedType, Pieces.PAWN, false);
+	}
+
+	/**
+	 * Lisää siirrot kaikille annetun tyyppisille nappuloille (muut kuin sotilaat).
 	 *
 	 * @param state pelitilanne
 	 * @param pieceType nappulatyyppi
 	 * @param pieces nappuloiden sijainnit bittimaskina
-	 * @param newType nappulan uusi tyyppi (korotus)
 	 * @param excludeQuietMoves ainostaan lyönnit
 	 */
-	private void addMoves(GameState state, int pieceType, long pieces, int newType,
-			boolean excludeQuietMoves)
+	private void addMoves(GameState state, int pieceType, long pieces, boolean excludeQuietMoves)
 	{
 		int player = state.getNextMovingPlayer();
-		long enPassantMask = getEnPassantMask(state);
+		long enemies = state.getPieces(1 - player);
 
 		for (; pieces != 0; pieces -= Long.lowestOneBit(pieces)) {
 			int fromSqr = Long.numberOfTrailingZeros(pieces);
 			long moves = state.getPseudoLegalMoves(player, pieceType, fromSqr);
 
-			if ((moves & state.getPieces(1 - player)) != 0 || state.getEnPassantSquare() != -1) {
+			if ((moves & enemies) != 0) {
 				for (int capturedType = 0; capturedType < Pieces.COUNT; ++capturedType) {
-					long captureTargets = state.getPieces(1 - player, capturedType);
-					if (pieceType == Pieces.PAWN && capturedType == Pieces.PAWN)
-						captureTargets |= enPassantMask;
-					long captureMoves = moves & captureTargets;
+					long captureMoves = moves & state.getPieces(1 - player, capturedType);
 					for (; captureMoves != 0; captureMoves -= Long.lowestOneBit(captureMoves)) {
 						int toSqr = Long.numberOfTrailingZeros(captureMoves);
-						add(pieceType, fromSqr, toSqr, capturedType, newType);
+						add(state, pieceType, fromSqr, toSqr, capturedType, pieceType,
+								excludeQuietMoves);
 					}
 				}
 			}
 
 			if (!excludeQuietMoves) {
-				long allCaptureTargets = state.getPieces(1 - player);
-				if (pieceType == Pieces.PAWN)
-					allCaptureTargets |= enPassantMask;
-				long quietMoves = moves & ~allCaptureTargets;
+				long quietMoves = moves & ~enemies;
 				for (; quietMoves != 0; quietMoves -= Long.lowestOneBit(quietMoves)) {
 					int toSqr = Long.numberOfTrailingZeros(quietMoves);
-					add(pieceType, fromSqr, toSqr, -1, newType);
+					add(state, pieceType, fromSqr, toSqr, -1, pieceType, false);
 				}
 			}
 		}
@@ -171,15 +232,27 @@ final class MoveList
 	 * Lyönnit: 0-9 (0 on PxK ja 9 on KxP)
 	 * Normaalit siirrot: 10
 	 * Korotukset torniksi/lähetiksi/ratsuksi: 11
+	 * Häviävät lyönnit: 12 (jätetään pois, jos excludeLosingCaptures on asetettu)
+	 *
+	 * Staattinen vaihtoarvo lasketaan vain, jos lyövä nappula on arvokkaampi kuin lyöty nappula;
+	 * muuten lyönti ei voi hävitä materiaalia.
 	 */
-	private void add(int pieceType, int fromSqr, int toSqr, int capturedType, int newType)
+	private void add(GameState state, int pieceType, int fromSqr, int toSqr, int capturedType,
+			int newType, boolean excludeLosingCaptures)
 	{
+		int move = Move.pack(fromSqr, toSqr, pieceType, capturedType, newType);
 		int priority = 10;
-		if (capturedType != -1)
+		if (capturedType != -1) {
 			priority = CAPTURE_PRIORITIES[pieceType][capturedType];
-		else if (newType != pieceType)
+			if (Scores.PIECE_VALUES[pieceType] > Scores.PIECE_VALUES[capturedType]
+					&& state.getStaticExchangeScore(move, Scores.PIECE_VALUES) < 0) {
+				if (excludeLosingCaptures)
+					return;
+				priority = LOSING_CAPTURE_PRIORITY;
+			}
+		} else if (newType != pieceType)
 			priority = PROMOTION_PRIORITIES[newType];
 		int idx = moveCounts[priority]++;
-		moves[priority][idx] = Move.pack(fromSqr, toSqr, pieceType, capturedType, newType);
+		moves[priority][idx] = move;
 	}
 }
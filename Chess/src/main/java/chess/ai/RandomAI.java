@@ -11,10 +11,15 @@ public class RandomAI implements Player
 {
 	private Random rnd = new Random();
 
+	/**
+	 * Puskuri laillisille siirroille.
+	 */
+	private final int[] moves = new int[GameState.MAX_MOVES];
+
 	@Override
 	public int getMove(GameState state)
 	{
-		int[] moves = state.getLegalMoves();
-		return moves[rnd.nextInt(moves.length)];
+		int count = state.generateLegalMoves(moves);
+		return moves[rnd.nextInt(count)];
 	}
 }
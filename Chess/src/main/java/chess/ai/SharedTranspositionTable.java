@@ -0,0 +1,221 @@
+package chess.ai;
+
+import chess.domain.GameState;
+import java.util.Arrays;
+
+/**
+ * Kiinteän kokoinen transpositiotaulu, jota usea hakusäie voi käyttää yhtä aikaa ilman lukitusta
+ * (ks. MinMaxAI.setThreadCount).
+ *
+ * Tietueen tiedot (pistemäärä, syvyys, solmun tyyppi, paras siirto ja sukupolvi) pakataan yhteen
+ * 64-bittiseen lukuun, ja avain tallennetaan xorrattuna sen kanssa samoin kuin perft-testin
+ * hajautustaulussa. Jos toinen säie on kirjoittanut tietueen vain osittain, avain ei täsmää ja
+ * tietue jätetään huomiotta.
+ *
+ * Taulu on jaettu kahden tietueen ämpäreihin: ensimmäinen paikka korvataan vain yhtä syvällä tai
+ * syvemmällä haulla, toinen aina. Taulua ei tyhjennetä, vaan tyhjennys kasvattaa sukupolvea, ja
+ * vanhempien sukupolvien tietueet tulkitaan tyhjiksi.
+ *
+ * Lisäksi taulu sisältää ABDADA-rinnakkaishakua varten merkinnät pelitilanteista, joita jokin
+ * säie parhaillaan analysoi. Merkinnät ovat suoraan osoitettuja, ja uusi merkintä korvaa vanhan,
+ * joten ne ovat vain vihjeitä: merkintä voi kadota tai jäädä voimaan liian pitkäksi aikaa, mikä
+ * ainoastaan muuttaa siirtojen läpikäyntijärjestystä.
+ */
+final class SharedTranspositionTable extends StateInfoTable
+{
+	/**
+	 * Sukupolvien määrä, jonka jälkeen taulu tyhjennetään oikeasti.
+	 */
+	private static final int GENERATIONS = 64;
+
+	/**
+	 * Ämpäreiden määrä, joiden perusteella taulun täyttöaste arvioidaan.
+	 */
+	private static final int USAGE_SAMPLE_BUCKETS = 1000;
+
+	/**
+	 * Analysoitavana olevien pelitilanteiden merkintöjen määrä (kahden potenssi).
+	 */
+	private static final int SEARCH_MARKS = 1 << 15;
+
+	/**
+	 * Analysoitavana olevien pelitilanteiden tunnisteet (0 jos paikka on vapaa) tai null, jos
+	 * merkintöjä ei ole otettu käyttöön.
+	 */
+	private long[] searchMarks;
+
+	/**
+	 * Tietueet pareittain: avain xorrattuna tiedoilla ja tiedot.
+	 */
+	private final long[] entries;
+
+	/**
+	 * Tarkistustunnisteet xorrattuna tiedoilla tai null, jos tarkistustunnisteet eivät ole
+	 * käytössä (ks. GameState.VERIFICATION_KEYS).
+	 */
+	private final long[] verificationKeys;
+
+	/**
+	 * Bittimaski ämpärin indeksin laskemiseksi.
+	 */
+	private final int mask;
+
+	/**
+	 * Nykyinen sukupolvi (1..GENERATIONS-1).
+	 */
+	private int generation = 1;
+
+	/**
+	 * Luo uuden transpositiotaulun.
+	 *
+	 * @param capacity tietueiden määrä (kahden potenssi, vähintään 2)
+	 */
+	SharedTranspositionTable(int capacity)
+	{
+		if (capacity < 2 || Integer.bitCount(capacity) != 1)
+			throw new IllegalArgumentException("Capacity must be a power of two.");
+		entries = new long[2 * capacity];
+		verificationKeys = GameState.VERIFICATION_KEYS ? new long[capacity] : null;
+		mask = capacity / 2 - 1;
+	}
+
+	/**
+	 * Lisää tauluun tietueen. Avaimena käytetään tietueen state-kenttää.
+	 *
+	 * @param info lisättävä tietue (syvyys 1-255)
+	 */
+	void put(StateInfo info)
+	{
+		long data = info.score & 0xFFFFFFFFL
+				| (long) info.depth << 32
+				| (long) info.nodeType << 40
+				| (info.bestMove & 0xFFFFL) << 42
+				| (long) generation << 58;
+		int slot = 2 * ((int) info.state & mask);
+		long stored = entries[2 * slot + 1];
+		if (isCurrent(stored) && (entries[2 * slot] ^ stored) != info.state
+				&& getDepth(stored) > info.depth)
+			++slot;
+		entries[2 * slot + 1] = data;
+		entries[2 * slot] = info.state ^ data;
+		if (verificationKeys != null)
+			verificationKeys[slot] = info.verificationKey ^ data;
+	}
+
+	/**
+	 * Hakee taulusta pelitilannetta vastaavan tietueen.
+	 *
+	 * @param state pelitilanteen Zobrist-koodi
+	 * @return uusi tietue taulun tiedoista tai null jos tietuetta ei löytynyt
+	 */
+	@Override
+	StateInfo get(long state)
+	{
+		int slot = 2 * ((int) state & mask);
+		for (int i = 0; i < 2; ++i, ++slot) {
+			// Tiedot luetaan vain kerran, jotta ne ovat samat, joilla avain tarkistettiin.
+			long data = entries[2 * slot + 1];
+			if ((entries[2 * slot] ^ data) != state || !isCurrent(data))
+				continue;
+			long verificationKey = verificationKeys != null ? verificationKeys[slot] ^ data : 0;
+			StateInfo info = new StateInfo(state, verificationKey);
+			info.score = (int) data;
+			info.depth = getDepth(data);
+			info.nodeType = (int) (data >>> 40) & 3;
+			info.bestMove = (short) (data >>> 42);
+			return info;
+		}
+		return null;
+	}
+
+	/**
+	 * Tyhjentää taulun ja analysoitavana olevien pelitilanteiden merkinnät. Ei saa kutsua haun
+	 * aikana.
+	 */
+	void clear()
+	{
+		if (++generation == GENERATIONS) {
+			Arrays.fill(entries, 0);
+			generation = 1;
+		}
+		if (searchMarks != null)
+			Arrays.fill(searchMarks, 0);
+	}
+
+	/**
+	 * Ottaa käyttöön analysoitavana olevien pelitilanteiden merkinnät. Merkinnät vievät muistia,
+	 * joten ne luodaan vasta, kun niitä tarvitaan (ABDADA usealla säikeellä). Ei saa kutsua haun
+	 * aikana.
+	 */
+	void enableSearchMarks()
+	{
+		if (searchMarks == null)
+			searchMarks = new long[SEARCH_MARKS];
+	}
+
+	/**
+	 * Merkitsee pelitilanteen analysoitavaksi. Merkintöjen on oltava käytössä
+	 * (ks. enableSearchMarks).
+	 *
+	 * @param state pelitilanteen Zobrist-koodi
+	 */
+	void markSearching(long state)
+	{
+		searchMarks[(int) state & (SEARCH_MARKS - 1)] = state;
+	}
+
+	/**
+	 * Poistaa pelitilanteen merkinnän, jos toinen pelitilanne ei ole jo korvannut sitä.
+	 *
+	 * @param state pelitilanteen Zobrist-koodi
+	 */
+	void unmarkSearching(long state)
+	{
+		int idx = (int) state & (SEARCH_MARKS - 1);
+		if (searchMarks[idx] == state)
+			searchMarks[idx] = 0;
+	}
+
+	/**
+	 * Tarkistaa, analysoiko jokin säie parhaillaan pelitilannetta.
+	 *
+	 * @param state pelitilanteen Zobrist-koodi
+	 * @return true jos pelitilanne on merkitty analysoitavaksi
+	 */
+	boolean isSearching(long state)
+	{
+		return searchMarks[(int) state & (SEARCH_MARKS - 1)] == state;
+	}
+
+	/**
+	 * Arvioi taulun täyttöasteen nykyisen sukupolven tietueista.
+	 *
+	 * @return käytössä olevien paikkojen osuus (0-1)
+	 */
+	double getUsage()
+	{
+		int buckets = Math.min(USAGE_SAMPLE_BUCKETS, mask + 1);
+		int used = 0;
+		for (int slot = 0; slot < 2 * buckets; ++slot) {
+			if (isCurrent(entries[2 * slot + 1]))
+				++used;
+		}
+		return used / (2.0 * buckets);
+	}
+
+	/**
+	 * Tarkistaa, kuuluuko tietue nykyiseen sukupolveen.
+	 */
+	private boolean isCurrent(long data)
+	{
+		return (int) (data >>> 58) == generation;
+	}
+
+	/**
+	 * Palauttaa tietueen syvyyden.
+	 */
+	private static int getDepth(long data)
+	{
+		return (int) (data >>> 32) & 0xFF;
+	}
+}
@@ -28,6 +28,11 @@ final class StateInfo
 	 */
 	final long state;
 
+	/**
+	 * Pelitilanteen tarkistustunniste (ks. GameState.getVerificationKey).
+	 */
+	final long verificationKey;
+
 	/**
 	 * Syvyys, johon asti pelitilanne on analysoitu.
 	 */
@@ -39,10 +44,10 @@ final class StateInfo
 	int score;
 
 	/**
-	 * Paras löydetty siirto koodattuna 32-bittisenä lukuna (ks Move), tai 0 jos siirtoa ei ole
-	 * vielä löydetty.
+	 * Paras löydetty siirto tiiviissä 16-bittisessä muodossa (ks. Move.toCompact), tai 0 jos
+	 * siirtoa ei ole vielä löydetty.
 	 */
-	int bestMove;
+	short bestMove;
 
 	/**
 	 * Hakupuun solmun tyyppi. Eksakti, alaraja tai yläraja. (0-2)
@@ -55,7 +60,19 @@ final class StateInfo
 	 * @param state pelitilanteen Zobrist-tunniste
 	 */
 	StateInfo(long state)
+	{
+		this(state, 0);
+	}
+
+	/**
+	 * Konstruktori.
+	 *
+	 * @param state pelitilanteen Zobrist-tunniste
+	 * @param verificationKey pelitilanteen tarkistustunniste
+	 */
+	StateInfo(long state, long verificationKey)
 	{
 		this.state = state;
+		this.verificationKey = verificationKey;
 	}
 }
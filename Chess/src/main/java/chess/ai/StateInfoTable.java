@@ -0,0 +1,75 @@
+package chess.ai;
+
+/**
+ * Yhteinen kantaluokka tauluille, joista haetaan tietueita pelitilanteen Zobrist-tunnisteella
+ * (TranspositionTable ja SharedTranspositionTable).
+ *
+ * Luokka toteuttaa tarkistavan haun, jossa tietueen tarkistustunnistetta verrataan
+ * pelitilanteen tarkistustunnisteeseen (ks. GameState.VERIFICATION_KEYS), sekä pitää kirjaa
+ * havaituista Zobrist-tunnisteiden törmäyksistä. Jos taulua käyttää usea säie, laskureita
+ * päivitetään ilman synkronointia, joten ne ovat vain suuntaa antavia.
+ */
+abstract class StateInfoTable
+{
+	/**
+	 * Tarkistavien hakujen lukumäärä, joissa Zobrist-tunniste löytyi.
+	 */
+	private long verifiedHitCount = 0;
+
+	/**
+	 * Tarkistavien hakujen lukumäärä, joissa Zobrist-tunniste löytyi mutta tarkistustunniste ei
+	 * täsmännyt.
+	 */
+	private long collisionCount = 0;
+
+	/**
+	 * Hakee taulusta pelitilannetta vastaavan tietueen.
+	 *
+	 * @param state pelitilanteen Zobrist-koodi
+	 * @return tietue tai null jos tietuetta ei löytynyt
+	 */
+	abstract StateInfo get(long state);
+
+	/**
+	 * Hakee taulusta pelitilannetta vastaavan tietueen ja tarkistaa, että myös tietueen
+	 * tarkistustunniste täsmää. Jos ei täsmää, kyseessä on Zobrist-tunnisteiden törmäys, joka
+	 * kirjataan ja tietue jätetään huomiotta.
+	 *
+	 * @param state pelitilanteen Zobrist-koodi
+	 * @param verificationKey pelitilanteen tarkistustunniste
+	 * @return tietue tai null jos tietuetta ei löytynyt
+	 */
+	final StateInfo get(long state, long verificationKey)
+	{
+		StateInfo info = get(state);
+		if (info == null)
+			return null;
+		++verifiedHitCount;
+		if (info.verificationKey != verificationKey) {
+			++collisionCount;
+			return null;
+		}
+		return info;
+	}
+
+	/**
+	 * Palauttaa tarkistavien hakujen osumien määrän taulun luomisesta lähtien.
+	 *
+	 * @return
+	 */
+	final long getVerifiedHitCount()
+	{
+		return verifiedHitCount;
+	}
+
+	/**
+	 * Palauttaa havaittujen Zobrist-tunnisteiden törmäysten määrän taulun luomisesta lähtien.
+	 * Tyhjentäminen ei nollaa laskuria, jotta törmäystiheyttä voidaan mitata pitkän ajon yli.
+	 *
+	 * @return
+	 */
+	final long getCollisionCount()
+	{
+		return collisionCount;
+	}
+}
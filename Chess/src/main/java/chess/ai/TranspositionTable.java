@@ -7,7 +7,9 @@ package chess.ai;
  * Avaimena käytetään pelitilanteesta laskettua 64-bittistä Zobrist-tunnistetta, josta edelleen
  * lasketaan hajautusarvo vähiten merkitsevistä biteistä. Teoriassa on mahdollista, että kahdella
  * pelitilanteella on sama 64-bittinen tunniste, mutta riski on riittävän pieni verrattuna
- * saavutettuun hyötyyn nopeudessa ja muistinkulutuksessa.
+ * saavutettuun hyötyyn nopeudessa ja muistinkulutuksessa. Törmäysten todellista määrää voidaan
+ * mitata tallentamalla tietueisiin myös tarkistustunniste (ks. GameState.VERIFICATION_KEYS) ja
+ * hakemalla tietueita tarkistavalla get-metodilla.
  *
  * Hajautustaulu käyttää avointa hajautusta (open addressing) ja neliöllistä kokeilujonoa
  * ((h + i/2 + i^2/2) % n). Kun taulun koko on kahden potenssi, kokeilujono käy läpi kaikki taulun
@@ -17,7 +19,7 @@ package chess.ai;
  * kokeilujonot pysyvät yhtenäisenä. Kun varattujen elementtien (käytössä olevat + poistetut)
  * yhteismäärä ylittää puolet kapasiteetista, suoritetaan uudelleenhajautus.
  */
-final class TranspositionTable
+final class TranspositionTable extends StateInfoTable
 {
 	/**
 	 * Hajautustaulun oletuskoko alussa.
@@ -104,6 +106,7 @@ final class TranspositionTable
 	 * @param state pelitilanteen Zobrist-koodi
 	 * @return vastaava StateInfo tietue tai null jos tietuetta ei löytynyt
 	 */
+	@Override
 	public StateInfo get(long state)
 	{
 		int h = (int) state & mask;
@@ -1,5 +1,7 @@
 package chess.domain;
 
+import java.util.Arrays;
+
 /**
  * Tietorakenne nappuloiden sijaintien tallentamiseen 64-bittisinä maskeina. Maskit tallennetaan
  * row-major formaatissa, niin että bitti 0 vastaa laudan vasenta yläkulmaan (a8) ja bitti 63
@@ -7,6 +9,9 @@ package chess.domain;
  *
  * Tallentaa 8 maskia: 6 eri nappulatyypeille ja 2 pelaajille. Tietyn pelaajan tietyn tyyppiset
  * nappulat saadaa AND-operaatiolla nappulatyypin maskin ja pelaajan maskin välillä.
+ *
+ * Maskien lisäksi ylläpidetään ruutukohtaista taulukkoa (mailbox), josta yksittäisen ruudun
+ * nappula saadaan yhdellä taulukon luvulla.
  */
 public final class BitBoard
 {
@@ -21,12 +26,19 @@ public final class BitBoard
 	 */
 	private final long[] playerPieces;
 
+	/**
+	 * Kunkin ruudun nappula koodattuna muotoon (pelaaja << 3 | nappulatyyppi), tai -1 jos ruutu
+	 * on tyhjä.
+	 */
+	private final byte[] squares;
+
 	/**
 	 * Luo tyhjän laudan.
 	 */
 	public BitBoard()
 	{
-		this(new long[Pieces.COUNT], new long[Players.COUNT]);
+		this(new long[Pieces.COUNT], new long[Players.COUNT], new byte[64]);
+		Arrays.fill(squares, (byte) -1);
 	}
 
 	/**
@@ -52,6 +64,7 @@ public final class BitBoard
 			pieces[piece] = 0;
 		playerPieces[Players.WHITE] = 0;
 		playerPieces[Players.BLACK] = 0;
+		Arrays.fill(squares, (byte) -1);
 	}
 
 	/**
@@ -67,6 +80,7 @@ public final class BitBoard
 		long sqrBit = 1L << sqr;
 		pieces[piece] |= sqrBit;
 		playerPieces[player] |= sqrBit;
+		squares[sqr] = (byte) (player << 3 | piece);
 	}
 
 	/**
@@ -82,6 +96,7 @@ public final class BitBoard
 		long sqrBit = 1L << sqr;
 		pieces[piece] &= ~sqrBit;
 		playerPieces[player] &= ~sqrBit;
+		squares[sqr] = -1;
 	}
 
 	/**
@@ -160,11 +175,20 @@ public final class BitBoard
 	 */
 	public int getPieceType(int player, int sqr)
 	{
-		for (int piece = 0; piece < Pieces.COUNT; ++piece) {
-			if (hasPiece(player, piece, sqr))
-				return piece;
-		}
-		return -1;
+		int code = squares[sqr];
+		return code >> 3 == player ? code & 7 : -1;
+	}
+
+	/**
+	 * Palauttaa nappulan tyypin ruudussa pelaajasta riippumatta.
+	 *
+	 * @param sqr ruutu (0-63)
+	 * @return nappulatyyppi (0-5) tai -1 jos ruutu tyhjä
+	 */
+	public int getPieceType(int sqr)
+	{
+		int code = squares[sqr];
+		return code >= 0 ? code & 7 : -1;
 	}
 
 	/**
@@ -175,17 +199,13 @@ public final class BitBoard
 	 */
 	public int getPlayer(int sqr)
 	{
-		for (int player = 0; player < Players.COUNT; ++player) {
-			if (hasPiece(player, sqr))
-				return player;
-		}
-		return -1;
+		return squares[sqr] >> 3;
 	}
 
 	@Override
 	public BitBoard clone()
 	{
-		return new BitBoard(pieces.clone(), playerPieces.clone());
+		return new BitBoard(pieces.clone(), playerPieces.clone(), squares.clone());
 	}
 
 	/**
@@ -232,9 +252,10 @@ public final class BitBoard
 	/**
 	 * Muodostaa laudan annetuista bittimaskitaulukoista.
 	 */
-	private BitBoard(long[] pieces, long[] playerPieces)
+	private BitBoard(long[] pieces, long[] playerPieces, byte[] squares)
 	{
 		this.pieces = pieces;
 		this.playerPieces = playerPieces;
+		this.squares = squares;
 	}
 }
@@ -0,0 +1,161 @@
+package chess.domain;
+
+import java.util.Random;
+
+/**
+ * Satunnaisten pelitilanteiden luominen annetulla materiaalilla (esim. "KRPvKR"), mm.
+ * loppupelien testijoukkoja varten.
+ *
+ * Nappulat sijoitetaan tasajakaumasta vapaisiin ruutuihin, ja tilanne hylätään, jos
+ * kumpikaan kuningas on uhattuna. Sotilaat sijoitetaan ennen muita nappuloita, jolloin
+ * jokaisella sijoittelulla on sama todennäköisyys, ja hyväksytyt tilanteet ovat siten
+ * tasajakautuneita kaikkien kelvollisten tilanteiden joukossa. Myös vuorossa oleva pelaaja
+ * arvotaan. Tornitukset ja ohestalyönnit eivät ole sallittuja.
+ *
+ * Tilanteet voidaan luoda järjestysnumeroittain samoin kuin GameGenerator.createGame(long, long),
+ * ja niitä voi kirjoittaa tiedostoon rinnakkain PositionBatch-luokalla.
+ */
+public final class EndgameGenerator
+{
+	/**
+	 * Ruudut, joihin sotilaita voi sijoittaa (ei ensimmäiselle tai viimeiselle riville).
+	 */
+	private static final long PAWN_SQUARES = 0x00FFFFFFFFFFFF00L;
+
+	/**
+	 * Materiaali merkkijonona.
+	 */
+	private final String signature;
+
+	/**
+	 * Nappuloiden määrät (counts[player][piece]).
+	 */
+	private final int[][] counts = new int[Players.COUNT][Pieces.COUNT];
+
+	/**
+	 * Luo generaattorin annetulle materiaalille. Materiaali annetaan muodossa "KRPvKR", jossa
+	 * v-kirjainta ennen ovat valkean ja sen jälkeen mustan nappulat. Kummallakin pelaajalla on
+	 * oltava täsmälleen yksi kuningas.
+	 *
+	 * @param signature materiaali
+	 * @throws IllegalArgumentException jos materiaali ei ole kelvollinen
+	 */
+	public EndgameGenerator(String signature)
+	{
+		String[] sides = signature.split("v", -1);
+		if (sides.length != Players.COUNT)
+			throw new IllegalArgumentException("Invalid material signature.");
+		int pawns = 0;
+		for (int player = 0; player < Players.COUNT; ++player) {
+			for (char c : sides[player].toCharArray()) {
+				int piece = c == 'P' ? Pieces.PAWN : Pieces.fromString(String.valueOf(c));
+				if (piece == -1)
+					throw new IllegalArgumentException("Invalid material signature.");
+				++counts[player][piece];
+			}
+			if (counts[player][Pieces.KING] != 1)
+				throw new IllegalArgumentException("Invalid material signature.");
+			pawns += counts[player][Pieces.PAWN];
+		}
+		if (pawns > Long.bitCount(PAWN_SQUARES) || signature.length() - 1 > 64)
+			throw new IllegalArgumentException("Invalid material signature.");
+		this.signature = signature;
+	}
+
+	/**
+	 * Luo satunnaisen pelitilanteen. Sama siemenluku tuottaa aina saman tilanteen.
+	 *
+	 * @param seed siemenluku satunnaisgeneraattoria varten
+	 * @return pelitilanne
+	 */
+	public GameState createGame(long seed)
+	{
+		Random rnd = new Random(seed);
+		long[] pieces = new long[Players.COUNT * Pieces.COUNT];
+		int player;
+		do {
+			player = rnd.nextInt(Players.COUNT);
+			placePieces(pieces, rnd);
+		} while (isKingAttacked(pieces, Players.WHITE) || isKingAttacked(pieces, Players.BLACK));
+
+		BitBoard board = new BitBoard();
+		for (int i = 0; i < pieces.length; ++i) {
+			for (long p = pieces[i]; p != 0; p -= Long.lowestOneBit(p))
+				board.addPiece(i / Pieces.COUNT, i % Pieces.COUNT, Long.numberOfTrailingZeros(p));
+		}
+		return new GameState(board, player, 0, -1, 0, player);
+	}
+
+	/**
+	 * Luo pelitilannejoukon index:nnen pelitilanteen. Tilanne riippuu vain pääsiemenluvusta ja
+	 * järjestysnumerosta (ks. GameGenerator.getIndexSeed).
+	 *
+	 * @param masterSeed koko joukon siemenluku
+	 * @param index pelitilanteen järjestysnumero joukossa
+	 * @return pelitilanne
+	 */
+	public GameState createGame(long masterSeed, long index)
+	{
+		return createGame(GameGenerator.getIndexSeed(masterSeed, index));
+	}
+
+	/**
+	 * Palauttaa materiaalin merkkijonona.
+	 *
+	 * @return materiaali
+	 */
+	public String getSignature()
+	{
+		return signature;
+	}
+
+	/**
+	 * Sijoittaa nappulat satunnaisiin ruutuihin. Sotilaat sijoitetaan ensin, jotta vapaiden
+	 * ruutujen määrä ei riipu aiemmista arvonnoista.
+	 *
+	 * @param pieces nappuloiden bittimaskit (indeksi player * Pieces.COUNT + piece)
+	 * @param rnd satunnaisgeneraattori
+	 */
+	private void placePieces(long[] pieces, Random rnd)
+	{
+		long occupied = 0;
+		for (int piece = Pieces.PAWN; piece >= 0; --piece) {
+			long allowed = piece == Pieces.PAWN ? PAWN_SQUARES : -1L;
+			for (int player = 0; player < Players.COUNT; ++player) {
+				long mask = 0;
+				for (int i = 0; i < counts[player][piece]; ++i) {
+					int sqr;
+					do {
+						sqr = rnd.nextInt(64);
+					} while ((occupied & 1L << sqr) != 0 || (allowed & 1L << sqr) == 0);
+					mask |= 1L << sqr;
+					occupied |= 1L << sqr;
+				}
+				pieces[player * Pieces.COUNT + piece] = mask;
+			}
+		}
+	}
+
+	/**
+	 * Tarkistaa, onko pelaajan kuningas uhattuna.
+	 *
+	 * @param pieces nappuloiden bittimaskit (indeksi player * Pieces.COUNT + piece)
+	 * @param defendingPlayer puolustava pelaaja
+	 * @return true jos kuningas on uhattuna
+	 */
+	private static boolean isKingAttacked(long[] pieces, int defendingPlayer)
+	{
+		int sqr = Long.numberOfTrailingZeros(pieces[defendingPlayer * Pieces.COUNT + Pieces.KING]);
+		int base = (1 - defendingPlayer) * Pieces.COUNT;
+		long occupied = 0;
+		for (long p : pieces)
+			occupied |= p;
+		long queens = pieces[base + Pieces.QUEEN];
+		long attackers = Movemasks.PAWN_ATTACKS[defendingPlayer][sqr] & pieces[base + Pieces.PAWN]
+				| Movemasks.KNIGHT_MOVES[sqr] & pieces[base + Pieces.KNIGHT]
+				| Movemasks.KING_MOVES[sqr] & pieces[base + Pieces.KING]
+				| Movemasks.getRookMoves(sqr, occupied) & (pieces[base + Pieces.ROOK] | queens)
+				| Movemasks.getBishopMoves(sqr, occupied) & (pieces[base + Pieces.BISHOP] | queens);
+		return attackers != 0;
+	}
+}
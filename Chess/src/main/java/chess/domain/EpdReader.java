@@ -0,0 +1,220 @@
+package chess.domain;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Lukee pelitilanteita EPD-tiedostosta (Extended Position Description) rivi kerrallaan, joten
+ * koko tiedostoa ei tarvitse ladata muistiin. Jokaisella rivillä on FEN-merkkijonon neljä
+ * ensimmäistä kenttää ja niiden jälkeen puolipisteillä erotettuja operaatioita, esim.
+ * "rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq e3 bm e5; id \"test1\";".
+ *
+ * Myös täydet FEN-rivit (siirtolaskurit neljän kentän jälkeen) hyväksytään. Siirtolaskurit
+ * voidaan antaa myös operaatioina hmvc ja fmvn. Tyhjät rivit ja #-merkillä alkavat rivit
+ * ohitetaan.
+ */
+public final class EpdReader implements Closeable
+{
+	/**
+	 * Luettava tiedosto.
+	 */
+	private final BufferedReader reader;
+
+	/**
+	 * Viimeksi luetun rivin numero (alkaen ykkösestä).
+	 */
+	private int lineNumber = 0;
+
+	/**
+	 * Viimeksi luettu pelitilanne.
+	 */
+	private GameState state;
+
+	/**
+	 * Viimeksi luetun rivin operaatiot lukujärjestyksessä.
+	 */
+	private final Map<String, String> operations = new LinkedHashMap<>();
+
+	/**
+	 * Apupuskuri rivin kentille.
+	 */
+	private final String[] fields = new String[4];
+
+	/**
+	 * Luo lukijan.
+	 *
+	 * @param reader luettava tiedosto
+	 */
+	public EpdReader(Reader reader)
+	{
+		this.reader = reader instanceof BufferedReader ? (BufferedReader) reader
+				: new BufferedReader(reader, 1 << 16);
+	}
+
+	/**
+	 * Lukee seuraavan pelitilanteen.
+	 *
+	 * @return false jos tiedosto loppui
+	 * @throws IllegalArgumentException jos rivi ei ole kelvollinen
+	 */
+	public boolean next() throws IOException
+	{
+		String line;
+		do {
+			line = reader.readLine();
+			if (line == null) {
+				state = null;
+				operations.clear();
+				return false;
+			}
+			++lineNumber;
+			line = line.trim();
+		} while (line.isEmpty() || line.charAt(0) == '#');
+
+		try {
+			parseLine(line);
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException("Line " + lineNumber + ": " + e.getMessage(), e);
+		}
+		return true;
+	}
+
+	/**
+	 * Palauttaa viimeksi luetun pelitilanteen.
+	 *
+	 * @return
+	 */
+	public GameState getState()
+	{
+		return state;
+	}
+
+	/**
+	 * Palauttaa operaation operandit. Lainausmerkeissä annetusta merkkijono-operandista
+	 * palautetaan pelkkä sisältö.
+	 *
+	 * @param opcode operaation nimi (esim. "bm" tai "D1")
+	 * @return operandit merkkijonona tai null jos operaatiota ei ole
+	 */
+	public String getOperation(String opcode)
+	{
+		return operations.get(opcode);
+	}
+
+	/**
+	 * Palauttaa kaikki viimeksi luetun rivin operaatiot.
+	 *
+	 * @return
+	 */
+	public Map<String, String> getOperations()
+	{
+		return Collections.unmodifiableMap(operations);
+	}
+
+	/**
+	 * Palauttaa viimeksi luetun rivin numeron.
+	 *
+	 * @return
+	 */
+	public int getLineNumber()
+	{
+		return lineNumber;
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		reader.close();
+	}
+
+	/**
+	 * Jäsentää yhden rivin.
+	 */
+	private void parseLine(String line)
+	{
+		int pos = Fen.splitFields(line, 0, fields, 4);
+		if (pos == -1)
+			throw new IllegalArgumentException("Invalid EPD: too few fields.");
+
+		int halfMoveClock = 0;
+		int fullMoveNumber = 1;
+		int fullMovePos = skipNumber(line, pos);
+		int clocksEnd = skipNumber(line, fullMovePos);
+		if (clocksEnd != -1) {
+			halfMoveClock = Fen.parseNumber(line.substring(pos, fullMovePos).trim());
+			fullMoveNumber = Fen.parseNumber(line.substring(fullMovePos, clocksEnd).trim());
+			pos = clocksEnd;
+		}
+
+		parseOperations(line, pos);
+		String hmvc = operations.get("hmvc");
+		if (hmvc != null)
+			halfMoveClock = Fen.parseNumber(hmvc);
+		String fmvn = operations.get("fmvn");
+		if (fmvn != null)
+			fullMoveNumber = Fen.parseNumber(fmvn);
+
+		state = Fen.parse(fields[0], fields[1], fields[2], fields[3], halfMoveClock,
+				fullMoveNumber);
+	}
+
+	/**
+	 * Jos annetusta kohdasta alkaa kokonaisluku ja sen jälkeen välilyönti, puolipiste tai rivin
+	 * loppu, palauttaa seuraavan kentän alkuindeksin. Muutoin palauttaa -1.
+	 */
+	private static int skipNumber(String line, int pos)
+	{
+		if (pos == -1 || pos == line.length() || !Character.isDigit(line.charAt(pos)))
+			return -1;
+		while (pos < line.length() && Character.isDigit(line.charAt(pos)))
+			++pos;
+		if (pos < line.length() && !Character.isWhitespace(line.charAt(pos))
+				&& line.charAt(pos) != ';')
+			return -1;
+		while (pos < line.length() && Character.isWhitespace(line.charAt(pos)))
+			++pos;
+		return pos;
+	}
+
+	/**
+	 * Jäsentää puolipisteillä erotetut operaatiot. Puolipiste lainausmerkkien sisällä ei päätä
+	 * operaatiota.
+	 */
+	private void parseOperations(String line, int pos)
+	{
+		operations.clear();
+		while (pos < line.length()) {
+			int end = pos;
+			boolean quoted = false;
+			while (end < line.length() && (quoted || line.charAt(end) != ';')) {
+				if (line.charAt(end) == '"')
+					quoted = !quoted;
+				++end;
+			}
+			addOperation(line.substring(pos, end).trim());
+			pos = end + 1;
+		}
+	}
+
+	/**
+	 * Lisää yksittäisen operaation (esim. "bm e5" tai "id \"test1\"").
+	 */
+	private void addOperation(String op)
+	{
+		if (op.isEmpty())
+			return;
+		int split = 0;
+		while (split < op.length() && !Character.isWhitespace(op.charAt(split)))
+			++split;
+		String operand = op.substring(split).trim();
+		if (operand.length() >= 2 && operand.charAt(0) == '"'
+				&& operand.charAt(operand.length() - 1) == '"')
+			operand = operand.substring(1, operand.length() - 1);
+		operations.put(op.substring(0, split), operand);
+	}
+}
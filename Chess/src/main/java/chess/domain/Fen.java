@@ -0,0 +1,269 @@
+package chess.domain;
+
+/**
+ * Pelitilanteiden muunnokset FEN-notaatioon (Forsyth-Edwards Notation) ja takaisin. Esim.
+ * aloitustilanne on "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1".
+ *
+ * Jäsennin hyväksyy myös pelkät neljä ensimmäistä kenttää (kuten EPD-tiedostoissa), jolloin
+ * siirtolaskurit saavat oletusarvot 0 ja 1. Tornitusoikeudet voidaan antaa myös sarakkeina
+ * (Shredder-FEN, esim. "HAha"). Tornitusoikeudet, joita vastaava kuningas tai torni ei ole
+ * alkuperäisellä paikallaan, jätetään huomiotta.
+ */
+public final class Fen
+{
+	/**
+	 * Nappuloiden symbolit FEN-notaatiossa (valkoiset isoilla kirjaimilla).
+	 */
+	private static final String PIECE_SYMBOLS = "KQRBNP";
+
+	/**
+	 * Aloitustilanne FEN-notaatiossa.
+	 */
+	public static final String INITIAL_POSITION =
+			"rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+
+	/**
+	 * Luo pelitilanteen FEN-merkkijonosta.
+	 *
+	 * @param fen pelitilanne FEN-notaatiossa (4 tai 6 kenttää)
+	 * @return pelitilanne
+	 * @throws IllegalArgumentException jos merkkijono ei ole kelvollinen
+	 */
+	public static GameState parse(String fen)
+	{
+		String[] fields = new String[6];
+		int end = splitFields(fen, 0, fields, 4);
+		if (end == -1)
+			throw new IllegalArgumentException("Invalid FEN: too few fields.");
+		int halfMoveClock = 0;
+		int fullMoveNumber = 1;
+		if (fields[4] != null) {
+			if (fields[5] == null)
+				throw new IllegalArgumentException("Invalid FEN: missing full move number.");
+			halfMoveClock = parseNumber(fields[4]);
+			fullMoveNumber = parseNumber(fields[5]);
+		}
+		if (end != fen.length())
+			throw new IllegalArgumentException("Invalid FEN: too many fields.");
+		return parse(fields[0], fields[1], fields[2], fields[3], halfMoveClock, fullMoveNumber);
+	}
+
+	/**
+	 * Luo pelitilanteen FEN-merkkijonon kentistä.
+	 *
+	 * @param placement nappuloiden sijainnit
+	 * @param side vuorossa oleva pelaaja ("w" tai "b")
+	 * @param castling tornitusoikeudet
+	 * @param enPassant ohestalyöntiruutu tai "-"
+	 * @param halfMoveClock siirtojen määrä edellisestä lyönnistä tai sotilaan siirrosta
+	 * @param fullMoveNumber siirtonumero (vähintään 1)
+	 * @return pelitilanne
+	 */
+	static GameState parse(String placement, String side, String castling, String enPassant,
+			int halfMoveClock, int fullMoveNumber)
+	{
+		BitBoard board = parsePlacement(placement);
+
+		int player;
+		if (side.equals("w"))
+			player = Players.WHITE;
+		else if (side.equals("b"))
+			player = Players.BLACK;
+		else
+			throw new IllegalArgumentException("Invalid FEN: side to move must be w or b.");
+
+		int enPassantSqr = -1;
+		if (!enPassant.equals("-")) {
+			enPassantSqr = parseSquare(enPassant);
+			if (enPassantSqr >>> 3 != 2 + 3 * player)
+				throw new IllegalArgumentException("Invalid FEN: en passant square on wrong rank.");
+		}
+
+		if (halfMoveClock < 0 || fullMoveNumber < 1)
+			throw new IllegalArgumentException("Invalid FEN: invalid move counters.");
+
+		return new GameState(board, player, parseCastlingRights(castling), enPassantSqr,
+				halfMoveClock, 2 * (fullMoveNumber - 1) + player);
+	}
+
+	/**
+	 * Muuntaa pelitilanteen FEN-merkkijonoksi.
+	 *
+	 * @param state pelitilanne
+	 * @return pelitilanne FEN-notaatiossa
+	 */
+	public static String toString(GameState state)
+	{
+		BitBoard board = state.getBoard();
+		StringBuilder sb = new StringBuilder(90);
+		for (int row = 0; row < 8; ++row) {
+			if (row > 0)
+				sb.append('/');
+			int empty = 0;
+			for (int col = 0; col < 8; ++col) {
+				int sqr = row * 8 + col;
+				int player = board.getPlayer(sqr);
+				if (player == -1) {
+					++empty;
+					continue;
+				}
+				if (empty > 0)
+					sb.append((char) ('0' + empty));
+				empty = 0;
+				char c = PIECE_SYMBOLS.charAt(board.getPieceType(player, sqr));
+				sb.append(player == Players.WHITE ? c : Character.toLowerCase(c));
+			}
+			if (empty > 0)
+				sb.append((char) ('0' + empty));
+		}
+
+		sb.append(state.getNextMovingPlayer() == Players.WHITE ? " w " : " b ");
+
+		long rights = state.getCastlingRights();
+		if (rights == 0)
+			sb.append('-');
+		if ((rights & 1L << 63) != 0)
+			sb.append('K');
+		if ((rights & 1L << 56) != 0)
+			sb.append('Q');
+		if ((rights & 1L << 7) != 0)
+			sb.append('k');
+		if ((rights & 1L << 0) != 0)
+			sb.append('q');
+
+		int ep = state.getEnPassantSquare();
+		sb.append(' ');
+		if (ep == -1)
+			sb.append('-');
+		else
+			sb.append((char) ('a' + ep % 8)).append((char) ('8' - ep / 8));
+
+		sb.append(' ').append(state.getHalfMoveClock());
+		sb.append(' ').append(state.getFullMoveNumber());
+		return sb.toString();
+	}
+
+	/**
+	 * Erottaa merkkijonosta välilyönnein erotetut kentät. Vähintään minFields kenttää luetaan
+	 * aina; sen jälkeen kenttiä luetaan taulukon kokoon asti niin kauan kuin merkkijonoa riittää.
+	 * Puuttuvat kentät jäävät arvoon null.
+	 *
+	 * @param s merkkijono
+	 * @param start aloitusindeksi
+	 * @param fields taulukko kentille
+	 * @param minFields pakollisten kenttien määrä
+	 * @return indeksi viimeisen luetun kentän ja sitä seuraavien välilyöntien jälkeen tai -1
+	 * jos pakollisia kenttiä ei löytynyt
+	 */
+	static int splitFields(String s, int start, String[] fields, int minFields)
+	{
+		int pos = skipWhitespace(s, start);
+		for (int i = 0; i < fields.length; ++i) {
+			if (pos == s.length()) {
+				if (i < minFields)
+					return -1;
+				fields[i] = null;
+				continue;
+			}
+			int end = pos;
+			while (end < s.length() && !Character.isWhitespace(s.charAt(end)))
+				++end;
+			fields[i] = s.substring(pos, end);
+			pos = skipWhitespace(s, end);
+		}
+		return pos;
+	}
+
+	/**
+	 * Palauttaa ensimmäisen ei-tyhjän merkin indeksin.
+	 */
+	private static int skipWhitespace(String s, int pos)
+	{
+		while (pos < s.length() && Character.isWhitespace(s.charAt(pos)))
+			++pos;
+		return pos;
+	}
+
+	/**
+	 * Jäsentää nappuloiden sijainnit. Rivit luetaan ylhäältä (8. rivi) alas.
+	 */
+	private static BitBoard parsePlacement(String placement)
+	{
+		BitBoard board = new BitBoard();
+		int sqr = 0;
+		int col = 0;
+		for (int i = 0; i < placement.length(); ++i) {
+			char c = placement.charAt(i);
+			if (c == '/') {
+				if (col != 8 || sqr == 64)
+					throw new IllegalArgumentException("Invalid FEN: bad rank length.");
+				col = 0;
+			} else if (c >= '1' && c <= '8') {
+				col += c - '0';
+				sqr += c - '0';
+			} else {
+				int piece = PIECE_SYMBOLS.indexOf(Character.toUpperCase(c));
+				if (piece == -1)
+					throw new IllegalArgumentException("Invalid FEN: unknown piece '" + c + "'.");
+				if (col >= 8)
+					throw new IllegalArgumentException("Invalid FEN: bad rank length.");
+				board.addPiece(Character.isUpperCase(c) ? Players.WHITE : Players.BLACK, piece,
+						sqr);
+				++col;
+				++sqr;
+			}
+			if (col > 8)
+				throw new IllegalArgumentException("Invalid FEN: bad rank length.");
+		}
+		if (col != 8 || sqr != 64)
+			throw new IllegalArgumentException("Invalid FEN: board must have 8 ranks.");
+		return board;
+	}
+
+	/**
+	 * Jäsentää tornitusoikeudet bittimaskiksi (ykkösbitti torniruudun kohdalla).
+	 */
+	private static long parseCastlingRights(String castling)
+	{
+		if (castling.equals("-"))
+			return 0;
+		long rights = 0;
+		for (int i = 0; i < castling.length(); ++i) {
+			char c = castling.charAt(i);
+			if (c == 'K' || c == 'H')
+				rights |= 1L << 63;
+			else if (c == 'Q' || c == 'A')
+				rights |= 1L << 56;
+			else if (c == 'k' || c == 'h')
+				rights |= 1L << 7;
+			else if (c == 'q' || c == 'a')
+				rights |= 1L << 0;
+			else
+				throw new IllegalArgumentException("Invalid FEN: bad castling rights.");
+		}
+		return rights;
+	}
+
+	/**
+	 * Jäsentää ruudun (esim. "e3").
+	 */
+	private static int parseSquare(String s)
+	{
+		if (s.length() != 2 || s.charAt(0) < 'a' || s.charAt(0) > 'h' || s.charAt(1) < '1'
+				|| s.charAt(1) > '8')
+			throw new IllegalArgumentException("Invalid FEN: bad square \"" + s + "\".");
+		return ('8' - s.charAt(1)) * 8 + s.charAt(0) - 'a';
+	}
+
+	/**
+	 * Jäsentää ei-negatiivisen kokonaisluvun.
+	 */
+	static int parseNumber(String s)
+	{
+		try {
+			return Integer.parseInt(s);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid FEN: bad number \"" + s + "\".");
+		}
+	}
+}
@@ -4,9 +4,19 @@ import java.util.Random;
 
 /**
  * Satunnaisen pelitilanteen luominen.
+ *
+ * Suurten pelitilannejoukkojen luomista varten kunkin tilanteen siemenluku voidaan johtaa
+ * pääsiemenluvusta ja tilanteen järjestysnumerosta (ks. createGame(long, long)), jolloin
+ * tilanteet voidaan luoda missä järjestyksessä tahansa ja rinnakkain niin, että tulos on aina
+ * sama.
  */
 public final class GameGenerator
 {
+	/**
+	 * SplitMix64-generaattorin askel (kultaisen leikkauksen mukainen pariton vakio).
+	 */
+	private static final long SPLITMIX_GAMMA = 0x9E3779B97F4A7C15L;
+
 	/**
 	 * Luo satunnaisen pelitilanteen. Jos pelitilanne ei ole laillinen, arvotaan uusi niin kauan
 	 * kunnes laillinen tilanne löytyy.
@@ -26,10 +36,40 @@ public final class GameGenerator
 			addRandomizedPieces(board, 0, 2, Pieces.KNIGHT, rnd);
 			addRandomizedPieces(board, 0, 8, Pieces.PAWN, rnd);
 			state = new GameState(board, Players.WHITE);
-		} while (state.isCheckMate() || state.isStaleMate() || state.isKingChecked(Players.BLACK));
+		} while (state.isKingChecked(Players.BLACK) || !state.hasAnyLegalMove());
 		return state;
 	}
 
+	/**
+	 * Luo pelitilannejoukon index:nnen satunnaisen pelitilanteen. Tilanne riippuu vain
+	 * pääsiemenluvusta ja järjestysnumerosta.
+	 *
+	 * @param masterSeed koko joukon siemenluku
+	 * @param index pelitilanteen järjestysnumero joukossa
+	 * @return pelitilanne
+	 */
+	public static GameState createGame(long masterSeed, long index)
+	{
+		return createGame(getIndexSeed(masterSeed, index));
+	}
+
+	/**
+	 * Johtaa järjestysnumeroa vastaavan siemenluvun pääsiemenluvusta samoin kuin
+	 * SplitMix64-generaattori (ja Java 8:n SplittableRandom) johtaa peräkkäiset arvonsa, joten
+	 * vierekkäisten järjestysnumeroiden siemenluvut eivät korreloi keskenään.
+	 *
+	 * @param masterSeed koko joukon siemenluku
+	 * @param index järjestysnumero
+	 * @return siemenluku
+	 */
+	public static long getIndexSeed(long masterSeed, long index)
+	{
+		long z = masterSeed + (index + 1) * SPLITMIX_GAMMA;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
 	/**
 	 * Lisää satunnaisen määrän tietyn tyyppisiä nappuloita kummallekin pelaajalle.
 	 *
@@ -9,6 +9,8 @@ import java.util.Random;
  * mattitilanteiden tarkastuksen yms. perusoperaatiot.
  *
  * Pelitilanteesta pidetään jatkuvasti yllä Zobrist-hajautuskoodia transpositiotaulua varten.
+ * Lisäksi ylläpidetään pelkkien sotilaiden Zobrist-koodia sekä nappuloiden lukumääristä koostuvaa
+ * materiaalitunnistetta.
  */
 public final class GameState
 {
@@ -16,27 +18,27 @@ public final class GameState
 	 * Lista satunnaisnumeroista Zobrist-hajautuskoodin laskemiseksi. Jokaiselle
 	 * pelaaja-nappula-ruutu-kombinaatiolle on oma satunnaisnumeronsa.
 	 */
-	private static final long[] ZOBRIST_RND = new long[Players.COUNT * Pieces.COUNT * 64];
+	static final long[] ZOBRIST_RND = new long[Players.COUNT * Pieces.COUNT * 64];
 
 	/**
 	 * Satunnaisnumero, jolla zobrist-koodi xorrataan kun musta on vuorossa.
 	 */
-	private static final long ZOBRIST_RND_PLAYER;
+	static final long ZOBRIST_RND_PLAYER;
 
 	/**
 	 * Satunnaisnumerot ohestalyöntiruuduille (näistä ainoastaan 16 on käytössä).
 	 */
-	private static final long[] ZOBRIST_RND_EN_PASSANT = new long[64];
+	static final long[] ZOBRIST_RND_EN_PASSANT = new long[64];
 
 	/**
 	 * Satunnaisnumerot tornitusoikeuksille (näistä ainoastaan 4 on käytössä).
 	 */
-	private static final long[] ZOBRIST_RND_CASTLINGRIGHTS = new long[64];
+	static final long[] ZOBRIST_RND_CASTLINGRIGHTS = new long[64];
 
 	/**
 	 * Tyhjää lautaa vastaava satunnaisnumero.
 	 */
-	private static final long ZOBRIST_RND_EMPTY;
+	static final long ZOBRIST_RND_EMPTY;
 
 	/**
 	 * Zobrist-satunnaisnumeroiden alustus.
@@ -54,9 +56,147 @@ public final class GameState
 	}
 
 	/**
-	 * Taulukoiden aloituskapasiteetti.
+	 * Ylläpidetäänkö Zobrist-tunnisteen lisäksi toista, siitä riippumatonta 64-bittistä
+	 * tarkistustunnistetta (ks. getVerificationKey). Otetaan käyttöön järjestelmäominaisuudella
+	 * -Dchess.verificationKeys=true.
 	 */
-	static final private int START_CAPACITY = 8;
+	public static final boolean VERIFICATION_KEYS = Boolean.getBoolean("chess.verificationKeys");
+
+	/**
+	 * Tarkistustunnisteen satunnaisnumerot pelaaja-nappula-ruutu-kombinaatioille.
+	 */
+	private static final long[] VERIFY_RND = new long[Players.COUNT * Pieces.COUNT * 64];
+
+	/**
+	 * Tarkistustunnisteen satunnaisnumero, kun musta on vuorossa.
+	 */
+	private static final long VERIFY_RND_PLAYER;
+
+	/**
+	 * Tarkistustunnisteen satunnaisnumerot ohestalyöntiruuduille.
+	 */
+	private static final long[] VERIFY_RND_EN_PASSANT = new long[64];
+
+	/**
+	 * Tarkistustunnisteen satunnaisnumerot tornitusoikeuksille.
+	 */
+	private static final long[] VERIFY_RND_CASTLINGRIGHTS = new long[64];
+
+	/**
+	 * Tyhjää lautaa vastaava tarkistustunnisteen satunnaisnumero.
+	 */
+	private static final long VERIFY_RND_EMPTY;
+
+	/**
+	 * Tarkistustunnisteen satunnaisnumeroiden alustus eri siemenluvulla kuin Zobrist-tunnisteen.
+	 */
+	static {
+		Random rnd = new Random(0x5EED5EEDL);
+		for (int i = 0; i < VERIFY_RND.length; ++i)
+			VERIFY_RND[i] = rnd.nextLong();
+		VERIFY_RND_PLAYER = rnd.nextLong();
+		VERIFY_RND_EMPTY = rnd.nextLong();
+		for (int i = 0; i < VERIFY_RND_EN_PASSANT.length; ++i)
+			VERIFY_RND_EN_PASSANT[i] = rnd.nextLong();
+		for (int i = 0; i < VERIFY_RND_CASTLINGRIGHTS.length; ++i)
+			VERIFY_RND_CASTLINGRIGHTS[i] = rnd.nextLong();
+	}
+
+	/**
+	 * Materiaalitunnisteessa jokaisen pelaaja-nappula-kombinaation lukumäärälle varattujen bittien
+	 * määrä.
+	 */
+	private static final int MATERIAL_BITS = 4;
+
+	/**
+	 * Vaaleat ruudut (a8, c8, ..., h1).
+	 */
+	private static final long LIGHT_SQUARES = 0x55AA55AA55AA55AAL;
+
+	/**
+	 * Laillisten siirtojen maksimimäärä missä tahansa pelitilanteessa (218) pyöristettynä ylöspäin.
+	 */
+	public static final int MAX_MOVES = 256;
+
+	/**
+	 * Laillisten siirtojen maksimimäärä yhdestä ruudusta (kuningatar keskellä tyhjää lautaa).
+	 */
+	public static final int MAX_SQUARE_MOVES = 27;
+
+	/**
+	 * Historiapinon aloituskapasiteetti puolisiirtoina. Riittää tavalliseen hakuun ilman, että
+	 * pinoa tarvitsee kasvattaa, mutta pitää uusien pelitilanteiden luomisen ja kopioinnin
+	 * halpana.
+	 */
+	static final private int START_CAPACITY = 16;
+
+	/**
+	 * Historiapinon tietueen koon (long-alkioina) kaksikantainen logaritmi. Tietue on 64 tavua.
+	 */
+	private static final int RECORD_SHIFT = 3;
+
+	/**
+	 * Historiapinon tietueen koko long-alkioina.
+	 */
+	private static final int RECORD_SIZE = 1 << RECORD_SHIFT;
+
+	/**
+	 * Tietueen kenttä: Zobrist-tunniste.
+	 */
+	private static final int KEY = 0;
+
+	/**
+	 * Tietueen kenttä: sotilasrakenteen Zobrist-tunniste (ks. getPawnKey).
+	 */
+	private static final int PAWN_KEY = 1;
+
+	/**
+	 * Tietueen kenttä: materiaalitunniste (ks. getMaterialKey).
+	 */
+	private static final int MATERIAL_KEY = 2;
+
+	/**
+	 * Tietueen kenttä: tornitusoikeudet.
+	 */
+	private static final int CASTLING = 3;
+
+	/**
+	 * Tietueen kentät: pelaajien uhkaamat ruudut (ATTACKS + player). Lasketaan laiskasti.
+	 */
+	private static final int ATTACKS = 4;
+
+	/**
+	 * Tietueen kenttä: pakatut pienet arvot. Bitit 0-6 ohestalyöntiruutu + 1 (0 jos ei
+	 * ohestalyöntiä), bitit 8-15 pelitilanteen tila + 1 (0 jos ei vielä laskettu), bitit 16-17
+	 * ovatko pelaajien uhkaamat ruudut laskettu ja bitit 32-63 siirtojen määrä edellisestä
+	 * lyönnistä tai sotilaan siirrosta.
+	 */
+	private static final int INFO = 6;
+
+	/**
+	 * Tietueen kenttä: tarkistustunniste (0 jos VERIFICATION_KEYS ei ole käytössä).
+	 */
+	private static final int VERIFY_KEY = 7;
+
+	/**
+	 * Ohestalyöntiruudun maski INFO-kentässä.
+	 */
+	private static final long EP_MASK = 0x7F;
+
+	/**
+	 * Pelitilanteen tilan sijainti INFO-kentässä.
+	 */
+	private static final int STATUS_SHIFT = 8;
+
+	/**
+	 * Uhattujen ruutujen voimassaolobittien sijainti INFO-kentässä.
+	 */
+	private static final int ATTACKS_VALID_SHIFT = 16;
+
+	/**
+	 * Siirtolaskurin sijainti INFO-kentässä.
+	 */
+	private static final int CLOCK_SHIFT = 32;
 
 	/**
 	 * Laudan tilanteen bittimaskiesitys.
@@ -74,26 +214,52 @@ public final class GameState
 	private int ply = 0;
 
 	/**
-	 * Pino aiempien pelitilanteiden Zobrist-tunnisteille. Tämänhetkinen tunniste on
-	 * zobristCodes[ply].
+	 * Ennen pelitilanteen luomista pelattujen puolisiirtojen lukumäärä (esim. FEN-merkkijonon
+	 * siirtonumerosta). Käytetään vain siirtonumeron laskemiseen.
+	 */
+	private final int initialPly;
+
+	/**
+	 * Pino pelitilanteiden tiedoista. Jokaista puolisiirtoa vastaa yksi RECORD_SIZE alkion
+	 * tietue, ja tämänhetkisen pelitilanteen tietue alkaa indeksistä ply &lt;&lt; RECORD_SHIFT.
+	 * Siirto kopioi edellisen tietueen tunnisteet ja päivittää ne; siirron peruminen vain
+	 * palauttaa nappulat ja siirtyy edelliseen tietueeseen.
 	 */
-	private long[] zobristCodes;
+	private long[] history;
 
 	/**
-	 * Pino aiempien pelitilanteiden ohestalyöntiruuduille. Tämänhetkinen ohestalyöntiruutu on
-	 * enPassantSquares[ply].
+	 * Kunkin pelitilanteen esiintymiskerrat pelin historiassa (mukaanlukien nykyinen).
 	 */
-	private int[] enPassantSquares;
+	private RepetitionTable repetitions;
 
 	/**
-	 * Pino aiempien pelitilanteiden tornitusoikeuksista.
+	 * Siirtovuorossa olevan pelaajan kuninkaan sijainti tai -1 jos kuningasta ei ole.
+	 * (Päivitetään updateLegalityMasks-metodissa.)
 	 */
-	private long[] castlingRights;
+	private int kingSqr;
 
 	/**
-	 * Pitää kirjaa kuinka monta siirtoa on kulunut edellisestä lyönnistä tai sotilaan siirrosta.
+	 * Ruudut, joihin muiden nappuloiden kuin kuninkaan on siirryttävä shakin torjumiseksi.
+	 * (Päivitetään updateLegalityMasks-metodissa.)
 	 */
-	private int[] halfMoveClocks;
+	private long checkMask;
+
+	/**
+	 * Kuninkaaseen sidotut omat nappulat. (Päivitetään updateLegalityMasks-metodissa.)
+	 */
+	private long pinnedPieces;
+
+	/**
+	 * Sallitut ruudut kullekin sidotulle nappulalle. Arvot ovat voimassa vain pinnedPieces-maskin
+	 * ruuduille.
+	 */
+	private final long[] pinRays = new long[64];
+
+	/**
+	 * Väliaikainen taulukko lyöntisarjan pistemäärille (ks. getStaticExchangeScore). Laudalla
+	 * on enintään 32 nappulaa, joten sarjassa on enintään 32 lyöntiä.
+	 */
+	private final int[] exchangeGains = new int[33];
 
 	/**
 	 * Luo uuden pelitilanteen käyttäen standardia shakin aloitusmuodostelmaa.
@@ -129,32 +295,66 @@ public final class GameState
 	 */
 	public GameState(BitBoard board, int startingPlayer)
 	{
-		this(board, new long[START_CAPACITY], new int[START_CAPACITY], new long[START_CAPACITY],
-				new int[START_CAPACITY], 0, startingPlayer);
+		this(board, startingPlayer, Movemasks.INITIAL_CASTLING_RIGHTS, -1, 0, startingPlayer);
+	}
 
-		this.zobristCodes[0] = ZOBRIST_RND_EMPTY;
-		this.enPassantSquares[0] = -1;
+	/**
+	 * Luo pelitilanteen, jonka kaikki tiedot on annettu erikseen (ks. Fen). Tornitusoikeuksista
+	 * otetaan huomioon vain ne, joita vastaavat kuningas ja torni ovat alkuperäisillä paikoillaan.
+	 *
+	 * @param board pelilaudan sisältö
+	 * @param startingPlayer ensimmäisenä vuorossa oleva pelaaja
+	 * @param castlingRights tornitusoikeudet (ykkösbitti torniruudun kohdalla)
+	 * @param enPassantSquare ohestalyöntiruutu tai -1
+	 * @param halfMoveClock siirtojen määrä edellisestä lyönnistä tai sotilaan siirrosta
+	 * @param initialPly ennen pelitilannetta pelattujen puolisiirtojen määrä
+	 */
+	GameState(BitBoard board, int startingPlayer, long castlingRights, int enPassantSquare,
+			int halfMoveClock, int initialPly)
+	{
+		this(board, new long[START_CAPACITY << RECORD_SHIFT],
+				new RepetitionTable(2 * START_CAPACITY), 0, startingPlayer, initialPly);
+
+		history[KEY] = ZOBRIST_RND_EMPTY;
+		history[INFO] = (long) halfMoveClock << CLOCK_SHIFT | enPassantSquare + 1;
 		if (startingPlayer == Players.BLACK)
-			this.zobristCodes[0] ^= ZOBRIST_RND_PLAYER;
+			history[KEY] ^= ZOBRIST_RND_PLAYER;
+		if (enPassantSquare != -1)
+			history[KEY] ^= ZOBRIST_RND_EN_PASSANT[enPassantSquare];
+		if (VERIFICATION_KEYS) {
+			history[VERIFY_KEY] = VERIFY_RND_EMPTY;
+			if (startingPlayer == Players.BLACK)
+				history[VERIFY_KEY] ^= VERIFY_RND_PLAYER;
+			if (enPassantSquare != -1)
+				history[VERIFY_KEY] ^= VERIFY_RND_EN_PASSANT[enPassantSquare];
+		}
 
 		// Asetetaan tornitusoikeudet vain jos kuninkaat/tornit oikeissa kohdissa.
 		if (board.hasPiece(Players.WHITE, Pieces.KING, 60)) {
-			checkCastlingRight(Players.WHITE, 56);
-			checkCastlingRight(Players.WHITE, 63);
+			checkCastlingRight(Players.WHITE, 56, castlingRights);
+			checkCastlingRight(Players.WHITE, 63, castlingRights);
 		}
 		if (board.hasPiece(Players.BLACK, Pieces.KING, 4)) {
-			checkCastlingRight(Players.BLACK, 0);
-			checkCastlingRight(Players.BLACK, 7);
+			checkCastlingRight(Players.BLACK, 0, castlingRights);
+			checkCastlingRight(Players.BLACK, 7, castlingRights);
 		}
 
-		// Päivitetään Zobrist-tunniste laudalla jo olevien nappuloiden mukaisesti.
-		for (int player = 0; player < 2; ++player) {
-			for (int sqr = 0; sqr < 64; ++sqr) {
-				int piece = board.getPieceType(player, sqr);
-				if (piece != -1)
-					zobristCodes[0] ^= ZOBRIST_RND[player * Pieces.COUNT * 64 + piece * 64 + sqr];
-			}
+		// Päivitetään tunnisteet laudalla jo olevien nappuloiden mukaisesti.
+		long pieces = board.getPieces();
+		for (; pieces != 0; pieces -= Long.lowestOneBit(pieces)) {
+			int sqr = Long.numberOfTrailingZeros(pieces);
+			int player = board.getPlayer(sqr);
+			int piece = board.getPieceType(player, sqr);
+			int idx = player * Pieces.COUNT * 64 + piece * 64 + sqr;
+			long rnd = ZOBRIST_RND[idx];
+			history[KEY] ^= rnd;
+			if (piece == Pieces.PAWN)
+				history[PAWN_KEY] ^= rnd;
+			if (VERIFICATION_KEYS)
+				history[VERIFY_KEY] ^= VERIFY_RND[idx];
+			history[MATERIAL_KEY] += 1L << MATERIAL_BITS * (player * Pieces.COUNT + piece);
 		}
+		repetitions.increment(history[KEY]);
 	}
 
 	/**
@@ -198,6 +398,17 @@ public final class GameState
 		return ply;
 	}
 
+	/**
+	 * Palauttaa siirtonumeron FEN-notaation mukaisesti. Numero alkaa ykkösestä ja kasvaa aina
+	 * mustan siirron jälkeen.
+	 *
+	 * @return
+	 */
+	public int getFullMoveNumber()
+	{
+		return (initialPly + ply) / 2 + 1;
+	}
+
 	/**
 	 * Palauttaa ruudun johon ohestalyönti on sallittu seuraavalla siirrolla.
 	 *
@@ -205,7 +416,7 @@ public final class GameState
 	 */
 	public int getEnPassantSquare()
 	{
-		return enPassantSquares[ply];
+		return getEnPassantSquare(ply);
 	}
 
 	/**
@@ -215,7 +426,7 @@ public final class GameState
 	 */
 	public long getCastlingRights()
 	{
-		return castlingRights[ply];
+		return history[(ply << RECORD_SHIFT) + CASTLING];
 	}
 
 	/**
@@ -223,7 +434,7 @@ public final class GameState
 	 */
 	public long getHalfMoveClock()
 	{
-		return halfMoveClocks[ply];
+		return history[(ply << RECORD_SHIFT) + INFO] >>> CLOCK_SHIFT;
 	}
 
 	/**
@@ -243,9 +454,7 @@ public final class GameState
 	 */
 	public void makeMove(int move)
 	{
-		growArrays();
-		zobristCodes[ply + 1] = zobristCodes[ply];
-		++ply;
+		pushRecord();
 		updateHalfMoveClock(move);
 		if (Move.getCapturedType(move) != -1)
 			removeCapturedPiece(move);
@@ -255,22 +464,25 @@ public final class GameState
 		removePiece(nextMovingPlayer, Move.getPieceType(move), Move.getFromSqr(move));
 		addPiece(nextMovingPlayer, Move.getNewType(move), Move.getToSqr(move));
 		changeNextMovingPlayer();
+		repetitions.increment(history[(ply << RECORD_SHIFT) + KEY]);
 	}
 
 	/**
-	 * Kumoaa aikaisemman siirron tekemät muutokset pelitilanteeseen.
+	 * Kumoaa aikaisemman siirron tekemät muutokset pelitilanteeseen. Tunnisteet ja muut tiedot
+	 * palautuvat historiapinosta, joten ainoastaan nappulat siirretään takaisin.
 	 *
 	 * @param move siirto pakattuna int-muuttujaan (ks. Move)
 	 */
 	public void undoMove(int move)
 	{
-		changeNextMovingPlayer();
-		removePiece(nextMovingPlayer, Move.getNewType(move), Move.getToSqr(move));
-		addPiece(nextMovingPlayer, Move.getPieceType(move), Move.getFromSqr(move));
+		repetitions.decrement(history[(ply << RECORD_SHIFT) + KEY]);
+		--ply;
+		nextMovingPlayer = 1 - nextMovingPlayer;
+		bitboard.removePiece(nextMovingPlayer, Move.getNewType(move), Move.getToSqr(move));
+		bitboard.addPiece(nextMovingPlayer, Move.getPieceType(move), Move.getFromSqr(move));
 		undoCastlingMove(move);
 		if (Move.getCapturedType(move) != -1)
 			restoreCapturedPiece(move);
-		--ply;
 	}
 
 	/**
@@ -279,15 +491,13 @@ public final class GameState
 	 */
 	public void makeNullMove()
 	{
-		growArrays();
-		zobristCodes[ply + 1] = zobristCodes[ply];
-		++ply;
-		halfMoveClocks[ply] = halfMoveClocks[ply - 1];
-		if (enPassantSquares[ply - 1] != -1)
-			zobristCodes[ply] ^= ZOBRIST_RND_EN_PASSANT[enPassantSquares[ply - 1]];
-		enPassantSquares[ply] = -1;
-		castlingRights[ply] = castlingRights[ply - 1];
+		int rec = pushRecord();
+		int prevEnPassantSquare = getEnPassantSquare(ply - 1);
+		if (prevEnPassantSquare != -1)
+			toggleEnPassantSquare(rec, prevEnPassantSquare);
+		history[rec + INFO] = history[rec - RECORD_SIZE + INFO] & -1L << CLOCK_SHIFT;
 		changeNextMovingPlayer();
+		repetitions.increment(history[rec + KEY]);
 	}
 
 	/**
@@ -295,7 +505,8 @@ public final class GameState
 	 */
 	public void undoNullMove()
 	{
-		changeNextMovingPlayer();
+		repetitions.decrement(history[(ply << RECORD_SHIFT) + KEY]);
+		nextMovingPlayer = 1 - nextMovingPlayer;
 		--ply;
 	}
 
@@ -306,15 +517,8 @@ public final class GameState
 	 */
 	public int[] getLegalMoves()
 	{
-		int count = 0;
-		int[] moves = new int[256];
-		long pieces = bitboard.getPieces(nextMovingPlayer);
-		for (; pieces != 0; pieces -= Long.lowestOneBit(pieces)) {
-			int fromSqr = Long.numberOfTrailingZeros(pieces);
-			int[] sqrMoves = getLegalMoves(fromSqr);
-			for (int i = 0; i < sqrMoves.length; ++i)
-				moves[count++] = sqrMoves[i];
-		}
+		int[] moves = new int[MAX_MOVES];
+		int count = generateLegalMoves(moves);
 		return Arrays.copyOf(moves, count);
 	}
 
@@ -326,28 +530,54 @@ public final class GameState
 	 */
 	public int[] getLegalMoves(int fromSqr)
 	{
-		int count = 0;
-		int[] moves = new int[27]; // Maksimi siirtomäärä yhdestä ruudusta.
+		int[] moves = new int[MAX_SQUARE_MOVES];
+		int count = generateLegalMoves(fromSqr, moves, 0);
+		return Arrays.copyOf(moves, count);
+	}
 
-		long movesMask = getPseudoLegalMoves(nextMovingPlayer, fromSqr);
+	/**
+	 * Kirjoittaa kaikki siirtovuorossa olevan pelaajan lailliset siirrot annettuun taulukkoon.
+	 * Ei varaa muistia, joten samaa taulukkoa voidaan käyttää toistuvasti.
+	 *
+	 * Sidotut nappulat sekä shakkia uhkaavat nappulat lasketaan kerran koko pelitilanteelle
+	 * (ks. updateLegalityMasks), minkä jälkeen jokaisen nappulan pseudolailliset siirrot
+	 * rajataan laillisiksi pelkillä bittimaskioperaatioilla. Kaksoisshakissa ainoastaan kuningas
+	 * voi liikkua, joten muita nappuloita ei käydä läpi lainkaan.
+	 *
+	 * @param moves taulukko, jonka koko on vähintään MAX_MOVES
+	 * @return siirtojen lukumäärä
+	 */
+	public int generateLegalMoves(int[] moves)
+	{
+		updateLegalityMasks();
+		if (checkMask == 0)
+			return addLegalMoves(kingSqr, Pieces.KING, moves, 0);
 
-		for (; movesMask != 0; movesMask -= Long.lowestOneBit(movesMask)) {
-			int toSqr = Long.numberOfTrailingZeros(movesMask);
+		int count = 0;
+		long pieces = bitboard.getPieces(nextMovingPlayer);
+		for (; pieces != 0; pieces -= Long.lowestOneBit(pieces)) {
+			int fromSqr = Long.numberOfTrailingZeros(pieces);
 			int pieceType = bitboard.getPieceType(nextMovingPlayer, fromSqr);
-			int capturedType = bitboard.getPieceType(1 - nextMovingPlayer, toSqr);
-			if (toSqr == enPassantSquares[ply] && pieceType == Pieces.PAWN)
-				capturedType = Pieces.PAWN;
-			int move = Move.pack(fromSqr, toSqr, pieceType, capturedType, pieceType);
-			if (!isLegalMove(move))
-				continue;
-			if (pieceType == Pieces.PAWN && (toSqr / 8) == nextMovingPlayer * 7) {
-				for (int promoType = Pieces.QUEEN; promoType <= Pieces.KNIGHT; ++promoType)
-					moves[count++] = Move.pack(fromSqr, toSqr, pieceType, capturedType, promoType);
-			} else
-				moves[count++] = move;
+			count = addLegalMoves(fromSqr, pieceType, moves, count);
 		}
+		return count;
+	}
 
-		return Arrays.copyOf(moves, count);
+	/**
+	 * Kirjoittaa yhden ruudun lailliset siirrot annettuun taulukkoon alkaen kohdasta offset.
+	 *
+	 * @param fromSqr ruutu (0-63)
+	 * @param moves taulukko, jossa on tilaa vähintään MAX_SQUARE_MOVES siirrolle
+	 * @param offset ensimmäisen siirron indeksi taulukossa
+	 * @return taulukon siirtojen lukumäärä lisäyksen jälkeen
+	 */
+	public int generateLegalMoves(int fromSqr, int[] moves, int offset)
+	{
+		int pieceType = bitboard.getPieceType(nextMovingPlayer, fromSqr);
+		if (pieceType == -1)
+			return offset;
+		updateLegalityMasks();
+		return addLegalMoves(fromSqr, pieceType, moves, offset);
 	}
 
 	/**
@@ -362,12 +592,8 @@ public final class GameState
 	 */
 	public long getPseudoLegalMoves(int player, int fromSqr)
 	{
-		for (int pieceType = 0; pieceType < Pieces.COUNT; ++pieceType) {
-			if (bitboard.hasPiece(nextMovingPlayer, pieceType, fromSqr))
-				return getPseudoLegalMoves(player, pieceType, fromSqr);
-		}
-
-		return 0;
+		int pieceType = bitboard.getPieceType(nextMovingPlayer, fromSqr);
+		return pieceType != -1 ? getPseudoLegalMoves(player, pieceType, fromSqr) : 0;
 	}
 
 	/**
@@ -389,27 +615,137 @@ public final class GameState
 			return moves;
 		}
 
-		int row = fromSqr / 8;
-		int col = fromSqr % 8;
-		int nextRow = row - 1 + 2 * player;
+		long pawn = 1L << fromSqr;
+		long empty = ~bitboard.getPieces();
+		moves = Movemasks.getPawnPushes(player, pawn, empty)
+				| Movemasks.getPawnDoublePushes(player, pawn, empty);
+		long enemySqrs = bitboard.getPieces(1 - player);
+		int epSqr = getEnPassantSquare(ply);
+		if (epSqr != -1)
+			enemySqrs |= 1L << epSqr;
+		return moves | Movemasks.PAWN_ATTACKS[player][fromSqr] & enemySqrs;
+	}
+
+	/**
+	 * Muuntaa tiiviin 16-bittisen siirron (ks. Move.toCompact) täydeksi siirroksi nykyisen
+	 * pelitilanteen perusteella. Siirron laillisuutta ei tarkisteta; tarvittaessa tuloksen voi
+	 * tarkistaa isPseudoLegal-metodilla.
+	 *
+	 * @param compactMove tiivis siirto
+	 * @return siirto pakattuna int-muuttujaan (ks. Move) tai 0, jos lähtöruudussa ei ole
+	 * vuorossa olevan pelaajan nappulaa
+	 */
+	public int expandMove(int compactMove)
+	{
+		int fromSqr = Move.getCompactFromSqr(compactMove);
+		int toSqr = Move.getCompactToSqr(compactMove);
+		int pieceType = bitboard.getPieceType(nextMovingPlayer, fromSqr);
+		if (pieceType == -1)
+			return 0;
+		int capturedType = bitboard.getPieceType(1 - nextMovingPlayer, toSqr);
+		if (pieceType == Pieces.PAWN && toSqr == getEnPassantSquare(ply))
+			capturedType = Pieces.PAWN;
+		int promotion = Move.getCompactPromotion(compactMove);
+		return Move.pack(fromSqr, toSqr, pieceType, capturedType,
+				promotion != 0 ? promotion : pieceType);
+	}
 
-		if ((nextRow & ~7) == 0) {
-			if (!bitboard.hasPiece(nextRow * 8 + col)) {
-				moves |= 1L << nextRow * 8 + col;
-				int doublePushSqr = (4 - player) * 8 + col;
-				if (row == 6 - 5 * player && !bitboard.hasPiece(doublePushSqr))
-					moves |= 1L << doublePushSqr;
+	/**
+	 * Tarkistaa, onko siirto pseudolaillinen nykyisessä pelitilanteessa (ks.
+	 * getPseudoLegalMoves), eli vastaako siirrettävä ja lyöty nappula laudan tilannetta ja
+	 * kuuluuko kohderuutu nappulan siirtoihin. Tarkoitettu esim. hajautustauluista luettujen
+	 * siirtojen tarkistamiseen ennen makeMove-kutsua. Ei tarkista, jääkö kuningas uhatuksi.
+	 *
+	 * @param move siirto pakattuna int-muuttujaan (ks. Move)
+	 * @return true jos siirto on pseudolaillinen
+	 */
+	public boolean isPseudoLegal(int move)
+	{
+		int player = nextMovingPlayer;
+		int fromSqr = Move.getFromSqr(move);
+		int toSqr = Move.getToSqr(move);
+		if (((fromSqr | toSqr) & ~63) != 0)
+			return false;
+		int pieceType = bitboard.getPieceType(player, fromSqr);
+		if (pieceType == -1)
+			return false;
+		int capturedType = bitboard.getPieceType(1 - player, toSqr);
+		int newType = pieceType;
+		if (pieceType == Pieces.PAWN) {
+			if (toSqr == getEnPassantSquare(ply))
+				capturedType = Pieces.PAWN;
+			if (toSqr >>> 3 == 7 * player) {
+				newType = Move.getNewType(move);
+				if (newType < Pieces.QUEEN || newType > Pieces.KNIGHT)
+					return false;
 			}
-			long enemySqrs = bitboard.getPieces(1 - player);
-			if (enPassantSquares[ply] != -1)
-				enemySqrs |= 1L << enPassantSquares[ply];
-			if (col > 0 && (enemySqrs & 1L << nextRow * 8 + col - 1) != 0)
-				moves |= 1L << nextRow * 8 + col - 1;
-			if (col < 7 && (enemySqrs & 1L << nextRow * 8 + col + 1) != 0)
-				moves |= 1L << nextRow * 8 + col + 1;
 		}
+		// Vertailu uudelleen pakattuun siirtoon tarkistaa kaikki kentät ja käyttämättömät bitit.
+		return move == Move.pack(fromSqr, toSqr, pieceType, capturedType, newType)
+				&& (getPseudoLegalMoves(player, pieceType, fromSqr) & 1L << toSqr) != 0;
+	}
 
-		return moves;
+	/**
+	 * Laskee lyönnin staattisen vaihtoarvon (SEE), eli materiaalin muutoksen vuorossa olevan
+	 * pelaajan kannalta, kun kohderuutuun lyödään vuorotellen aina arvottomimmalla nappulalla ja
+	 * kumpikin pelaaja voi lopettaa lyöntisarjan halutessaan. Liukuvien nappuloiden takana olevat
+	 * nappulat (x-ray) otetaan mukaan sitä mukaa kuin edessä olevat nappulat poistuvat.
+	 * Sidontoja ja lyöntisarjan aikaisia korotuksia ei huomioida.
+	 *
+	 * @param move siirto pakattuna int-muuttujaan (ks. Move)
+	 * @param pieceValues nappuloiden arvot nappulatyypeittäin
+	 * @return vaihtoarvo (voi olla negatiivinen)
+	 */
+	public int getStaticExchangeScore(int move, int[] pieceValues)
+	{
+		int fromSqr = Move.getFromSqr(move);
+		int toSqr = Move.getToSqr(move);
+		int capturedType = Move.getCapturedType(move);
+		int newType = Move.getNewType(move);
+		long occupied = bitboard.getPieces() & ~(1L << fromSqr);
+		if (Move.getPieceType(move) == Pieces.PAWN && toSqr == getEnPassantSquare(ply))
+			occupied &= ~(1L << toSqr + 8 - 16 * nextMovingPlayer);
+
+		int[] gains = exchangeGains;
+		gains[0] = capturedType != -1 ? pieceValues[capturedType] : 0;
+		if (newType != Move.getPieceType(move))
+			gains[0] += pieceValues[newType] - pieceValues[Pieces.PAWN];
+		int pieceValue = pieceValues[newType];
+		long attackers = getAttackersTo(toSqr, occupied);
+		int player = 1 - nextMovingPlayer;
+		int d = 0;
+		for (;;) {
+			long playerAttackers = attackers & bitboard.getPieces(player);
+			if (playerAttackers == 0)
+				break;
+			int piece = Pieces.PAWN;
+			while ((playerAttackers & bitboard.getPieces(player, piece)) == 0)
+				--piece;
+
+			// Pistemäärä, jos pelaaja lyö ja vastustaja ei enää lyö takaisin.
+			++d;
+			gains[d] = pieceValue - gains[d - 1];
+			if (Math.max(-gains[d - 1], gains[d]) < 0)
+				break;
+
+			occupied &= ~Long.lowestOneBit(playerAttackers & bitboard.getPieces(player, piece));
+			if (piece == Pieces.PAWN || piece == Pieces.BISHOP || piece == Pieces.QUEEN) {
+				attackers |= Movemasks.getBishopMoves(toSqr, occupied)
+						& (getBothPieces(Pieces.BISHOP) | getBothPieces(Pieces.QUEEN));
+			}
+			if (piece == Pieces.ROOK || piece == Pieces.QUEEN) {
+				attackers |= Movemasks.getRookMoves(toSqr, occupied)
+						& (getBothPieces(Pieces.ROOK) | getBothPieces(Pieces.QUEEN));
+			}
+			attackers &= occupied;
+			pieceValue = pieceValues[piece];
+			player = 1 - player;
+		}
+
+		// Kumpikin pelaaja valitsee lyönnin tai lyöntisarjan lopettamisen väliltä.
+		for (; d > 0; --d)
+			gains[d - 1] = -Math.max(-gains[d - 1], gains[d]);
+		return gains[0];
 	}
 
 	/**
@@ -442,15 +778,7 @@ public final class GameState
 				moves |= Movemasks.KNIGHT_MOVES[fromSqr];
 				break;
 			case Pieces.PAWN:
-				int row = fromSqr / 8;
-				int col = fromSqr % 8;
-				int nextRow = row - 1 + 2 * player;
-				if ((nextRow & ~7) == 0) {
-					if (col > 0)
-						moves |= 1L << nextRow * 8 + col - 1;
-					if (col < 7)
-						moves |= 1L << nextRow * 8 + col + 1;
-				}
+				moves |= Movemasks.PAWN_ATTACKS[player][fromSqr];
 				break;
 		}
 
@@ -465,29 +793,99 @@ public final class GameState
 	 */
 	public boolean isCheckMate()
 	{
-		for (int sqr = 0; sqr < 64; ++sqr) {
-			if (getLegalMoves(sqr).length != 0)
-				return false;
-		}
-		return isKingChecked(nextMovingPlayer);
+		return getGameStatus() == GameStatus.CHECKMATE;
 	}
 
 	/**
 	 * Tarkistaa, onko pelitilanne patissa, eli siirtovuorossa olevalla pelaajalla ei ole
 	 * laillisia siirtoja, ja kuningas EI OLE uhattuna. Lisäksi tilanne on patti, jos se on
-	 * toistunut aikaisemmin tai on kulunut 50 siirtoa ilman lyöntejä tai sotilaiden siirtoja.
+	 * esiintynyt kolmesti, on kulunut 50 siirtoa ilman lyöntejä tai sotilaiden siirtoja, tai
+	 * kummallakaan pelaajalla ei ole mattiin riittävää materiaalia.
 	 *
 	 * @return true jos patti
 	 */
 	public boolean isStaleMate()
 	{
-		if (isRepeatedState() || halfMoveClocks[ply] >= 50)
+		int status = getGameStatus();
+		return status == GameStatus.STALEMATE || status == GameStatus.DRAW;
+	}
+
+	/**
+	 * Palauttaa, kuinka monta kertaa nykyinen pelitilanne on esiintynyt pelin aikana
+	 * (mukaanlukien nykyinen kerta). Pelitilanteet tunnistetaan Zobrist-tunnisteen perusteella.
+	 *
+	 * @return esiintymiskerrat (vähintään 1)
+	 */
+	public int getRepetitionCount()
+	{
+		return repetitions.get(history[(ply << RECORD_SHIFT) + KEY]);
+	}
+
+	/**
+	 * Tarkistaa, onko laudalla liian vähän materiaalia matin tekemiseen kummallekaan pelaajalle:
+	 * pelkät kuninkaat, kuninkaiden lisäksi yksi lähetti tai ratsu, tai pelkkiä samanvärisillä
+	 * ruuduilla olevia lähettejä. Tarkistus perustuu pelkkiin bittimaskeihin, joten se on
+	 * riittävän nopea tehtäväksi jokaisessa hakupuun solmussa.
+	 *
+	 * @return true jos tilanne on varma tasapeli
+	 */
+	public boolean isInsufficientMaterial()
+	{
+		if ((getBothPieces(Pieces.PAWN) | getBothPieces(Pieces.ROOK)
+				| getBothPieces(Pieces.QUEEN)) != 0)
+			return false;
+		long bishops = getBothPieces(Pieces.BISHOP);
+		long minors = bishops | getBothPieces(Pieces.KNIGHT);
+		if (Long.bitCount(minors) <= 1)
 			return true;
-		for (int sqr = 0; sqr < 64; ++sqr) {
-			if (getLegalMoves(sqr).length != 0)
-				return false;
+		return minors == bishops
+				&& ((bishops & LIGHT_SQUARES) == 0 || (bishops & ~LIGHT_SQUARES) == 0);
+	}
+
+	/**
+	 * Palauttaa pelitilanteen tilan. Tila lasketaan vain kerran kullekin pelitilanteelle.
+	 * Matti ja patti tarkistetaan ennen toistoa, 50 siirron sääntöä ja riittämätöntä
+	 * materiaalia.
+	 *
+	 * @return tila (ks. GameStatus)
+	 */
+	public int getGameStatus()
+	{
+		int rec = ply << RECORD_SHIFT;
+		int status = (int) (history[rec + INFO] >>> STATUS_SHIFT & 0xFF) - 1;
+		if (status == -1) {
+			if (!hasAnyLegalMove())
+				status = checkMask != ~0L ? GameStatus.CHECKMATE : GameStatus.STALEMATE;
+			else if (getRepetitionCount() >= 3 || getHalfMoveClock() >= 50
+					|| isInsufficientMaterial())
+				status = GameStatus.DRAW;
+			else
+				status = GameStatus.ONGOING;
+			history[rec + INFO] |= (long) (status + 1) << STATUS_SHIFT;
 		}
-		return !isKingChecked(nextMovingPlayer);
+		return status;
+	}
+
+	/**
+	 * Tarkistaa, onko vuorossa olevalla pelaajalla ainakin yksi laillinen siirto. Lopettaa
+	 * ensimmäiseen löytyneeseen siirtoon. Ensin tarkistetaan sitomattomat nappulat, joiden
+	 * siirrot voidaan todeta laillisiksi pelkillä maskeilla, sitten kuningas, sidotut nappulat ja
+	 * lopuksi ohestalyönti, jonka tarkistaminen vaatii siirron suorittamisen.
+	 *
+	 * @return true jos laillinen siirto löytyi
+	 */
+	public boolean hasAnyLegalMove()
+	{
+		updateLegalityMasks();
+		long ownPieces = bitboard.getPieces(nextMovingPlayer);
+		long kingMask = kingSqr != -1 ? 1L << kingSqr : 0;
+		if (checkMask != 0 && hasLegalTargets(ownPieces & ~kingMask & ~pinnedPieces))
+			return true;
+		if (kingSqr != -1 && getLegalTargets(kingSqr, Pieces.KING) != 0)
+			return true;
+		if (checkMask != 0 && hasLegalTargets(pinnedPieces))
+			return true;
+		return checkMask != 0 && hasLegalEnPassant();
 	}
 
 	/**
@@ -515,7 +913,9 @@ public final class GameState
 
 	/**
 	 * Tarkistaa, onko vastustajalla mahdollisia hyökkäyssiirtoja, jotka kohdistuvat johonkin
-	 * annettuista ruuduista.
+	 * annettuista ruuduista. Jos vastustajan uhkauskartta on jo laskettu tässä pelitilanteessa,
+	 * käytetään sitä; muuten hyökkääjät haetaan kustakin ruudusta käsin (ks. getAttackersTo),
+	 * mikä on muutaman ruudun tarkistuksessa halvempaa kuin koko kartan laskeminen.
 	 *
 	 * @param defendingPLayer puolustava pelaaja
 	 * @param sqr
@@ -524,23 +924,71 @@ public final class GameState
 	public boolean isSquareThreatened(int defendingPlayer, long sqrs)
 	{
 		int attackingPlayer = 1 - defendingPlayer;
-		for (int pieceType = 0; pieceType < Pieces.COUNT; ++pieceType) {
-			long pieces = bitboard.getPieces(attackingPlayer, pieceType);
-			for (; pieces != 0; pieces -= Long.lowestOneBit(pieces)) {
-				int attackingSqr = Long.numberOfTrailingZeros(pieces);
-				long attackMoves = getThreatenedSquares(attackingPlayer, pieceType, attackingSqr);
-				if ((sqrs & attackMoves) != 0)
-					return true;
-			}
+		int rec = ply << RECORD_SHIFT;
+		if ((history[rec + INFO] & 1L << ATTACKS_VALID_SHIFT + attackingPlayer) != 0)
+			return (history[rec + ATTACKS + attackingPlayer] & sqrs) != 0;
+		long allPieces = bitboard.getPieces();
+		for (; sqrs != 0; sqrs -= Long.lowestOneBit(sqrs)) {
+			if (getAttackers(Long.numberOfTrailingZeros(sqrs), attackingPlayer, allPieces) != 0)
+				return true;
 		}
 		return false;
 	}
 
+	/**
+	 * Palauttaa kummankin pelaajan nappulat, jotka uhkaavat ruutua, kun laudalla on nappuloita
+	 * vain annetuissa ruuduissa. Hyökkääjät haetaan ruudusta käsin: ruudun ratsu-, kuningas- ja
+	 * sotilastaulukot sekä tornin ja lähetin siirrot AND-operoidaan nappulamaskien kanssa.
+	 * Tulokseen otetaan vain occupied-maskissa olevat nappulat, joten nappulan voi poistaa
+	 * laudalta (esim. lyöntisarjan aikana) poistamalla sen maskista.
+	 *
+	 * @param sqr kohderuutu
+	 * @param occupied varatut ruudut
+	 * @return hyökkäävät nappulat bittimaskina
+	 */
+	public long getAttackersTo(int sqr, long occupied)
+	{
+		long queens = getBothPieces(Pieces.QUEEN);
+		long attackers = Movemasks.KNIGHT_MOVES[sqr] & getBothPieces(Pieces.KNIGHT);
+		attackers |= Movemasks.KING_MOVES[sqr] & getBothPieces(Pieces.KING);
+		attackers |= Movemasks.PAWN_ATTACKS[Players.BLACK][sqr]
+				& bitboard.getPieces(Players.WHITE, Pieces.PAWN);
+		attackers |= Movemasks.PAWN_ATTACKS[Players.WHITE][sqr]
+				& bitboard.getPieces(Players.BLACK, Pieces.PAWN);
+		attackers |= Movemasks.getRookMoves(sqr, occupied)
+				& (getBothPieces(Pieces.ROOK) | queens);
+		attackers |= Movemasks.getBishopMoves(sqr, occupied)
+				& (getBothPieces(Pieces.BISHOP) | queens);
+		return attackers & occupied;
+	}
+
+	/**
+	 * Palauttaa kaikki ruudut, joita pelaajan nappulat uhkaavat. Maski lasketaan korkeintaan
+	 * kerran kutakin pelitilannetta kohden, joten toistuvat shakki-, tornitus- ja
+	 * liikkuvuustarkistukset maksavat vain yhden AND-operaation.
+	 *
+	 * @param player hyökkäävä pelaaja
+	 * @return uhatut ruudut bittimaskina
+	 */
+	public long getAttackedSquares(int player)
+	{
+		int rec = ply << RECORD_SHIFT;
+		long validBit = 1L << ATTACKS_VALID_SHIFT + player;
+		if ((history[rec + INFO] & validBit) == 0) {
+			history[rec + ATTACKS + player] = computeAttackedSquares(player);
+			history[rec + INFO] |= validBit;
+		}
+		return history[rec + ATTACKS + player];
+	}
+
 	@Override
 	public GameState clone()
 	{
-		return new GameState(bitboard.clone(), zobristCodes.clone(), enPassantSquares.clone(),
-				castlingRights.clone(), halfMoveClocks.clone(), ply, nextMovingPlayer);
+		// Historiasta kopioidaan vain käytössä olevat tietueet.
+		long[] historyCopy = new long[history.length];
+		System.arraycopy(history, 0, historyCopy, 0, (ply + 1) << RECORD_SHIFT);
+		return new GameState(bitboard.clone(), historyCopy, repetitions.clone(), ply,
+				nextMovingPlayer, initialPly);
 	}
 
 	/**
@@ -550,7 +998,57 @@ public final class GameState
 	 */
 	public long getId()
 	{
-		return zobristCodes[ply];
+		return history[(ply << RECORD_SHIFT) + KEY];
+	}
+
+	/**
+	 * Palauttaa pelitilannetta vastaavan toisen 64-bittisen tunnisteen, joka on laskettu eri
+	 * satunnaisnumeroista kuin getId-metodin palauttama Zobrist-tunniste. Kahden eri
+	 * pelitilanteen tunnisteet täsmäävät molemmat vain äärimmäisen harvoin, joten tunnisteella
+	 * voidaan havaita Zobrist-tunnisteiden törmäykset esim. transpositiotaulussa.
+	 *
+	 * @return tarkistustunniste tai 0 jos VERIFICATION_KEYS ei ole käytössä
+	 */
+	public long getVerificationKey()
+	{
+		return history[(ply << RECORD_SHIFT) + VERIFY_KEY];
+	}
+
+	/**
+	 * Palauttaa pelkkien sotilaiden sijainteja vastaavan 64-bittisen Zobrist-arvon. Arvo on sama
+	 * kaikille pelitilanteille, joissa molempien pelaajien sotilaat ovat samoissa ruuduissa.
+	 *
+	 * @return
+	 */
+	public long getPawnKey()
+	{
+		return history[(ply << RECORD_SHIFT) + PAWN_KEY];
+	}
+
+	/**
+	 * Palauttaa materiaalitunnisteen, johon on pakattu kummankin pelaajan kunkin nappulatyypin
+	 * lukumäärä 4 bitin kenttinä (kenttä player * Pieces.COUNT + piece vähiten merkitsevistä
+	 * biteistä alkaen). Tunniste on sama täsmälleen silloin, kun laudalla on sama materiaali.
+	 *
+	 * @return
+	 */
+	public long getMaterialKey()
+	{
+		return history[(ply << RECORD_SHIFT) + MATERIAL_KEY];
+	}
+
+	/**
+	 * Palauttaa nappuloiden lukumäärän materiaalitunnisteesta (ks. getMaterialKey).
+	 *
+	 * @param materialKey materiaalitunniste
+	 * @param player pelaaja
+	 * @param piece nappulatyyppi
+	 * @return lukumäärä
+	 */
+	public static int getPieceCount(long materialKey, int player, int piece)
+	{
+		int shift = MATERIAL_BITS * (player * Pieces.COUNT + piece);
+		return (int) (materialKey >>> shift) & ((1 << MATERIAL_BITS) - 1);
 	}
 
 	@Override
@@ -559,9 +1057,9 @@ public final class GameState
 		GameState state2 = (GameState) obj;
 		boolean result = bitboard.equals(state2.bitboard)
 				&& nextMovingPlayer == state2.nextMovingPlayer
-				&& enPassantSquares[ply] == state2.enPassantSquares[state2.ply]
-				&& castlingRights[ply] == state2.castlingRights[state2.ply];
-		assert !result || zobristCodes[ply] == state2.zobristCodes[state2.ply];
+				&& getEnPassantSquare() == state2.getEnPassantSquare()
+				&& getCastlingRights() == state2.getCastlingRights();
+		assert !result || getId() == state2.getId();
 		return result;
 	}
 
@@ -572,22 +1070,38 @@ public final class GameState
 	 */
 	public long[] getEarlierStates()
 	{
-		return Arrays.copyOf(zobristCodes, ply);
+		long[] states = new long[ply];
+		for (int i = 0; i < ply; ++i)
+			states[i] = history[(i << RECORD_SHIFT) + KEY];
+		return states;
+	}
+
+	/**
+	 * Palauttaa taulukossa kaikkien aikaisempien pelitilanteiden tarkistustunnisteet samassa
+	 * järjestyksessä kuin getEarlierStates.
+	 *
+	 * @return
+	 */
+	public long[] getEarlierVerificationKeys()
+	{
+		long[] keys = new long[ply];
+		for (int i = 0; i < ply; ++i)
+			keys[i] = history[(i << RECORD_SHIFT) + VERIFY_KEY];
+		return keys;
 	}
 
 	/**
 	 * Luo pelitilanteen kopioimalla sen toisesta pelitilanteesta.
 	 */
-	private GameState(BitBoard board, long[] zobristCodes, int[] enPassantSquares,
-			long[] castlingRights, int[] halfMoveClocks, int ply, int nextMovingPlayer)
+	private GameState(BitBoard board, long[] history, RepetitionTable repetitions, int ply,
+			int nextMovingPlayer, int initialPly)
 	{
 		this.bitboard = board;
-		this.zobristCodes = zobristCodes;
-		this.enPassantSquares = enPassantSquares;
-		this.castlingRights = castlingRights;
-		this.halfMoveClocks = halfMoveClocks;
+		this.history = history;
+		this.repetitions = repetitions;
 		this.ply = ply;
 		this.nextMovingPlayer = nextMovingPlayer;
+		this.initialPly = initialPly;
 	}
 
 	/**
@@ -596,25 +1110,279 @@ public final class GameState
 	private void changeNextMovingPlayer()
 	{
 		nextMovingPlayer = 1 - nextMovingPlayer;
-		zobristCodes[ply] ^= ZOBRIST_RND_PLAYER;
+		int rec = ply << RECORD_SHIFT;
+		history[rec + KEY] ^= ZOBRIST_RND_PLAYER;
+		if (VERIFICATION_KEYS)
+			history[rec + VERIFY_KEY] ^= VERIFY_RND_PLAYER;
 	}
 
 	/**
-	 * Lisää nappulan ja päivittää Zobrist-koodin.
+	 * Lisää nappulan ja päivittää Zobrist-koodin sekä sotilas- ja materiaalitunnisteet.
 	 */
 	private void addPiece(int player, int piece, int sqr)
 	{
 		bitboard.addPiece(player, piece, sqr);
-		zobristCodes[ply] ^= ZOBRIST_RND[player * Pieces.COUNT * 64 + piece * 64 + sqr];
+		int rec = ply << RECORD_SHIFT;
+		int idx = player * Pieces.COUNT * 64 + piece * 64 + sqr;
+		long rnd = ZOBRIST_RND[idx];
+		history[rec + KEY] ^= rnd;
+		if (piece == Pieces.PAWN)
+			history[rec + PAWN_KEY] ^= rnd;
+		if (VERIFICATION_KEYS)
+			history[rec + VERIFY_KEY] ^= VERIFY_RND[idx];
+		history[rec + MATERIAL_KEY] += 1L << MATERIAL_BITS * (player * Pieces.COUNT + piece);
 	}
 
 	/**
-	 * Poistaa nappulan ja päivittää Zobrist-koodin.
+	 * Poistaa nappulan ja päivittää Zobrist-koodin sekä sotilas- ja materiaalitunnisteet.
 	 */
 	private void removePiece(int player, int piece, int sqr)
 	{
 		bitboard.removePiece(player, piece, sqr);
-		zobristCodes[ply] ^= ZOBRIST_RND[player * Pieces.COUNT * 64 + piece * 64 + sqr];
+		int rec = ply << RECORD_SHIFT;
+		int idx = player * Pieces.COUNT * 64 + piece * 64 + sqr;
+		long rnd = ZOBRIST_RND[idx];
+		history[rec + KEY] ^= rnd;
+		if (piece == Pieces.PAWN)
+			history[rec + PAWN_KEY] ^= rnd;
+		if (VERIFICATION_KEYS)
+			history[rec + VERIFY_KEY] ^= VERIFY_RND[idx];
+		history[rec + MATERIAL_KEY] -= 1L << MATERIAL_BITS * (player * Pieces.COUNT + piece);
+	}
+
+	/**
+	 * Laskee pelaajan kaikkien nappuloiden uhkaamat ruudut.
+	 */
+	private long computeAttackedSquares(int player)
+	{
+		long allPieces = bitboard.getPieces();
+		long attacks = 0;
+		long pieces = bitboard.getPieces(player, Pieces.KING);
+		for (; pieces != 0; pieces -= Long.lowestOneBit(pieces))
+			attacks |= Movemasks.KING_MOVES[Long.numberOfTrailingZeros(pieces)];
+		pieces = bitboard.getPieces(player, Pieces.KNIGHT);
+		for (; pieces != 0; pieces -= Long.lowestOneBit(pieces))
+			attacks |= Movemasks.KNIGHT_MOVES[Long.numberOfTrailingZeros(pieces)];
+		pieces = bitboard.getPieces(player, Pieces.ROOK) | bitboard.getPieces(player, Pieces.QUEEN);
+		for (; pieces != 0; pieces -= Long.lowestOneBit(pieces))
+			attacks |= Movemasks.getRookMoves(Long.numberOfTrailingZeros(pieces), allPieces);
+		pieces = bitboard.getPieces(player, Pieces.BISHOP)
+				| bitboard.getPieces(player, Pieces.QUEEN);
+		for (; pieces != 0; pieces -= Long.lowestOneBit(pieces))
+			attacks |= Movemasks.getBishopMoves(Long.numberOfTrailingZeros(pieces), allPieces);
+		// Sotilaiden lyönnit lasketaan kaikille sotilaille kerralla siirtämällä bittimaskia.
+		attacks |= Movemasks.getPawnAttacks(player, bitboard.getPieces(player, Pieces.PAWN));
+		return attacks;
+	}
+
+	/**
+	 * Laskee siirtovuorossa olevan pelaajan kuninkaan sijainnin, shakkimaskin sekä sidotut
+	 * nappulat. Shakkimaski sisältää ruudut, joihin muiden nappuloiden kuin kuninkaan täytyy
+	 * siirtyä: yhden shakin tapauksessa shakkaava nappula ja sen ja kuninkaan väliset ruudut,
+	 * kaksoisshakissa ei yhtään ruutua ja muuten kaikki ruudut. Sidottu nappula voi liikkua
+	 * ainoastaan kuninkaan ja sitovan nappulan välisellä linjalla (pinRays).
+	 */
+	private void updateLegalityMasks()
+	{
+		int player = nextMovingPlayer;
+		long kingMask = bitboard.getPieces(player, Pieces.KING);
+		pinnedPieces = 0;
+		checkMask = ~0L;
+		if (kingMask == 0) {
+			kingSqr = -1;
+			return;
+		}
+		kingSqr = Long.numberOfTrailingZeros(kingMask);
+
+		long allPieces = bitboard.getPieces();
+		long checkers = getAttackers(kingSqr, 1 - player, allPieces);
+		if (checkers != 0) {
+			if ((checkers & (checkers - 1)) != 0) {
+				checkMask = 0;
+				return;
+			}
+			int checkerSqr = Long.numberOfTrailingZeros(checkers);
+			checkMask = checkers | Movemasks.getSquaresBetween(kingSqr, checkerSqr);
+		}
+
+		// Vastustajan liukuvat nappulat, jotka osuisivat kuninkaaseen, jos omat nappulat
+		// poistettaisiin laudalta.
+		long enemyPieces = bitboard.getPieces(1 - player);
+		long enemyQueens = bitboard.getPieces(1 - player, Pieces.QUEEN);
+		long snipers = Movemasks.getRookMoves(kingSqr, enemyPieces)
+				& (bitboard.getPieces(1 - player, Pieces.ROOK) | enemyQueens);
+		snipers |= Movemasks.getBishopMoves(kingSqr, enemyPieces)
+				& (bitboard.getPieces(1 - player, Pieces.BISHOP) | enemyQueens);
+		for (; snipers != 0; snipers -= Long.lowestOneBit(snipers)) {
+			int sniperSqr = Long.numberOfTrailingZeros(snipers);
+			long between = Movemasks.getSquaresBetween(kingSqr, sniperSqr);
+			long blockers = between & allPieces;
+			if (blockers != 0 && (blockers & (blockers - 1)) == 0
+					&& (blockers & bitboard.getPieces(player)) != 0) {
+				pinnedPieces |= blockers;
+				pinRays[Long.numberOfTrailingZeros(blockers)] = between | 1L << sniperSqr;
+			}
+		}
+	}
+
+	/**
+	 * Lisää yhden nappulan lailliset siirrot taulukkoon. Olettaa, että updateLegalityMasks on
+	 * kutsuttu tämänhetkiselle pelitilanteelle.
+	 *
+	 * @param fromSqr nappulan sijainti
+	 * @param pieceType nappulan tyyppi
+	 * @param moves siirtotaulukko
+	 * @param count siirtojen määrä taulukossa
+	 * @return siirtojen määrä lisäyksen jälkeen
+	 */
+	private int addLegalMoves(int fromSqr, int pieceType, int[] moves, int count)
+	{
+		int player = nextMovingPlayer;
+		long movesMask = getLegalTargets(fromSqr, pieceType);
+		for (; movesMask != 0; movesMask -= Long.lowestOneBit(movesMask)) {
+			int toSqr = Long.numberOfTrailingZeros(movesMask);
+			int capturedType = bitboard.getPieceType(1 - player, toSqr);
+			count = addMove(fromSqr, toSqr, pieceType, capturedType, moves, count);
+		}
+
+		if (pieceType == Pieces.PAWN && isLegalEnPassant(fromSqr))
+			moves[count++] = Move.pack(fromSqr, getEnPassantSquare(ply), Pieces.PAWN,
+					Pieces.PAWN, Pieces.PAWN);
+
+		return count;
+	}
+
+	/**
+	 * Palauttaa nappulan lailliset kohderuudut ohestalyöntiä lukuunottamatta. Olettaa, että
+	 * updateLegalityMasks on kutsuttu tämänhetkiselle pelitilanteelle.
+	 *
+	 * @param fromSqr nappulan sijainti
+	 * @param pieceType nappulan tyyppi
+	 * @return kohderuudut bittimaskina
+	 */
+	private long getLegalTargets(int fromSqr, int pieceType)
+	{
+		int player = nextMovingPlayer;
+		long movesMask = getPseudoLegalMoves(player, pieceType, fromSqr);
+
+		if (pieceType == Pieces.KING) {
+			long allPieces = bitboard.getPieces() & ~(1L << fromSqr);
+			long targets = movesMask & Movemasks.KING_MOVES[fromSqr];
+			for (; targets != 0; targets -= Long.lowestOneBit(targets)) {
+				int toSqr = Long.numberOfTrailingZeros(targets);
+				if (getAttackers(toSqr, 1 - player, allPieces) != 0)
+					movesMask &= ~(1L << toSqr);
+			}
+			return movesMask;
+		}
+
+		if (pieceType == Pieces.PAWN) {
+			int epSqr = getEnPassantSquare(ply);
+			if (epSqr != -1)
+				movesMask &= ~(1L << epSqr);
+		}
+		movesMask &= checkMask;
+		if ((pinnedPieces & 1L << fromSqr) != 0)
+			movesMask &= pinRays[fromSqr];
+		return movesMask;
+	}
+
+	/**
+	 * Tarkistaa, onko jollakin annetuista nappuloista laillisia siirtoja ohestalyöntiä
+	 * lukuunottamatta.
+	 *
+	 * @param pieces nappulat bittimaskina
+	 * @return true jos laillinen siirto löytyi
+	 */
+	private boolean hasLegalTargets(long pieces)
+	{
+		for (; pieces != 0; pieces -= Long.lowestOneBit(pieces)) {
+			int fromSqr = Long.numberOfTrailingZeros(pieces);
+			int pieceType = bitboard.getPieceType(nextMovingPlayer, fromSqr);
+			if (getLegalTargets(fromSqr, pieceType) != 0)
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Tarkistaa, onko vuorossa olevalla pelaajalla laillista ohestalyöntiä.
+	 */
+	private boolean hasLegalEnPassant()
+	{
+		int epSqr = getEnPassantSquare(ply);
+		if (epSqr == -1)
+			return false;
+		long pawns = getThreatenedSquares(1 - nextMovingPlayer, Pieces.PAWN, epSqr)
+				& bitboard.getPieces(nextMovingPlayer, Pieces.PAWN);
+		for (; pawns != 0; pawns -= Long.lowestOneBit(pawns)) {
+			if (isLegalEnPassant(Long.numberOfTrailingZeros(pawns)))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Tarkistaa, voiko annetusta ruudusta lyödä ohesta. Ohestalyönti poistaa laudalta kaksi
+	 * nappulaa samalta riviltä, joten sen laillisuus tarkistetaan suorittamalla siirto.
+	 *
+	 * @param fromSqr sotilaan sijainti
+	 * @return true jos ohestalyönti on laillinen
+	 */
+	private boolean isLegalEnPassant(int fromSqr)
+	{
+		int epSqr = getEnPassantSquare(ply);
+		if (epSqr == -1
+				|| (getThreatenedSquares(nextMovingPlayer, Pieces.PAWN, fromSqr) & 1L << epSqr) == 0)
+			return false;
+		return isLegalMove(Move.pack(fromSqr, epSqr, Pieces.PAWN, Pieces.PAWN, Pieces.PAWN));
+	}
+
+	/**
+	 * Lisää siirron taulukkoon. Viimeiselle riville etenevästä sotilaasta lisätään kaikki neljä
+	 * korotusvaihtoehtoa.
+	 */
+	private int addMove(int fromSqr, int toSqr, int pieceType, int capturedType, int[] moves,
+			int count)
+	{
+		if (pieceType == Pieces.PAWN && (toSqr / 8) == nextMovingPlayer * 7) {
+			for (int promoType = Pieces.QUEEN; promoType <= Pieces.KNIGHT; ++promoType)
+				moves[count++] = Move.pack(fromSqr, toSqr, pieceType, capturedType, promoType);
+		} else
+			moves[count++] = Move.pack(fromSqr, toSqr, pieceType, capturedType, pieceType);
+		return count;
+	}
+
+	/**
+	 * Palauttaa annetun pelaajan nappulat, jotka uhkaavat ruutua, kun laudan nappulat ovat
+	 * annetuissa ruuduissa. Liukuvien nappuloiden siirrot lasketaan kohderuudusta käsin.
+	 *
+	 * @param sqr kohderuutu
+	 * @param attackingPlayer hyökkäävä pelaaja
+	 * @param allPieces kaikkien nappuloiden sijainnit
+	 * @return hyökkäävät nappulat bittimaskina
+	 */
+	private long getAttackers(int sqr, int attackingPlayer, long allPieces)
+	{
+		long queens = bitboard.getPieces(attackingPlayer, Pieces.QUEEN);
+		long attackers = Movemasks.KNIGHT_MOVES[sqr]
+				& bitboard.getPieces(attackingPlayer, Pieces.KNIGHT);
+		attackers |= Movemasks.KING_MOVES[sqr] & bitboard.getPieces(attackingPlayer, Pieces.KING);
+		attackers |= Movemasks.PAWN_ATTACKS[1 - attackingPlayer][sqr]
+				& bitboard.getPieces(attackingPlayer, Pieces.PAWN);
+		attackers |= Movemasks.getRookMoves(sqr, allPieces)
+				& (bitboard.getPieces(attackingPlayer, Pieces.ROOK) | queens);
+		attackers |= Movemasks.getBishopMoves(sqr, allPieces)
+				& (bitboard.getPieces(attackingPlayer, Pieces.BISHOP) | queens);
+		return attackers;
+	}
+
+	/**
+	 * Palauttaa kummankin pelaajan tietyntyyppiset nappulat.
+	 */
+	private long getBothPieces(int piece)
+	{
+		return bitboard.getPieces(Players.WHITE, piece) | bitboard.getPieces(Players.BLACK, piece);
 	}
 
 	/**
@@ -641,7 +1409,7 @@ public final class GameState
 	{
 		assert Move.getCapturedType(move) != -1;
 		int toSqr = Move.getToSqr(move);
-		if (Move.getPieceType(move) == Pieces.PAWN && toSqr == enPassantSquares[ply - 1])
+		if (Move.getPieceType(move) == Pieces.PAWN && toSqr == getEnPassantSquare(ply - 1))
 			removePiece(1 - nextMovingPlayer, Pieces.PAWN, toSqr + 8 - 16 * nextMovingPlayer);
 		else
 			removePiece(1 - nextMovingPlayer, Move.getCapturedType(move), Move.getToSqr(move));
@@ -649,7 +1417,8 @@ public final class GameState
 
 	/**
 	 * Palauttaa laudalle edellisessä siirrossa lyödyn nappulan. Käsittelee ohestalyönnit
-	 * erikoistapauksena.
+	 * erikoistapauksena. Kutsutaan, kun pelitilanne on jo palautettu siirtoa edeltäneeseen
+	 * tilanteeseen.
 	 *
 	 * @param move siirto
 	 */
@@ -657,10 +1426,10 @@ public final class GameState
 	{
 		assert Move.getCapturedType(move) != -1;
 		int toSqr = Move.getToSqr(move);
-		if (Move.getPieceType(move) == Pieces.PAWN && toSqr == enPassantSquares[ply - 1])
-			addPiece(1 - nextMovingPlayer, Pieces.PAWN, toSqr + 8 - 16 * nextMovingPlayer);
+		if (Move.getPieceType(move) == Pieces.PAWN && toSqr == getEnPassantSquare(ply))
+			bitboard.addPiece(1 - nextMovingPlayer, Pieces.PAWN, toSqr + 8 - 16 * nextMovingPlayer);
 		else
-			addPiece(1 - nextMovingPlayer, Move.getCapturedType(move), Move.getToSqr(move));
+			bitboard.addPiece(1 - nextMovingPlayer, Move.getCapturedType(move), toSqr);
 	}
 
 	/**
@@ -672,15 +1441,27 @@ public final class GameState
 	 */
 	private void updateEnPassantSquare(int move)
 	{
-		if (enPassantSquares[ply - 1] != -1)
-			zobristCodes[ply] ^= ZOBRIST_RND_EN_PASSANT[enPassantSquares[ply - 1]];
+		int rec = ply << RECORD_SHIFT;
+		int prevEnPassantSquare = getEnPassantSquare(ply - 1);
+		if (prevEnPassantSquare != -1)
+			toggleEnPassantSquare(rec, prevEnPassantSquare);
 		if (Move.getPieceType(move) == Pieces.PAWN
 				&& Move.getFromSqr(move) >>> 3 == 6 - 5 * nextMovingPlayer
 				&& Move.getToSqr(move) >>> 3 == 4 - nextMovingPlayer) {
-			enPassantSquares[ply] = Move.getFromSqr(move) - 8 + 16 * nextMovingPlayer;
-			zobristCodes[ply] ^= ZOBRIST_RND_EN_PASSANT[enPassantSquares[ply]];
-		} else
-			enPassantSquares[ply] = -1;
+			int epSqr = Move.getFromSqr(move) - 8 + 16 * nextMovingPlayer;
+			history[rec + INFO] |= epSqr + 1;
+			toggleEnPassantSquare(rec, epSqr);
+		}
+	}
+
+	/**
+	 * Päivittää tunnisteet, kun ohestalyöntiruutu lisätään tai poistetaan.
+	 */
+	private void toggleEnPassantSquare(int rec, int epSqr)
+	{
+		history[rec + KEY] ^= ZOBRIST_RND_EN_PASSANT[epSqr];
+		if (VERIFICATION_KEYS)
+			history[rec + VERIFY_KEY] ^= VERIFY_RND_EN_PASSANT[epSqr];
 	}
 
 	/**
@@ -688,7 +1469,6 @@ public final class GameState
 	 */
 	private void updateCastlingRights(int move)
 	{
-		castlingRights[ply] = castlingRights[ply - 1];
 		if (Move.getPieceType(move) == Pieces.KING) {
 			removeCastlingRight(56 * (1 - nextMovingPlayer));
 			removeCastlingRight(56 * (1 - nextMovingPlayer) + 7);
@@ -703,10 +1483,13 @@ public final class GameState
 	 */
 	private void removeCastlingRight(int rookSqr)
 	{
+		int rec = ply << RECORD_SHIFT;
 		long sqrBit = 1L << rookSqr;
-		if ((castlingRights[ply] & sqrBit) != 0) {
-			castlingRights[ply] &= ~sqrBit;
-			zobristCodes[ply] ^= ZOBRIST_RND_CASTLINGRIGHTS[rookSqr];
+		if ((history[rec + CASTLING] & sqrBit) != 0) {
+			history[rec + CASTLING] &= ~sqrBit;
+			history[rec + KEY] ^= ZOBRIST_RND_CASTLINGRIGHTS[rookSqr];
+			if (VERIFICATION_KEYS)
+				history[rec + VERIFY_KEY] ^= VERIFY_RND_CASTLINGRIGHTS[rookSqr];
 		}
 	}
 
@@ -749,8 +1532,8 @@ public final class GameState
 				rookFromSqr = 8 * row + 7;
 				rookToSqr = 8 * row + 5;
 			}
-			removePiece(nextMovingPlayer, Pieces.ROOK, rookToSqr);
-			addPiece(nextMovingPlayer, Pieces.ROOK, rookFromSqr);
+			bitboard.removePiece(nextMovingPlayer, Pieces.ROOK, rookToSqr);
+			bitboard.addPiece(nextMovingPlayer, Pieces.ROOK, rookFromSqr);
 		}
 	}
 
@@ -767,7 +1550,8 @@ public final class GameState
 	{
 		int rowOffset = 56 * (1 - player);
 		long moves = 0;
-		if ((castlingRights[ply] & (1L << rowOffset)) != 0) {
+		long rights = getCastlingRights();
+		if ((rights & (1L << rowOffset)) != 0) {
 			long betweenSquares = (1L << 1 | 1L << 2 | 1L << 3) << rowOffset;
 			if ((betweenSquares & bitboard.getPieces()) == 0) {
 				long kingSqrs = (1L << 2 | 1L << 3 | 1L << 4) << rowOffset;
@@ -775,7 +1559,7 @@ public final class GameState
 					moves |= 1L << 2;
 			}
 		}
-		if ((castlingRights[ply] & (1L << (rowOffset + 7))) != 0) {
+		if ((rights & (1L << (rowOffset + 7))) != 0) {
 			long betweenSquares = (1L << 5 | 1L << 6) << rowOffset;
 			if ((betweenSquares & bitboard.getPieces()) == 0) {
 				long kingSqrs = (1L << 4 | 1L << 5 | 1L << 6) << rowOffset;
@@ -788,29 +1572,35 @@ public final class GameState
 	}
 
 	/**
-	 * Kasvattaa sisäisten taulukoiden kokoa.
+	 * Lisää historiapinoon uuden tietueen ja siirtyy siihen. Tietueeseen kopioidaan edellisen
+	 * pelitilanteen tunnisteet ja tornitusoikeudet; ohestalyöntiruutu, siirtolaskuri ja laiskasti
+	 * lasketut tiedot nollataan.
+	 *
+	 * @return uuden tietueen alkuindeksi
 	 */
-	private void growArrays()
+	private int pushRecord()
 	{
-		if (ply + 1 >= zobristCodes.length) {
-			int newSize = 2 * zobristCodes.length;
-			zobristCodes = Arrays.copyOf(zobristCodes, newSize);
-			castlingRights = Arrays.copyOf(castlingRights, newSize);
-			enPassantSquares = Arrays.copyOf(enPassantSquares, newSize);
-			halfMoveClocks = Arrays.copyOf(halfMoveClocks, newSize);
-		}
+		int prev = ply << RECORD_SHIFT;
+		int rec = prev + RECORD_SIZE;
+		if (rec + RECORD_SIZE > history.length)
+			history = Arrays.copyOf(history, 2 * history.length);
+		long[] h = history;
+		h[rec + KEY] = h[prev + KEY];
+		h[rec + PAWN_KEY] = h[prev + PAWN_KEY];
+		h[rec + MATERIAL_KEY] = h[prev + MATERIAL_KEY];
+		h[rec + CASTLING] = h[prev + CASTLING];
+		h[rec + VERIFY_KEY] = h[prev + VERIFY_KEY];
+		h[rec + INFO] = 0;
+		++ply;
+		return rec;
 	}
 
 	/**
-	 * Tarkistaa onko pelitilanne toistunut aikaisemmin.
+	 * Palauttaa annetun tason ohestalyöntiruudun.
 	 */
-	private boolean isRepeatedState()
+	private int getEnPassantSquare(int ply)
 	{
-		for (int i = ply - halfMoveClocks[ply]; i < ply; ++i) {
-			if (zobristCodes[i] == zobristCodes[ply])
-				return true;
-		}
-		return false;
+		return (int) (history[(ply << RECORD_SHIFT) + INFO] & EP_MASK) - 1;
 	}
 
 	/**
@@ -818,20 +1608,22 @@ public final class GameState
 	 */
 	private void updateHalfMoveClock(int move)
 	{
-		if (Move.getCapturedType(move) != -1 || Move.getPieceType(move) == Pieces.PAWN)
-			halfMoveClocks[ply] = 0;
-		else
-			halfMoveClocks[ply] = halfMoveClocks[ply - 1] + 1;
+		int rec = ply << RECORD_SHIFT;
+		if (Move.getCapturedType(move) == -1 && Move.getPieceType(move) != Pieces.PAWN)
+			history[rec + INFO] |= (history[rec - RECORD_SIZE + INFO] >>> CLOCK_SHIFT) + 1
+					<< CLOCK_SHIFT;
 	}
 
 	/**
-	 * Asettaa aloitustilanteen tornitusoikeuden, jos torni on oikeassa kohtaa.
+	 * Asettaa aloitustilanteen tornitusoikeuden, jos se on sallittu ja torni on oikeassa kohtaa.
 	 */
-	private void checkCastlingRight(int player, int sqr)
+	private void checkCastlingRight(int player, int sqr, long allowedRights)
 	{
-		if (bitboard.hasPiece(player, Pieces.ROOK, sqr)) {
-			this.castlingRights[0] |= 1L << sqr;
-			this.zobristCodes[0] ^= ZOBRIST_RND_CASTLINGRIGHTS[sqr];
+		if ((allowedRights & 1L << sqr) != 0 && bitboard.hasPiece(player, Pieces.ROOK, sqr)) {
+			history[CASTLING] |= 1L << sqr;
+			history[KEY] ^= ZOBRIST_RND_CASTLINGRIGHTS[sqr];
+			if (VERIFICATION_KEYS)
+				history[VERIFY_KEY] ^= VERIFY_RND_CASTLINGRIGHTS[sqr];
 		}
 	}
 }
@@ -0,0 +1,28 @@
+package chess.domain;
+
+/**
+ * Pelitilanteen tilaa vastaavat kokonaislukuvakiot (ks. GameState.getGameStatus).
+ */
+public final class GameStatus
+{
+	/**
+	 * Peli jatkuu.
+	 */
+	public static final int ONGOING = 0;
+
+	/**
+	 * Vuorossa oleva pelaaja on matissa.
+	 */
+	public static final int CHECKMATE = 1;
+
+	/**
+	 * Vuorossa olevalla pelaajalla ei ole laillisia siirtoja, mutta hän ei ole shakissa.
+	 */
+	public static final int STALEMATE = 2;
+
+	/**
+	 * Tasapeli toistuneen pelitilanteen, 50 siirron säännön tai riittämättömän materiaalin
+	 * perusteella.
+	 */
+	public static final int DRAW = 3;
+}
@@ -3,6 +3,11 @@ package chess.domain;
 /**
  * Apufunktiot siirtojen pakkaamiseksi 32-bittiseen kokonaislukuun, pakatun siirron purkamiseksi,
  * sekä siirron muuttamiseksi merkkijonomuotoon.
+ *
+ * Siirron voi tallentaa myös tiiviissä 16-bittisessä muodossa, johon tallennetaan vain lähtöruutu
+ * (bitit 0-5), kohderuutu (bitit 6-11) ja korotuksen nappulatyyppi (bitit 12-14, 0 jos siirto ei
+ * ole korotus). Muut tiedot saadaan laudalta, joten tiivis siirto muunnetaan takaisin
+ * GameState.expandMove-metodilla.
  */
 public final class Move
 {
@@ -77,6 +82,51 @@ public final class Move
 		return move >> 24 & 0x7;
 	}
 
+	/**
+	 * Muuntaa siirron tiiviiseen 16-bittiseen muotoon.
+	 *
+	 * @param move pakattu siirto
+	 * @return tiivis siirto
+	 */
+	public static short toCompact(int move)
+	{
+		int promotion = getNewType(move) != getPieceType(move) ? getNewType(move) : 0;
+		return (short) (getFromSqr(move) | getToSqr(move) << 6 | promotion << 12);
+	}
+
+	/**
+	 * Palauttaa tiiviin siirron lähtöruudun.
+	 *
+	 * @param compactMove tiivis siirto
+	 * @return
+	 */
+	public static int getCompactFromSqr(int compactMove)
+	{
+		return compactMove & 0x3f;
+	}
+
+	/**
+	 * Palauttaa tiiviin siirron kohderuudun.
+	 *
+	 * @param compactMove tiivis siirto
+	 * @return
+	 */
+	public static int getCompactToSqr(int compactMove)
+	{
+		return compactMove >> 6 & 0x3f;
+	}
+
+	/**
+	 * Palauttaa tiiviin siirron korotuksen nappulatyypin tai 0 jos siirto ei ole korotus.
+	 *
+	 * @param compactMove tiivis siirto
+	 * @return
+	 */
+	public static int getCompactPromotion(int compactMove)
+	{
+		return compactMove >> 12 & 0x7;
+	}
+
 	/**
 	 * Muuntaa siirron merkkijonoksi käyttäen pitkää algebrallista notaatiota (esim "Qb3xc4").
 	 *
@@ -1,5 +1,16 @@
 package chess.domain;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
 /**
  * Bittimaskit nopeaa siirtojen generointia yms varten.
  *
@@ -14,6 +25,19 @@ package chess.domain;
  * löytyy sopiva (ks. http://chessprogramming.wikispaces.com/Looking+for+Magics).
  *
  * Kuningattaren siirrot lasketaan yhdistämällä lähetin ja tornin siirrot.
+ *
+ * Hakutaulukoista on kaksi versiota. Oletuksena käytetään litteää asettelua, jossa kaikkien
+ * ruutujen siirrot ovat yhdessä yhtenäisessä taulukossa (SLIDING_MOVES) ja kunkin ruudun
+ * hajautusfunktion parametrit (maski, kerroin, siirtomäärä ja taulukon alkuindeksi) on pakattu
+ * peräkkäin MAGICS-taulukkoon. Yksi haku lukee tällöin vain yhden parametritietueen ja yhden
+ * alkion siirtotaulukosta. Vanha asettelu (erilliset parametritaulukot ja ruutukohtaiset
+ * siirtotaulukot) voidaan valita järjestelmäominaisuudella -Dchess.magics=jagged.
+ *
+ * Taulukoiden generointi vie aikaa jokaisen JVM:n käynnistyksen yhteydessä, joten ne
+ * kirjoitetaan käännösvaiheessa binääritiedostoon movemasks.bin (ks. main ja pom.xml). Luokan
+ * alustuksessa tiedosto luetaan yhdellä kertaa ja sen eheys tarkistetaan CRC32-tarkistussummalla.
+ * Jos tiedostoa ei löydy tai se on virheellinen, taulukot generoidaan kuten ennenkin.
+ * Generointi voidaan pakottaa järjestelmäominaisuudella -Dchess.movemasks=generate.
  */
 public final class Movemasks
 {
@@ -27,6 +51,26 @@ public final class Movemasks
 	 */
 	public static final long[] PROMOTABLE = {0x000000000000FF00L, 0x00FF000000000000L};
 
+	/**
+	 * Sotilaan siirto eteenpäin ruutuindeksin muutoksena kummallekin pelaajalle.
+	 */
+	public static final int[] PAWN_PUSH_OFFSETS = {-8, 8};
+
+	/**
+	 * Sotilaan lyönti A-sarakkeen suuntaan ruutuindeksin muutoksena kummallekin pelaajalle.
+	 */
+	public static final int[] PAWN_WEST_CAPTURE_OFFSETS = {-9, 7};
+
+	/**
+	 * Sotilaan lyönti H-sarakkeen suuntaan ruutuindeksin muutoksena kummallekin pelaajalle.
+	 */
+	public static final int[] PAWN_EAST_CAPTURE_OFFSETS = {-7, 9};
+
+	/**
+	 * Bittimaskit sotilaan uhkaamista ruuduista (PAWN_ATTACKS[player][sqr]).
+	 */
+	public static final long[][] PAWN_ATTACKS = new long[Players.COUNT][64];
+
 	/**
 	 * Bittimaskit ratsun siirroista kussakin pelilaudan ruudussa.
 	 */
@@ -37,6 +81,62 @@ public final class Movemasks
 	 */
 	public static final long[] KNIGHT_MOVES = new long[64];
 
+	/**
+	 * A-sarakkeen ruudut.
+	 */
+	private static final long FILE_A = 0x0101010101010101L;
+
+	/**
+	 * H-sarakkeen ruudut.
+	 */
+	private static final long FILE_H = 0x8080808080808080L;
+
+	/**
+	 * Rivit, joille sotilas päätyy kaksoisaskeleen ensimmäisellä askeleella.
+	 */
+	private static final long[] DOUBLE_PUSH_MIDDLE_ROWS = {
+		0x0000FF0000000000L, 0x0000000000FF0000L
+	};
+
+	/**
+	 * Käytetäänkö litteää hakutaulukkoasettelua (ks. luokan kuvaus).
+	 */
+	public static final boolean FLAT_MAGICS = !"jagged".equals(System.getProperty("chess.magics"));
+
+	/**
+	 * Pakatut hajautusparametrit. Ruudun sqr tornin tietue alkaa indeksistä 8 * sqr ja lähetin
+	 * tietue indeksistä 8 * sqr + 4, joten kuningattaren haku lukee vain yhden välimuistirivin.
+	 * Tietueen kentät: maski, kerroin, siirtomäärä (64 - bittien määrä) ja alkuindeksi
+	 * SLIDING_MOVES-taulukossa.
+	 */
+	private static final long[] MAGICS = new long[64 * 8];
+
+	/**
+	 * Tornin ja lähetin siirrot kaikille ruuduille yhdessä taulukossa.
+	 */
+	private static final long[] SLIDING_MOVES;
+
+	/**
+	 * Valmiiksi lasketut hakutaulukot sisältävän resurssin nimi.
+	 */
+	private static final String TABLE_RESOURCE = "movemasks.bin";
+
+	/**
+	 * Taulukkotiedoston tunniste. Muutetaan, jos tiedoston rakenne muuttuu.
+	 */
+	private static final long TABLE_FORMAT = 0x4D4F56454D534B01L;
+
+	/**
+	 * Generoidaanko taulukot aina lukematta niitä tiedostosta.
+	 */
+	private static final boolean GENERATE_TABLES = "generate".equals(
+			System.getProperty("chess.movemasks"));
+
+	/**
+	 * Luettiinko taulukot tiedostosta.
+	 */
+	private static boolean tablesLoaded;
+
 	/**
 	 * Maskit samalla rivillä/sarakkeella olevista ruuduista (poislukien reunat).
 	 */
@@ -132,9 +232,56 @@ public final class Movemasks
 	private static final long[][] BISHOP_MOVES = new long[64][];
 
 	/**
-	 * Generoi hakutaulukot.
+	 * Kahden ruudun väliin jäävät ruudut (SQUARES_BETWEEN[sqr1 * 64 + sqr2]), jos ruudut ovat
+	 * samalla rivillä, sarakkeella tai diagonaalilla. Muussa tapauksessa 0.
+	 */
+	private static final long[] SQUARES_BETWEEN = new long[64 * 64];
+
+	/**
+	 * Lukee hakutaulukot tiedostosta tai generoi ne.
 	 */
 	static {
+		long[] slidingMoves = GENERATE_TABLES ? null : loadTables();
+		tablesLoaded = slidingMoves != null;
+		SLIDING_MOVES = tablesLoaded ? slidingMoves : generateTables();
+	}
+
+	/**
+	 * Muodostaa sotilaiden lyöntitaulukot. Ne ovat pieniä, joten niitä ei tallenneta tiedostoon.
+	 */
+	static {
+		for (int player = 0; player < Players.COUNT; ++player) {
+			for (int sqr = 0; sqr < 64; ++sqr)
+				PAWN_ATTACKS[player][sqr] = getPawnAttacks(player, 1L << sqr);
+		}
+	}
+
+	/**
+	 * Kirjoittaa generoidut hakutaulukot tiedostoon. Ajetaan käännösvaiheessa
+	 * järjestelmäominaisuudella -Dchess.movemasks=generate, jotta vanhaa tiedostoa ei käytetä
+	 * uuden pohjana.
+	 *
+	 * @param args kirjoitettavan tiedoston polku
+	 */
+	public static void main(String[] args) throws IOException
+	{
+		if (tablesLoaded)
+			throw new IllegalStateException("Tables must be generated "
+					+ "(-Dchess.movemasks=generate).");
+		File file = new File(args[0]);
+		file.getAbsoluteFile().getParentFile().mkdirs();
+		try (OutputStream out = new FileOutputStream(file)) {
+			writeTables(out);
+		}
+	}
+
+	/**
+	 * Generoi kaikki hakutaulukot.
+	 *
+	 * @return litteä siirtotaulukko
+	 */
+	private static long[] generateTables()
+	{
 		for (int sqr = 0; sqr < 64; ++sqr) {
 			int row = sqr / 8;
 			int col = sqr % 8;
@@ -144,7 +291,143 @@ public final class Movemasks
 			ROOK_MOVES[sqr] = generateRookMoves(sqr, row, col);
 			BISHOP_OCCUPANCY_MASKS[sqr] = generateBishopOccupancyMask(sqr, row, col);
 			BISHOP_MOVES[sqr] = generateBishopMoves(sqr, row, col);
+			generateSquaresBetween(sqr, row, col);
+		}
+		return generateFlatMoves();
+	}
+
+	/**
+	 * Lukee hakutaulukot resurssitiedostosta.
+	 *
+	 * @return litteä siirtotaulukko tai null, jos tiedostoa ei ole tai se on virheellinen
+	 */
+	private static long[] loadTables()
+	{
+		try (InputStream in = Movemasks.class.getResourceAsStream(TABLE_RESOURCE)) {
+			if (in == null)
+				return null;
+			long[][] tables = readTables(in);
+			return tables != null && setTables(tables) ? tables[4] : null;
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Kirjoittaa hakutaulukot virtaan. Tiedoston muoto: tunniste, jokaiselle taulukolle pituus ja
+	 * alkiot, lopuksi CRC32-tarkistussumma kaikista edeltävistä tavuista. Kaikki arvot ovat
+	 * 64-bittisiä big-endian-lukuja.
+	 *
+	 * @param out virta
+	 */
+	static void writeTables(OutputStream out) throws IOException
+	{
+		long[][] tables = {KING_MOVES, KNIGHT_MOVES, MAGICS, SQUARES_BETWEEN, SLIDING_MOVES};
+		int size = 2;
+		for (long[] table : tables)
+			size += 1 + table.length;
+		ByteBuffer bytes = ByteBuffer.allocate(size * 8);
+		LongBuffer longs = bytes.asLongBuffer();
+		longs.put(TABLE_FORMAT);
+		for (long[] table : tables) {
+			longs.put(table.length);
+			longs.put(table);
+		}
+		CRC32 crc = new CRC32();
+		crc.update(bytes.array(), 0, (size - 1) * 8);
+		longs.put(crc.getValue());
+		out.write(bytes.array());
+	}
+
+	/**
+	 * Lukee writeTables-metodin kirjoittamat taulukot virrasta.
+	 *
+	 * @param in virta
+	 * @return taulukot kirjoitusjärjestyksessä tai null, jos tunniste tai tarkistussumma ei
+	 * täsmää
+	 */
+	static long[][] readTables(InputStream in) throws IOException
+	{
+		ByteArrayOutputStream data = new ByteArrayOutputStream(1 << 20);
+		byte[] chunk = new byte[1 << 16];
+		for (int n; (n = in.read(chunk)) != -1;)
+			data.write(chunk, 0, n);
+		byte[] bytes = data.toByteArray();
+		if (bytes.length < 16 || bytes.length % 8 != 0)
+			return null;
+
+		CRC32 crc = new CRC32();
+		crc.update(bytes, 0, bytes.length - 8);
+		LongBuffer longs = ByteBuffer.wrap(bytes).asLongBuffer();
+		if (longs.get(longs.limit() - 1) != crc.getValue() || longs.get() != TABLE_FORMAT)
+			return null;
+
+		long[][] tables = new long[5][];
+		for (int i = 0; i < tables.length; ++i) {
+			long length = longs.get();
+			if (length < 0 || length >= longs.remaining())
+				return null;
+			tables[i] = new long[(int) length];
+			longs.get(tables[i]);
+		}
+		return longs.remaining() == 1 ? tables : null;
+	}
+
+	/**
+	 * Kopioi tiedostosta luetut taulukot käyttöön ja muodostaa niistä vanhan asettelun
+	 * ruutukohtaiset taulukot. Hajautusparametrien on vastattava luokan vakioita.
+	 *
+	 * @param tables readTables-metodin palauttamat taulukot
+	 * @return true, jos taulukot olivat kelvollisia
+	 */
+	private static boolean setTables(long[][] tables)
+	{
+		long[] magics = tables[2];
+		if (tables[0].length != 64 || tables[1].length != 64 || magics.length != MAGICS.length
+				|| tables[3].length != SQUARES_BETWEEN.length)
+			return false;
+		for (int sqr = 0; sqr < 64; ++sqr) {
+			if (magics[sqr << 3 | 1] != ROOK_OCCUPANCY_MAGIC_MULTIPLIERS[sqr]
+					|| magics[sqr << 3 | 2] != 64 - ROOK_OCCUPANCY_BITS[sqr]
+					|| magics[sqr << 3 | 5] != BISHOP_OCCUPANCY_MAGIC_MULTIPLIERS[sqr]
+					|| magics[sqr << 3 | 6] != 64 - BISHOP_OCCUPANCY_BITS[sqr])
+				return false;
+		}
+
+		long[] slidingMoves = tables[4];
+		for (int sqr = 0; sqr < 64; ++sqr) {
+			long rookEnd = magics[sqr << 3 | 3] + (1L << ROOK_OCCUPANCY_BITS[sqr]);
+			long bishopEnd = magics[sqr << 3 | 7] + (1L << BISHOP_OCCUPANCY_BITS[sqr]);
+			if (magics[sqr << 3 | 3] < 0 || magics[sqr << 3 | 7] < 0
+					|| rookEnd > slidingMoves.length || bishopEnd > slidingMoves.length)
+				return false;
+		}
+
+		System.arraycopy(tables[0], 0, KING_MOVES, 0, 64);
+		System.arraycopy(tables[1], 0, KNIGHT_MOVES, 0, 64);
+		System.arraycopy(magics, 0, MAGICS, 0, MAGICS.length);
+		System.arraycopy(tables[3], 0, SQUARES_BETWEEN, 0, SQUARES_BETWEEN.length);
+		for (int sqr = 0; sqr < 64; ++sqr) {
+			int rookOffset = (int) MAGICS[sqr << 3 | 3];
+			int bishopOffset = (int) MAGICS[sqr << 3 | 7];
+			ROOK_OCCUPANCY_MASKS[sqr] = MAGICS[sqr << 3];
+			ROOK_MOVES[sqr] = Arrays.copyOfRange(slidingMoves, rookOffset,
+					rookOffset + (1 << ROOK_OCCUPANCY_BITS[sqr]));
+			BISHOP_OCCUPANCY_MASKS[sqr] = MAGICS[sqr << 3 | 4];
+			BISHOP_MOVES[sqr] = Arrays.copyOfRange(slidingMoves, bishopOffset,
+					bishopOffset + (1 << BISHOP_OCCUPANCY_BITS[sqr]));
 		}
+		return true;
+	}
+
+	/**
+	 * Kertoo, luettiinko hakutaulukot tiedostosta.
+	 *
+	 * @return true jos taulukot luettiin tiedostosta, false jos ne generoitiin
+	 */
+	static boolean isLoadedFromResource()
+	{
+		return tablesLoaded;
 	}
 
 	/**
@@ -156,8 +439,9 @@ public final class Movemasks
 	 */
 	public static long getRookMoves(int fromSqr, long allPieces)
 	{
-		int hash = rookOccupancyHash(fromSqr, allPieces);
-		return ROOK_MOVES[fromSqr][hash];
+		if (FLAT_MAGICS)
+			return getFlatMoves(fromSqr << 3, allPieces);
+		return getRookMovesJagged(fromSqr, allPieces);
 	}
 
 	/**
@@ -169,8 +453,9 @@ public final class Movemasks
 	 */
 	public static long getBishopMoves(int fromSqr, long allPieces)
 	{
-		int hash = bishopOccupancyHash(fromSqr, allPieces);
-		return BISHOP_MOVES[fromSqr][hash];
+		if (FLAT_MAGICS)
+			return getFlatMoves(fromSqr << 3 | 4, allPieces);
+		return getBishopMovesJagged(fromSqr, allPieces);
 	}
 
 	/**
@@ -182,6 +467,48 @@ public final class Movemasks
 	 * @return siirot bittimaskina
 	 */
 	public static long getQueenMoves(int fromSqr, long allPieces)
+	{
+		if (FLAT_MAGICS)
+			return getFlatMoves(fromSqr << 3, allPieces)
+					| getFlatMoves(fromSqr << 3 | 4, allPieces);
+		return getQueenMovesJagged(fromSqr, allPieces);
+	}
+
+	/**
+	 * Tornin siirrot vanhalla asettelulla asetuksesta riippumatta. Tarkoitettu asettelujen
+	 * vertailuun (ks. MoveGenerationBenchmark).
+	 *
+	 * @param fromSqr lähtöruutu
+	 * @param allPieces kaikki nappulat
+	 * @return siirot bittimaskina
+	 */
+	public static long getRookMovesJagged(int fromSqr, long allPieces)
+	{
+		int hash = rookOccupancyHash(fromSqr, allPieces);
+		return ROOK_MOVES[fromSqr][hash];
+	}
+
+	/**
+	 * Lähetin siirrot vanhalla asettelulla asetuksesta riippumatta.
+	 *
+	 * @param fromSqr lähtöruutu
+	 * @param allPieces kaikki nappulat
+	 * @return siirot bittimaskina
+	 */
+	public static long getBishopMovesJagged(int fromSqr, long allPieces)
+	{
+		int hash = bishopOccupancyHash(fromSqr, allPieces);
+		return BISHOP_MOVES[fromSqr][hash];
+	}
+
+	/**
+	 * Kuningattaren siirrot vanhalla asettelulla asetuksesta riippumatta.
+	 *
+	 * @param fromSqr lähtöruutu
+	 * @param allPieces kaikki nappulat
+	 * @return siirot bittimaskina
+	 */
+	public static long getQueenMovesJagged(int fromSqr, long allPieces)
 	{
 		int rhash = rookOccupancyHash(fromSqr, allPieces);
 		int bhash = bishopOccupancyHash(fromSqr, allPieces);
@@ -189,6 +516,105 @@ public final class Movemasks
 		return moves;
 	}
 
+	/**
+	 * Palauttaa kaikkien sotilaiden yhden askeleen siirtojen kohderuudut. Lähtöruutu saadaan
+	 * vähentämällä kohderuudusta PAWN_PUSH_OFFSETS[player].
+	 *
+	 * @param player pelaaja
+	 * @param pawns sotilaat bittimaskina
+	 * @param empty tyhjät ruudut
+	 * @return kohderuudut bittimaskina
+	 */
+	public static long getPawnPushes(int player, long pawns, long empty)
+	{
+		return (player == Players.WHITE ? pawns >>> 8 : pawns << 8) & empty;
+	}
+
+	/**
+	 * Palauttaa kaikkien sotilaiden kahden askeleen siirtojen kohderuudut. Lähtöruutu saadaan
+	 * vähentämällä kohderuudusta kahdesti PAWN_PUSH_OFFSETS[player].
+	 *
+	 * @param player pelaaja
+	 * @param pawns sotilaat bittimaskina
+	 * @param empty tyhjät ruudut
+	 * @return kohderuudut bittimaskina
+	 */
+	public static long getPawnDoublePushes(int player, long pawns, long empty)
+	{
+		long pushes = getPawnPushes(player, pawns, empty) & DOUBLE_PUSH_MIDDLE_ROWS[player];
+		return getPawnPushes(player, pushes, empty);
+	}
+
+	/**
+	 * Palauttaa kaikkien sotilaiden A-sarakkeen suuntaan tehtävien lyöntien kohderuudut
+	 * annettujen ruutujen joukosta. Lähtöruutu saadaan vähentämällä kohderuudusta
+	 * PAWN_WEST_CAPTURE_OFFSETS[player].
+	 *
+	 * @param player pelaaja
+	 * @param pawns sotilaat bittimaskina
+	 * @param targets sallitut kohderuudut
+	 * @return kohderuudut bittimaskina
+	 */
+	public static long getPawnWestCaptures(int player, long pawns, long targets)
+	{
+		pawns &= ~FILE_A;
+		return (player == Players.WHITE ? pawns >>> 9 : pawns << 7) & targets;
+	}
+
+	/**
+	 * Palauttaa kaikkien sotilaiden H-sarakkeen suuntaan tehtävien lyöntien kohderuudut
+	 * annettujen ruutujen joukosta. Lähtöruutu saadaan vähentämällä kohderuudusta
+	 * PAWN_EAST_CAPTURE_OFFSETS[player].
+	 *
+	 * @param player pelaaja
+	 * @param pawns sotilaat bittimaskina
+	 * @param targets sallitut kohderuudut
+	 * @return kohderuudut bittimaskina
+	 */
+	public static long getPawnEastCaptures(int player, long pawns, long targets)
+	{
+		pawns &= ~FILE_H;
+		return (player == Players.WHITE ? pawns >>> 7 : pawns << 9) & targets;
+	}
+
+	/**
+	 * Palauttaa kaikkien sotilaiden uhkaamat ruudut.
+	 *
+	 * @param player pelaaja
+	 * @param pawns sotilaat bittimaskina
+	 * @return uhatut ruudut bittimaskina
+	 */
+	public static long getPawnAttacks(int player, long pawns)
+	{
+		return getPawnWestCaptures(player, pawns, -1L) | getPawnEastCaptures(player, pawns, -1L);
+	}
+
+	/**
+	 * Palauttaa kahden ruudun väliin jäävät ruudut, jos ruudut ovat samalla rivillä, sarakkeella
+	 * tai diagonaalilla. Päätepisteet eivät sisälly tulokseen.
+	 *
+	 * @param sqr1 ensimmäinen ruutu
+	 * @param sqr2 toinen ruutu
+	 * @return välissä olevat ruudut bittimaskina (0 jos ruudut eivät ole samalla linjalla)
+	 */
+	public static long getSquaresBetween(int sqr1, int sqr2)
+	{
+		return SQUARES_BETWEEN[sqr1 * 64 + sqr2];
+	}
+
+	/**
+	 * Siirtojen haku litteästä taulukosta.
+	 *
+	 * @param idx parametritietueen alkuindeksi MAGICS-taulukossa
+	 * @param allPieces kaikki laudalla olevat nappulat
+	 * @return siirot bittimaskina
+	 */
+	private static long getFlatMoves(int idx, long allPieces)
+	{
+		long hash = (allPieces & MAGICS[idx]) * MAGICS[idx + 1] >>> MAGICS[idx + 2];
+		return SLIDING_MOVES[(int) (MAGICS[idx + 3] + hash)];
+	}
+
 	/**
 	 * Täydellinen hajautusfunktio samalla rivillä/sarakkeella oleville nappuloille.
 	 *
@@ -291,6 +717,63 @@ public final class Movemasks
 		return moves;
 	}
 
+	/**
+	 * Kopioi ruutukohtaiset siirtotaulukot yhteen taulukkoon ja täyttää MAGICS-taulukon
+	 * parametritietueet.
+	 */
+	private static long[] generateFlatMoves()
+	{
+		int size = 0;
+		for (int sqr = 0; sqr < 64; ++sqr)
+			size += ROOK_MOVES[sqr].length + BISHOP_MOVES[sqr].length;
+		long[] moves = new long[size];
+		int offset = 0;
+		for (int sqr = 0; sqr < 64; ++sqr) {
+			offset = addMagicRecord(sqr << 3, ROOK_OCCUPANCY_MASKS[sqr],
+					ROOK_OCCUPANCY_MAGIC_MULTIPLIERS[sqr], ROOK_OCCUPANCY_BITS[sqr],
+					ROOK_MOVES[sqr], moves, offset);
+			offset = addMagicRecord(sqr << 3 | 4, BISHOP_OCCUPANCY_MASKS[sqr],
+					BISHOP_OCCUPANCY_MAGIC_MULTIPLIERS[sqr], BISHOP_OCCUPANCY_BITS[sqr],
+					BISHOP_MOVES[sqr], moves, offset);
+		}
+		return moves;
+	}
+
+	/**
+	 * Tallentaa yhden parametritietueen ja kopioi sitä vastaavat siirrot litteään taulukkoon.
+	 *
+	 * @return seuraavan tietueen alkuindeksi siirtotaulukossa
+	 */
+	private static int addMagicRecord(int idx, long mask, long magic, long bits, long[] src,
+			long[] dst, int offset)
+	{
+		MAGICS[idx] = mask;
+		MAGICS[idx + 1] = magic;
+		MAGICS[idx + 2] = 64 - bits;
+		MAGICS[idx + 3] = offset;
+		System.arraycopy(src, 0, dst, offset, src.length);
+		return offset + src.length;
+	}
+
+	/**
+	 * Täyttää SQUARES_BETWEEN-taulukon annetusta ruudusta alkavat rivit kulkemalla jokaiseen
+	 * kahdeksaan suuntaan laudan reunaan asti.
+	 */
+	private static void generateSquaresBetween(int sqr, int row, int col)
+	{
+		for (int dr = -1; dr <= 1; ++dr) {
+			for (int dc = -1; dc <= 1; ++dc) {
+				if (dr == 0 && dc == 0)
+					continue;
+				long between = 0;
+				for (int r = row + dr, c = col + dc; ((r | c) & ~7) == 0; r += dr, c += dc) {
+					SQUARES_BETWEEN[sqr * 64 + r * 8 + c] = between;
+					between |= getMove(r, c);
+				}
+			}
+		}
+	}
+
 	/**
 	 * Muodostaa bittimaskin lähetin/tornin/kuningattaren siirroista yhteen suuntaan. Lisätään
 	 * kaikki ruudut ko. suuntaan, kunnes tullaan laudan reunaan tai vastaan tulee toinen nappula.
@@ -0,0 +1,122 @@
+package chess.domain;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Pelitilanteen tiivis 32 tavun binääriesitys tallennusta ja prosessien välistä tiedonsiirtoa
+ * varten. Esitys kirjoitetaan suoraan ByteBufferiin ja luetaan siitä ilman välipuskureita.
+ *
+ * Rakenne (kaikki kentät big-endian-järjestyksessä):
+ * <pre>
+ *  0-7   varatut ruudut bittimaskina
+ *  8-23  nappuloiden koodit (player &lt;&lt; 3 | piece) 4 bittiä kukin varattujen ruutujen
+ *        järjestyksessä pienimmästä ruudusta alkaen; 16 koodia kumpaankin longiin vähiten
+ *        merkitsevistä biteistä alkaen
+ *  24-31 liput: bitti 0 vuorossa oleva pelaaja, bitit 1-4 tornitusoikeudet (K, Q, k, q),
+ *        bitit 5-8 ohestalyöntisarake + 1 (0 jos ei ohestalyöntiä), bitit 9-24 puolisiirtojen
+ *        määrä edellisestä lyönnistä tai sotilaan siirrosta, bitit 25-56 siirtonumero
+ * </pre>
+ * Laudalla saa olla enintään 32 nappulaa. Aiempien pelitilanteiden historiaa ei tallenneta,
+ * joten purettu pelitilanne ei tunnista toistoja ennen pakkaamista tehdyistä siirroista.
+ */
+public final class PackedPosition
+{
+	/**
+	 * Pakatun pelitilanteen koko tavuina.
+	 */
+	public static final int SIZE = 32;
+
+	/**
+	 * Tornitusoikeuksia vastaavat torniruudut lippukentän bittijärjestyksessä.
+	 */
+	private static final int[] CASTLING_SQUARES = {63, 56, 7, 0};
+
+	/**
+	 * Kirjoittaa pelitilanteen puskurin nykyiseen kohtaan ja siirtää kohtaa SIZE tavua eteenpäin.
+	 *
+	 * @param state pelitilanne
+	 * @param buf puskuri
+	 * @throws IllegalArgumentException jos laudalla on yli 32 nappulaa
+	 */
+	public static void encode(GameState state, ByteBuffer buf)
+	{
+		BitBoard board = state.getBoard();
+		long occupied = board.getPieces();
+		if (Long.bitCount(occupied) > 32)
+			throw new IllegalArgumentException("Too many pieces to pack.");
+
+		long codes0 = 0;
+		long codes1 = 0;
+		int idx = 0;
+		for (long pieces = occupied; pieces != 0; pieces -= Long.lowestOneBit(pieces), ++idx) {
+			int sqr = Long.numberOfTrailingZeros(pieces);
+			long code = board.getPlayer(sqr) << 3 | board.getPieceType(sqr);
+			if (idx < 16)
+				codes0 |= code << 4 * idx;
+			else
+				codes1 |= code << 4 * (idx - 16);
+		}
+
+		long flags = state.getNextMovingPlayer();
+		long rights = state.getCastlingRights();
+		for (int i = 0; i < CASTLING_SQUARES.length; ++i) {
+			if ((rights & 1L << CASTLING_SQUARES[i]) != 0)
+				flags |= 1L << 1 + i;
+		}
+		int ep = state.getEnPassantSquare();
+		if (ep != -1)
+			flags |= (long) (ep % 8 + 1) << 5;
+		flags |= Math.min(state.getHalfMoveClock(), 0xFFFF) << 9;
+		flags |= (long) state.getFullMoveNumber() << 25;
+
+		buf.putLong(occupied);
+		buf.putLong(codes0);
+		buf.putLong(codes1);
+		buf.putLong(flags);
+	}
+
+	/**
+	 * Lukee pelitilanteen puskurin nykyisestä kohdasta ja siirtää kohtaa SIZE tavua eteenpäin.
+	 *
+	 * @param buf puskuri
+	 * @return pelitilanne
+	 * @throws IllegalArgumentException jos data ei ole kelvollinen
+	 */
+	public static GameState decode(ByteBuffer buf)
+	{
+		long occupied = buf.getLong();
+		long codes0 = buf.getLong();
+		long codes1 = buf.getLong();
+		long flags = buf.getLong();
+		if (Long.bitCount(occupied) > 32)
+			throw new IllegalArgumentException("Invalid packed position.");
+
+		BitBoard board = new BitBoard();
+		int idx = 0;
+		for (long pieces = occupied; pieces != 0; pieces -= Long.lowestOneBit(pieces), ++idx) {
+			int sqr = Long.numberOfTrailingZeros(pieces);
+			int code = (int) ((idx < 16 ? codes0 : codes1) >>> 4 * (idx & 15)) & 0xF;
+			if ((code & 7) >= Pieces.COUNT)
+				throw new IllegalArgumentException("Invalid packed position.");
+			board.addPiece(code >> 3, code & 7, sqr);
+		}
+
+		int player = (int) flags & 1;
+		long rights = 0;
+		for (int i = 0; i < CASTLING_SQUARES.length; ++i) {
+			if ((flags & 1L << 1 + i) != 0)
+				rights |= 1L << CASTLING_SQUARES[i];
+		}
+		int epFile = (int) (flags >>> 5) & 0xF;
+		if (epFile > 8)
+			throw new IllegalArgumentException("Invalid packed position.");
+		int ep = epFile == 0 ? -1 : (2 + 3 * player) * 8 + epFile - 1;
+		int halfMoveClock = (int) (flags >>> 9) & 0xFFFF;
+		int fullMoveNumber = (int) (flags >>> 25);
+		if (fullMoveNumber < 1)
+			throw new IllegalArgumentException("Invalid packed position.");
+
+		return new GameState(board, player, rights, ep, halfMoveClock,
+				2 * (fullMoveNumber - 1) + player);
+	}
+}
@@ -0,0 +1,316 @@
+package chess.domain;
+
+/**
+ * Kiinteän kokoinen pelitilanteen kopio "copy-make"-tyyliseen käsittelyyn. Siirto ei muuta
+ * tilannetta vaan kirjoittaa lapsitilanteen toiseen olioon, joten siirtoja ei tarvitse perua ja
+ * tilanteita voi käsitellä rinnakkain ilman GameState-olion historiataulukoiden kopiointia.
+ *
+ * Tilanne sisältää nappuloiden bittimaskit, vuorossa olevan pelaajan, tornitusoikeudet,
+ * ohestalyöntiruudun, siirtolaskurin ja Zobrist-tunnisteen, joka on sama kuin vastaavan
+ * GameState-olion tunniste. Aiempien pelitilanteiden historiaa ei säilytetä, eikä laillisia
+ * siirtoja lasketa; siirtoja voi tuottaa esim. muuntamalla tilanteen GameState-olioksi.
+ * Tarkistustunnistetta (ks. GameState.VERIFICATION_KEYS) ei ylläpidetä.
+ */
+public final class PositionSnapshot
+{
+	/**
+	 * Pelaajien maskien alkuindeksi masks-taulukossa.
+	 */
+	private static final int PLAYER_MASKS = Pieces.COUNT;
+
+	/**
+	 * A-sarakkeen ruudut.
+	 */
+	private static final long FILE_A = 0x0101010101010101L;
+
+	/**
+	 * H-sarakkeen ruudut.
+	 */
+	private static final long FILE_H = 0x8080808080808080L;
+
+	/**
+	 * Bittimaskit: indeksit 0-5 nappulatyypeille ja PLAYER_MASKS + player pelaajille.
+	 */
+	private final long[] masks = new long[Pieces.COUNT + Players.COUNT];
+
+	/**
+	 * Seuraavana vuorossa oleva pelaaja.
+	 */
+	private int nextMovingPlayer;
+
+	/**
+	 * Tornitusoikeudet (ykkösbitti torniruudun kohdalla).
+	 */
+	private long castlingRights;
+
+	/**
+	 * Ohestalyöntiruutu tai -1.
+	 */
+	private int enPassantSquare = -1;
+
+	/**
+	 * Siirtojen määrä edellisestä lyönnistä tai sotilaan siirrosta.
+	 */
+	private int halfMoveClock;
+
+	/**
+	 * Zobrist-tunniste.
+	 */
+	private long key;
+
+	/**
+	 * Luo tyhjän tilanteen, jota voi käyttää makeMove-metodin kohteena.
+	 */
+	public PositionSnapshot()
+	{
+	}
+
+	/**
+	 * Luo kopion pelitilanteen nykyisestä tilanteesta.
+	 *
+	 * @param state pelitilanne
+	 */
+	public PositionSnapshot(GameState state)
+	{
+		BitBoard board = state.getBoard();
+		for (int piece = 0; piece < Pieces.COUNT; ++piece) {
+			masks[piece] = board.getPieces(Players.WHITE, piece)
+					| board.getPieces(Players.BLACK, piece);
+		}
+		masks[PLAYER_MASKS + Players.WHITE] = board.getPieces(Players.WHITE);
+		masks[PLAYER_MASKS + Players.BLACK] = board.getPieces(Players.BLACK);
+		nextMovingPlayer = state.getNextMovingPlayer();
+		castlingRights = state.getCastlingRights();
+		enPassantSquare = state.getEnPassantSquare();
+		halfMoveClock = (int) state.getHalfMoveClock();
+		key = state.getId();
+	}
+
+	/**
+	 * Tekee siirron ja palauttaa lapsitilanteen uutena oliona.
+	 *
+	 * @param move siirto pakattuna int-muuttujaan (ks. Move)
+	 * @return lapsitilanne
+	 */
+	public PositionSnapshot makeMove(int move)
+	{
+		return makeMove(move, new PositionSnapshot());
+	}
+
+	/**
+	 * Tekee siirron ja kirjoittaa lapsitilanteen annettuun olioon. Tämä tilanne ei muutu, joten
+	 * sama olio voi toimia usean lapsen vanhempana. Kohde ei saa olla tämä olio.
+	 *
+	 * @param move siirto pakattuna int-muuttujaan (ks. Move)
+	 * @param child kohde, jonka aiempi sisältö korvataan
+	 * @return child
+	 */
+	public PositionSnapshot makeMove(int move, PositionSnapshot child)
+	{
+		assert child != this;
+		System.arraycopy(masks, 0, child.masks, 0, masks.length);
+		int player = nextMovingPlayer;
+		int fromSqr = Move.getFromSqr(move);
+		int toSqr = Move.getToSqr(move);
+		int pieceType = Move.getPieceType(move);
+		int capturedType = Move.getCapturedType(move);
+		long childKey = key ^ GameState.ZOBRIST_RND_PLAYER;
+		long rights = castlingRights;
+
+		if (capturedType != -1) {
+			int capturedSqr = toSqr;
+			if (pieceType == Pieces.PAWN && toSqr == enPassantSquare)
+				capturedSqr = toSqr + 8 - 16 * player;
+			childKey ^= child.togglePiece(1 - player, capturedType, capturedSqr);
+		}
+		if (pieceType == Pieces.KING && ((fromSqr - toSqr) & 3) == 2) {
+			int rookFromSqr = (toSqr & 7) == 2 ? toSqr - 2 : toSqr + 1;
+			int rookToSqr = (toSqr & 7) == 2 ? toSqr + 1 : toSqr - 1;
+			childKey ^= child.togglePiece(player, Pieces.ROOK, rookFromSqr);
+			childKey ^= child.togglePiece(player, Pieces.ROOK, rookToSqr);
+		}
+
+		if (enPassantSquare != -1)
+			childKey ^= GameState.ZOBRIST_RND_EN_PASSANT[enPassantSquare];
+		child.enPassantSquare = -1;
+		if (pieceType == Pieces.PAWN && fromSqr >>> 3 == 6 - 5 * player
+				&& toSqr >>> 3 == 4 - player) {
+			child.enPassantSquare = fromSqr - 8 + 16 * player;
+			childKey ^= GameState.ZOBRIST_RND_EN_PASSANT[child.enPassantSquare];
+		}
+
+		// Tornitusoikeudet päivitetään samoin kuin GameState-luokassa.
+		long removedRights;
+		if (pieceType == Pieces.KING)
+			removedRights = (1L | 1L << 7) << 56 * (1 - player);
+		else if (pieceType == Pieces.ROOK)
+			removedRights = 1L << fromSqr;
+		else if (capturedType != -1)
+			removedRights = 1L << toSqr;
+		else
+			removedRights = 0;
+		for (long r = rights & removedRights; r != 0; r -= Long.lowestOneBit(r))
+			childKey ^= GameState.ZOBRIST_RND_CASTLINGRIGHTS[Long.numberOfTrailingZeros(r)];
+		child.castlingRights = rights & ~removedRights;
+
+		childKey ^= child.togglePiece(player, pieceType, fromSqr);
+		childKey ^= child.togglePiece(player, Move.getNewType(move), toSqr);
+
+		child.halfMoveClock = capturedType != -1 || pieceType == Pieces.PAWN ? 0
+				: halfMoveClock + 1;
+		child.nextMovingPlayer = 1 - player;
+		child.key = childKey;
+		return child;
+	}
+
+	/**
+	 * Luo tilannetta vastaavan GameState-olion. Uuden olion historia alkaa tästä tilanteesta.
+	 *
+	 * @return pelitilanne
+	 */
+	public GameState toGameState()
+	{
+		BitBoard board = new BitBoard();
+		for (int player = 0; player < Players.COUNT; ++player) {
+			for (int piece = 0; piece < Pieces.COUNT; ++piece) {
+				long pieces = getPieces(player, piece);
+				for (; pieces != 0; pieces -= Long.lowestOneBit(pieces))
+					board.addPiece(player, piece, Long.numberOfTrailingZeros(pieces));
+			}
+		}
+		return new GameState(board, nextMovingPlayer, castlingRights, enPassantSquare,
+				halfMoveClock, nextMovingPlayer);
+	}
+
+	/**
+	 * Palauttaa seuraavana vuorossa olevan pelaajan.
+	 *
+	 * @return 0-1
+	 */
+	public int getNextMovingPlayer()
+	{
+		return nextMovingPlayer;
+	}
+
+	/**
+	 * Palauttaa kaikki pelaajan tietyntyyppiset nappulat bittimaskina.
+	 *
+	 * @param player pelaaja (0-1)
+	 * @param piece nappulatyyppi (0-5)
+	 * @return
+	 */
+	public long getPieces(int player, int piece)
+	{
+		return masks[PLAYER_MASKS + player] & masks[piece];
+	}
+
+	/**
+	 * Palauttaa kaikki pelaajan nappulat bittimaskina.
+	 *
+	 * @param player pelaaja (0-1)
+	 * @return
+	 */
+	public long getPieces(int player)
+	{
+		return masks[PLAYER_MASKS + player];
+	}
+
+	/**
+	 * Palauttaa kummankin pelaajan nappulat.
+	 *
+	 * @return
+	 */
+	public long getPieces()
+	{
+		return masks[PLAYER_MASKS + Players.WHITE] | masks[PLAYER_MASKS + Players.BLACK];
+	}
+
+	/**
+	 * Palauttaa tornitusoikeudet bittimaskina. (Ykkösbitti asetettu vastaavan tornin kohdalla.)
+	 *
+	 * @return
+	 */
+	public long getCastlingRights()
+	{
+		return castlingRights;
+	}
+
+	/**
+	 * Palauttaa ruudun johon ohestalyönti on sallittu seuraavalla siirrolla.
+	 *
+	 * @return ruutu tai -1 jos ohestalyönti ei mahdollinen
+	 */
+	public int getEnPassantSquare()
+	{
+		return enPassantSquare;
+	}
+
+	/**
+	 * Palauttaa siirtojen lukumäärän edellisen lyönnin tai sotilaan siirron jälkeen.
+	 *
+	 * @return
+	 */
+	public int getHalfMoveClock()
+	{
+		return halfMoveClock;
+	}
+
+	/**
+	 * Palauttaa tilannetta vastaavan 64-bittisen Zobrist-arvon (sama kuin GameState.getId).
+	 *
+	 * @return
+	 */
+	public long getId()
+	{
+		return key;
+	}
+
+	/**
+	 * Tarkistaa, uhkaako pelaaja annettua ruutua.
+	 *
+	 * @param attackingPlayer hyökkäävä pelaaja
+	 * @param sqr ruutu
+	 * @return true jos ruutu on uhattuna
+	 */
+	public boolean isSquareAttacked(int attackingPlayer, int sqr)
+	{
+		long allPieces = getPieces();
+		long sqrBit = 1L << sqr;
+		long pawnSqrs = attackingPlayer == Players.WHITE
+				? (sqrBit & ~FILE_A) << 7 | (sqrBit & ~FILE_H) << 9
+				: (sqrBit & ~FILE_H) >>> 7 | (sqrBit & ~FILE_A) >>> 9;
+		long queens = masks[Pieces.QUEEN];
+		long attackers = pawnSqrs & masks[Pieces.PAWN]
+				| Movemasks.KNIGHT_MOVES[sqr] & masks[Pieces.KNIGHT]
+				| Movemasks.KING_MOVES[sqr] & masks[Pieces.KING]
+				| Movemasks.getRookMoves(sqr, allPieces) & (masks[Pieces.ROOK] | queens)
+				| Movemasks.getBishopMoves(sqr, allPieces) & (masks[Pieces.BISHOP] | queens);
+		return (attackers & masks[PLAYER_MASKS + attackingPlayer]) != 0;
+	}
+
+	/**
+	 * Tarkistaa, onko pelaajan kuningas uhattuna.
+	 *
+	 * @param defendingPlayer puolustava pelaaja
+	 * @return true jos kuningas on uhattuna, false jos ei (tai kuningasta ei ole)
+	 */
+	public boolean isKingChecked(int defendingPlayer)
+	{
+		long king = getPieces(defendingPlayer, Pieces.KING);
+		return king != 0
+				&& isSquareAttacked(1 - defendingPlayer, Long.numberOfTrailingZeros(king));
+	}
+
+	/**
+	 * Lisää tai poistaa nappulan.
+	 *
+	 * @return nappulaa vastaava Zobrist-satunnaisnumero
+	 */
+	private long togglePiece(int player, int piece, int sqr)
+	{
+		long sqrBit = 1L << sqr;
+		masks[piece] ^= sqrBit;
+		masks[PLAYER_MASKS + player] ^= sqrBit;
+		return GameState.ZOBRIST_RND[player * Pieces.COUNT * 64 + piece * 64 + sqr];
+	}
+}
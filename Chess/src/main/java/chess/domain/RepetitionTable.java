@@ -0,0 +1,154 @@
+package chess.domain;
+
+/**
+ * Laskee, kuinka monta kertaa kukin pelitilanne (Zobrist-tunniste) on esiintynyt pelin
+ * historiassa. Hajautustaulu käyttää avointa osoitusta lineaarisella kokeilulla; poistettaessa
+ * seuraavia alkioita siirretään taaksepäin, joten taulussa ei tarvita poistomerkintöjä.
+ * Tyhjän paikan tunnistaa nollasta lukumäärästä.
+ */
+final class RepetitionTable
+{
+	/**
+	 * Tunnisteet.
+	 */
+	private long[] keys;
+
+	/**
+	 * Esiintymiskerrat (0 jos paikka on tyhjä).
+	 */
+	private int[] counts;
+
+	/**
+	 * Käytössä olevien paikkojen määrä.
+	 */
+	private int size = 0;
+
+	/**
+	 * Luo tyhjän taulun.
+	 *
+	 * @param capacity alkukapasiteetti (kahden potenssi)
+	 */
+	RepetitionTable(int capacity)
+	{
+		keys = new long[capacity];
+		counts = new int[capacity];
+	}
+
+	/**
+	 * Palauttaa tunnisteen esiintymiskertojen määrän.
+	 *
+	 * @param key Zobrist-tunniste
+	 * @return esiintymiskerrat
+	 */
+	int get(long key)
+	{
+		int mask = keys.length - 1;
+		for (int idx = hash(key) & mask; counts[idx] != 0; idx = (idx + 1) & mask) {
+			if (keys[idx] == key)
+				return counts[idx];
+		}
+		return 0;
+	}
+
+	/**
+	 * Kasvattaa tunnisteen esiintymiskertoja yhdellä.
+	 *
+	 * @param key Zobrist-tunniste
+	 * @return esiintymiskerrat lisäyksen jälkeen
+	 */
+	int increment(long key)
+	{
+		if (2 * (size + 1) > keys.length)
+			grow();
+		int mask = keys.length - 1;
+		int idx = hash(key) & mask;
+		for (; counts[idx] != 0; idx = (idx + 1) & mask) {
+			if (keys[idx] == key)
+				return ++counts[idx];
+		}
+		keys[idx] = key;
+		counts[idx] = 1;
+		++size;
+		return 1;
+	}
+
+	/**
+	 * Vähentää tunnisteen esiintymiskertoja yhdellä. Tunnisteen on oltava taulussa.
+	 *
+	 * @param key Zobrist-tunniste
+	 */
+	void decrement(long key)
+	{
+		int mask = keys.length - 1;
+		int idx = hash(key) & mask;
+		for (; keys[idx] != key || counts[idx] == 0; idx = (idx + 1) & mask) {
+			if (counts[idx] == 0)
+				throw new IllegalStateException("Position not in repetition table.");
+		}
+		if (--counts[idx] == 0) {
+			--size;
+			removeAt(idx);
+		}
+	}
+
+	@Override
+	public RepetitionTable clone()
+	{
+		RepetitionTable copy = new RepetitionTable(0);
+		copy.keys = keys.clone();
+		copy.counts = counts.clone();
+		copy.size = size;
+		return copy;
+	}
+
+	/**
+	 * Tyhjentää paikan ja siirtää sen jälkeisiä saman ketjun alkioita taaksepäin, jotta haku ei
+	 * pysähdy tyhjään paikkaan ennen niitä.
+	 */
+	private void removeAt(int idx)
+	{
+		int mask = keys.length - 1;
+		int hole = idx;
+		for (int next = (hole + 1) & mask; counts[next] != 0; next = (next + 1) & mask) {
+			int home = hash(keys[next]) & mask;
+			// Alkio voidaan siirtää aukkoon, jos sen kotipaikka ei ole aukon ja alkion välissä.
+			if (((next - home) & mask) >= ((next - hole) & mask)) {
+				keys[hole] = keys[next];
+				counts[hole] = counts[next];
+				hole = next;
+			}
+		}
+		counts[hole] = 0;
+	}
+
+	/**
+	 * Kaksinkertaistaa taulun koon.
+	 */
+	private void grow()
+	{
+		long[] oldKeys = keys;
+		int[] oldCounts = counts;
+		int capacity = Math.max(2 * keys.length, 16);
+		keys = new long[capacity];
+		counts = new int[capacity];
+		int mask = capacity - 1;
+		for (int i = 0; i < oldKeys.length; ++i) {
+			if (oldCounts[i] == 0)
+				continue;
+			int idx = hash(oldKeys[i]) & mask;
+			while (counts[idx] != 0)
+				idx = (idx + 1) & mask;
+			keys[idx] = oldKeys[i];
+			counts[idx] = oldCounts[i];
+		}
+	}
+
+	/**
+	 * Zobrist-tunnisteen alemmat bitit ovat jo satunnaisia, mutta ylemmät bitit sekoitetaan
+	 * mukaan varmuuden vuoksi.
+	 */
+	private static int hash(long key)
+	{
+		return (int) (key ^ key >>> 32);
+	}
+}
@@ -1,6 +1,7 @@
 package chess.game;
 
 import chess.domain.GameState;
+import chess.domain.GameStatus;
 import chess.domain.Players;
 import chess.util.CustomArrayList;
 import chess.util.InterruptableRunnable;
@@ -60,10 +61,10 @@ public class Game extends InterruptableRunnable
 	@Override
 	public void runImpl() throws InterruptedException
 	{
-		while (!state.isCheckMate() && !state.isStaleMate())
+		while (state.getGameStatus() == GameStatus.ONGOING)
 			getAndProcessMove();
 
-		if (state.isCheckMate())
+		if (state.getGameStatus() == GameStatus.CHECKMATE)
 			result = 1 ^ state.getNextMovingPlayer();
 
 		if (observer != null)
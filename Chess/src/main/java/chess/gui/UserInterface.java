@@ -10,7 +10,9 @@ import chess.domain.Players;
 import chess.game.Game;
 import chess.game.Observer;
 import chess.game.Player;
+import chess.testing.MoveGenerationBenchmark;
 import chess.testing.PerformanceTest;
+import chess.testing.Perft;
 import chess.testing.Simulation;
 import java.awt.BorderLayout;
 import java.awt.Container;
@@ -102,7 +104,8 @@ public class UserInterface implements Runnable, MouseListener, ActionListener, P
 	 * Valikkoelementit.
 	 */
 	private JMenuItem newGameItem, simulStartItem, stopTestItem, exitItem, perfTestItem,
-			perfTest2Item, perfTest3Item, showGameTreeItem, nextMoveItem, demo1Item, demo2Item;
+			perfTest2Item, perfTest3Item, perftItem, benchmarkItem,
+			showGameTreeItem, nextMoveItem, demo1Item, demo2Item;
 
 	private JCheckBoxMenuItem debugInfoItem, randomItem, pauseItem;
 
@@ -194,6 +197,8 @@ public class UserInterface implements Runnable, MouseListener, ActionListener, P
 		perfTestItem = createMenuItem(testMenu, "Performance test (5s)");
 		perfTest2Item = createMenuItem(testMenu, "Performance test (60s)");
 		perfTest3Item = createMenuItem(testMenu, "Performance test (60s, no QS)");
+		perftItem = createMenuItem(testMenu, "Perft from current position (depth 5)");
+		benchmarkItem = createMenuItem(testMenu, "Move generation benchmark");
 		simulStartItem = createMenuItem(testMenu, "Simulation with selected players");
 		stopTestItem = createMenuItem(testMenu, "Stop test");
 		stopTestItem.setEnabled(false);
@@ -368,6 +373,25 @@ public class UserInterface implements Runnable, MouseListener, ActionListener, P
 		startTest(new PerformanceTest(logArea, startDepth, length, qs));
 	}
 
+	/**
+	 * Perft-testi pelin tämänhetkisestä tilanteesta.
+	 */
+	private void runPerft(int depth)
+	{
+		stopTest();
+		int threads = Runtime.getRuntime().availableProcessors();
+		startTest(new Perft(logArea, game.getState(), depth, threads, 1 << 20, true));
+	}
+
+	/**
+	 * Siirtogeneraattorin mikrobenchmark.
+	 */
+	private void runBenchmark()
+	{
+		stopTest();
+		startTest(new MoveGenerationBenchmark(logArea, 2.0));
+	}
+
 	/**
 	 * Käynnistää simulaation kahden tekoälypelaajan välillä.
 	 */
@@ -444,6 +468,10 @@ public class UserInterface implements Runnable, MouseListener, ActionListener, P
 			runPerformanceTest(2, 60.0, true);
 		else if (ae.getSource() == perfTest3Item)
 			runPerformanceTest(2, 60.0, false);
+		else if (ae.getSource() == perftItem)
+			runPerft(5);
+		else if (ae.getSource() == benchmarkItem)
+			runBenchmark();
 		else if (ae.getSource() == simulStartItem)
 			runSimulation();
 		else if (ae.getSource() == stopTestItem)
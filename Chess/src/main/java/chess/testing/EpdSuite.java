@@ -0,0 +1,122 @@
+package chess.testing;
+
+import chess.domain.EpdReader;
+import chess.domain.GameState;
+import chess.util.InterruptableRunnable;
+import chess.util.Logger;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Lukee EPD-tiedoston pelitilanteet ja tarkistaa niiden perft-tulokset. Perft-suoritusten
+ * odotetut tulokset luetaan operaatioista D1, D2, ... (esim. "... w - - ;D1 14 ;D2 191").
+ * Jos suurin tarkistettava syvyys on 0, tiedosto vain luetaan, jolloin saadaan mitattua
+ * jäsentimen nopeus.
+ */
+public class EpdSuite extends InterruptableRunnable
+{
+	/**
+	 * Loggeri tulostetta varten.
+	 */
+	private final Logger logger;
+
+	/**
+	 * Luettavan tiedoston nimi.
+	 */
+	private final String fileName;
+
+	/**
+	 * Suurin tarkistettava perft-syvyys.
+	 */
+	private final int maxDepth;
+
+	/**
+	 * Luettujen pelitilanteiden määrä.
+	 */
+	private long positionCount;
+
+	/**
+	 * Epäonnistuneiden tarkistusten määrä.
+	 */
+	private long failureCount;
+
+	/**
+	 * Konstruktori.
+	 *
+	 * @param logger loki
+	 * @param fileName EPD-tiedoston nimi
+	 * @param maxDepth suurin tarkistettava perft-syvyys (0 jos vain luetaan)
+	 */
+	public EpdSuite(Logger logger, String fileName, int maxDepth)
+	{
+		this.logger = logger;
+		this.fileName = fileName;
+		this.maxDepth = maxDepth;
+	}
+
+	/**
+	 * Lukee tiedoston ja suorittaa tarkistukset.
+	 */
+	@Override
+	public void runImpl() throws InterruptedException
+	{
+		logger.logMessage(String.format("Running EPD suite %s (perft depth %d)...", fileName,
+				maxDepth));
+		positionCount = 0;
+		failureCount = 0;
+		long checkCount = 0;
+		long start = System.nanoTime();
+		try (EpdReader reader = new EpdReader(new InputStreamReader(
+				new FileInputStream(fileName), StandardCharsets.UTF_8))) {
+			while (reader.next()) {
+				++positionCount;
+				GameState state = reader.getState();
+				for (int depth = 1; depth <= maxDepth; ++depth) {
+					String expected = reader.getOperation("D" + depth);
+					if (expected == null)
+						continue;
+					++checkCount;
+					long nodes = Perft.perft(state, depth);
+					if (nodes != Long.parseLong(expected)) {
+						++failureCount;
+						logger.logMessage(String.format("  Line %d, depth %d: %d (expected %s)",
+								reader.getLineNumber(), depth, nodes, expected));
+					}
+				}
+				if (Thread.interrupted())
+					throw new InterruptedException();
+			}
+		} catch (IOException e) {
+			logger.logMessage("  Error reading file: " + e.getMessage());
+			return;
+		}
+		double t = (System.nanoTime() - start) * 1e-9;
+
+		logger.logMessage(String.format("  Positions: %d", positionCount));
+		logger.logMessage(String.format("  Checks: %d, failed: %d", checkCount, failureCount));
+		logger.logMessage(String.format("  Time: %.3fs (%.0f positions/s)", t,
+				positionCount / t));
+	}
+
+	/**
+	 * Palauttaa viimeisimmän suorituksen pelitilanteiden määrän.
+	 *
+	 * @return
+	 */
+	public long getPositionCount()
+	{
+		return positionCount;
+	}
+
+	/**
+	 * Palauttaa viimeisimmän suorituksen epäonnistuneiden tarkistusten määrän.
+	 *
+	 * @return
+	 */
+	public long getFailureCount()
+	{
+		return failureCount;
+	}
+}
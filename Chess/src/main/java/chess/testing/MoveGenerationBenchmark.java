@@ -0,0 +1,560 @@
+package chess.testing;
+
+import chess.domain.BitBoard;
+import chess.domain.GameGenerator;
+import chess.domain.GameState;
+import chess.domain.Movemasks;
+import chess.domain.PackedPosition;
+import chess.domain.Pieces;
+import chess.domain.Players;
+import chess.domain.PositionSnapshot;
+import chess.util.InterruptableRunnable;
+import chess.util.Logger;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/**
+ * Mikrobenchmark pelitilanteen perusoperaatioille. Vertailee eri toteutustapoja samoilla
+ * satunnaisilla pelitilanteilla (ks. GameGenerator), jotta optimointien vaikutus voidaan
+ * mitata erillään hakualgoritmista.
+ */
+public class MoveGenerationBenchmark extends InterruptableRunnable
+{
+	/**
+	 * Testattavien pelitilanteiden lukumäärä.
+	 */
+	private static final int POSITION_COUNT = 1000;
+
+	/**
+	 * Uhkaustarkistus käymällä läpi vastustajan nappulat.
+	 */
+	private static final int THREATS_BY_SCAN = 0;
+
+	/**
+	 * Uhkaustarkistus vastustajan uhkauskartasta.
+	 */
+	private static final int THREATS_BY_MAPS = 1;
+
+	/**
+	 * Uhkaustarkistus hakemalla hyökkääjät ruudusta käsin.
+	 */
+	private static final int THREATS_BY_SQUARE = 2;
+
+	/**
+	 * Loggeri tulostetta varten.
+	 */
+	private final Logger logger;
+
+	/**
+	 * Kunkin mittauksen pituus sekunteina.
+	 */
+	private final double length;
+
+	/**
+	 * Testattavat pelitilanteet.
+	 */
+	private GameState[] positions;
+
+	/**
+	 * Laillisten siirtojen puskuri.
+	 */
+	private final int[] moves = new int[GameState.MAX_MOVES];
+
+	/**
+	 * Puskuri pakatuille pelitilanteille.
+	 */
+	private final ByteBuffer packBuffer = ByteBuffer.allocateDirect(PackedPosition.SIZE);
+
+	/**
+	 * Kohde copy-make-mittauksen lapsitilanteille.
+	 */
+	private final PositionSnapshot childSnapshot = new PositionSnapshot();
+
+	/**
+	 * Yksi mitattava operaatio, joka suoritetaan kullekin pelitilanteelle.
+	 */
+	private abstract static class Operation
+	{
+		/**
+		 * Suorittaa operaation.
+		 *
+		 * @param state pelitilanne
+		 * @return jokin tuloksesta riippuva arvo, jotta JIT ei poista laskentaa
+		 */
+		abstract long run(GameState state);
+	}
+
+	/**
+	 * Konstruktori.
+	 *
+	 * @param logger loki
+	 * @param length kunkin mittauksen pituus sekunteina
+	 */
+	public MoveGenerationBenchmark(Logger logger, double length)
+	{
+		this.logger = logger;
+		this.length = length;
+	}
+
+	/**
+	 * Ajaa kaikki mittaukset.
+	 */
+	@Override
+	public void runImpl() throws InterruptedException
+	{
+		logger.logMessage("Running move generation benchmark...");
+		createPositions();
+		runThreatDetectionBenchmark();
+		runTerminalDetectionBenchmark();
+		runPieceLookupBenchmark();
+		runSlidingMovesBenchmark();
+		runPositionCopyBenchmark();
+		runCopyMakeBenchmark();
+		logger.logMessage("Benchmark done.");
+	}
+
+	/**
+	 * Shakki- ja tornitustarkistukset jokaisen laillisen siirron jälkeen. Vertailee vanhaa
+	 * tapaa (jokaisen vastustajan nappulan uhkaamat ruudut lasketaan erikseen) välimuistissa
+	 * pidettyihin uhkauskarttoihin ja ruudusta käsin tehtävään hyökkääjien hakuun. Pelkkien
+	 * siirtojen suorittamiseen kuluva aika mitataan erikseen vertailukohdaksi.
+	 */
+	private void runThreatDetectionBenchmark() throws InterruptedException
+	{
+		logger.logMessage("Threat detection after each legal move:");
+		measure("moves only", new Operation()
+		{
+			@Override
+			long run(GameState state)
+			{
+				int count = state.generateLegalMoves(moves);
+				for (int i = 0; i < count; ++i) {
+					state.makeMove(moves[i]);
+					state.undoMove(moves[i]);
+				}
+				return count;
+			}
+		});
+		measure("piece scan", new Operation()
+		{
+			@Override
+			long run(GameState state)
+			{
+				return runThreatQueries(state, THREATS_BY_SCAN);
+			}
+		});
+		measure("attack maps", new Operation()
+		{
+			@Override
+			long run(GameState state)
+			{
+				return runThreatQueries(state, THREATS_BY_MAPS);
+			}
+		});
+		measure("square lookup", new Operation()
+		{
+			@Override
+			long run(GameState state)
+			{
+				return runThreatQueries(state, THREATS_BY_SQUARE);
+			}
+		});
+	}
+
+	/**
+	 * Matin ja patin tunnistus: kaikkien laillisten siirtojen generointi verrattuna
+	 * ensimmäiseen löytyneeseen siirtoon pysähtyvään tarkistukseen.
+	 */
+	private void runTerminalDetectionBenchmark() throws InterruptedException
+	{
+		logger.logMessage("Terminal state detection:");
+		measure("generate all moves", new Operation()
+		{
+			@Override
+			long run(GameState state)
+			{
+				return state.generateLegalMoves(moves) != 0 ? 1 : 0;
+			}
+		});
+		measure("hasAnyLegalMove", new Operation()
+		{
+			@Override
+			long run(GameState state)
+			{
+				return state.hasAnyLegalMove() ? 1 : 0;
+			}
+		});
+	}
+
+	/**
+	 * Suorittaa jokaisen laillisen siirron ja tarkistaa sen jälkeen kummankin kuninkaan shakit
+	 * sekä kaikkien tornitusruutujen uhat.
+	 *
+	 * @param state pelitilanne
+	 * @param method tarkistustapa (THREATS_BY_SCAN, THREATS_BY_MAPS tai THREATS_BY_SQUARE)
+	 * @return uhattujen tarkistusten lukumäärä
+	 */
+	private long runThreatQueries(GameState state, int method)
+	{
+		long castlingSqrs = 0x7CL | 0x7CL << 56;
+		long result = 0;
+		int count = state.generateLegalMoves(moves);
+		for (int i = 0; i < count; ++i) {
+			state.makeMove(moves[i]);
+			for (int player = 0; player < Players.COUNT; ++player) {
+				long kingMask = state.getPieces(player, Pieces.KING);
+				if (method == THREATS_BY_SCAN) {
+					result += isThreatenedByScan(state, player, kingMask) ? 1 : 0;
+					result += isThreatenedByScan(state, player, castlingSqrs) ? 1 : 0;
+				} else if (method == THREATS_BY_MAPS) {
+					long attacks = state.getAttackedSquares(1 - player);
+					result += (attacks & kingMask) != 0 ? 1 : 0;
+					result += (attacks & castlingSqrs) != 0 ? 1 : 0;
+				} else {
+					result += state.isSquareThreatened(player, kingMask) ? 1 : 0;
+					result += state.isSquareThreatened(player, castlingSqrs) ? 1 : 0;
+				}
+			}
+			state.undoMove(moves[i]);
+		}
+		return result;
+	}
+
+	/**
+	 * Ruudun nappulatyypin haku siirtojen generoinnissa ja pelitilanteen luonnissa. Vertailee
+	 * kaikkien nappulamaskien läpikäyntiä ruutukohtaiseen taulukkoon (mailbox).
+	 */
+	private void runPieceLookupBenchmark() throws InterruptedException
+	{
+		logger.logMessage("Piece lookups in move generation:");
+		measure("mask scan", new Operation()
+		{
+			@Override
+			long run(GameState state)
+			{
+				return runMoveGenerationLookups(state, true);
+			}
+		});
+		measure("mailbox", new Operation()
+		{
+			@Override
+			long run(GameState state)
+			{
+				return runMoveGenerationLookups(state, false);
+			}
+		});
+		measure("legal move generation", new Operation()
+		{
+			@Override
+			long run(GameState state)
+			{
+				return state.generateLegalMoves(moves);
+			}
+		});
+
+		logger.logMessage("Piece lookups in board construction:");
+		measure("mask scan", new Operation()
+		{
+			@Override
+			long run(GameState state)
+			{
+				return runConstructionLookups(state.getBoard(), true);
+			}
+		});
+		measure("mailbox", new Operation()
+		{
+			@Override
+			long run(GameState state)
+			{
+				return runConstructionLookups(state.getBoard(), false);
+			}
+		});
+		measure("GameState construction", new Operation()
+		{
+			@Override
+			long run(GameState state)
+			{
+				return new GameState(state.getBoard().clone(), Players.WHITE).getId() & 0xFFFF;
+			}
+		});
+	}
+
+	/**
+	 * Liukuvien nappuloiden siirtojen haku litteällä ja vanhalla hakutaulukkoasettelulla (ks.
+	 * Movemasks). Litteä asettelu on käytössä vain, jos sitä ei ole kytketty pois
+	 * järjestelmäominaisuudella; muutoin mitataan pelkkä vanha asettelu. Asettelujen vaikutus
+	 * koko siirtogeneraattoriin nähdään ajamalla benchmark kummallakin asetuksella ja
+	 * vertaamalla laillisten siirtojen generoinnin aikoja.
+	 */
+	private void runSlidingMovesBenchmark() throws InterruptedException
+	{
+		logger.logMessage("Sliding piece attacks:");
+		if (Movemasks.FLAT_MAGICS) {
+			measure("flat magics", new Operation()
+			{
+				@Override
+				long run(GameState state)
+				{
+					return runSlidingMoveLookups(state.getBoard(), true);
+				}
+			});
+		} else {
+			logger.logMessage("  flat magics: disabled (-Dchess.magics=jagged)");
+		}
+		measure("jagged magics", new Operation()
+		{
+			@Override
+			long run(GameState state)
+			{
+				return runSlidingMoveLookups(state.getBoard(), false);
+			}
+		});
+	}
+
+	/**
+	 * Pelitilanteen kopiointi clone-metodilla verrattuna pakkaamiseen ja purkamiseen
+	 * (ks. PackedPosition).
+	 */
+	private void runPositionCopyBenchmark() throws InterruptedException
+	{
+		logger.logMessage("Position copies:");
+		measure("clone", new Operation()
+		{
+			@Override
+			long run(GameState state)
+			{
+				return state.clone().getId() & 0xFFFF;
+			}
+		});
+		measure("pack", new Operation()
+		{
+			@Override
+			long run(GameState state)
+			{
+				packBuffer.clear();
+				PackedPosition.encode(state, packBuffer);
+				return Long.bitCount(packBuffer.getLong(0));
+			}
+		});
+		measure("pack + unpack", new Operation()
+		{
+			@Override
+			long run(GameState state)
+			{
+				packBuffer.clear();
+				PackedPosition.encode(state, packBuffer);
+				packBuffer.flip();
+				return PackedPosition.decode(packBuffer).getId() & 0xFFFF;
+			}
+		});
+	}
+
+	/**
+	 * Haun sisäsilmukka: jokainen laillinen siirto tehdään, tarkistetaan onko vastustaja shakissa
+	 * ja luetaan uuden tilanteen tunniste. Vertailee GameState-olion make/unmake-tapaa
+	 * PositionSnapshot-olioiden copy-make-tapaan. Siirtojen generointi sisältyy kumpaankin.
+	 */
+	private void runCopyMakeBenchmark() throws InterruptedException
+	{
+		logger.logMessage("Search inner loop (make, check test, key):");
+		measure("make/unmake", new Operation()
+		{
+			@Override
+			long run(GameState state)
+			{
+				int player = state.getNextMovingPlayer();
+				int count = state.generateLegalMoves(moves);
+				long result = 0;
+				for (int i = 0; i < count; ++i) {
+					state.makeMove(moves[i]);
+					if (state.isKingChecked(1 - player))
+						++result;
+					result += state.getId() & 0xFF;
+					state.undoMove(moves[i]);
+				}
+				return result;
+			}
+		});
+		measure("copy-make", new Operation()
+		{
+			@Override
+			long run(GameState state)
+			{
+				int player = state.getNextMovingPlayer();
+				int count = state.generateLegalMoves(moves);
+				PositionSnapshot snapshot = new PositionSnapshot(state);
+				long result = 0;
+				for (int i = 0; i < count; ++i) {
+					PositionSnapshot child = snapshot.makeMove(moves[i], childSnapshot);
+					if (child.isKingChecked(1 - player))
+						++result;
+					result += child.getId() & 0xFF;
+				}
+				return result;
+			}
+		});
+	}
+
+	/**
+	 * Hakee kummankin pelaajan jokaisen tornin, lähetin ja kuningattaren siirrot.
+	 *
+	 * @param board lauta
+	 * @param flat käytetäänkö litteää asettelua
+	 * @return siirtojen lukumäärä
+	 */
+	private static long runSlidingMoveLookups(BitBoard board, boolean flat)
+	{
+		long occ = board.getPieces(Players.WHITE) | board.getPieces(Players.BLACK);
+		long result = 0;
+		for (int player = 0; player < Players.COUNT; ++player) {
+			long pieces = board.getPieces(player, Pieces.ROOK);
+			for (; pieces != 0; pieces -= Long.lowestOneBit(pieces)) {
+				int sqr = Long.numberOfTrailingZeros(pieces);
+				result += Long.bitCount(flat ? Movemasks.getRookMoves(sqr, occ)
+						: Movemasks.getRookMovesJagged(sqr, occ));
+			}
+			pieces = board.getPieces(player, Pieces.BISHOP);
+			for (; pieces != 0; pieces -= Long.lowestOneBit(pieces)) {
+				int sqr = Long.numberOfTrailingZeros(pieces);
+				result += Long.bitCount(flat ? Movemasks.getBishopMoves(sqr, occ)
+						: Movemasks.getBishopMovesJagged(sqr, occ));
+			}
+			pieces = board.getPieces(player, Pieces.QUEEN);
+			for (; pieces != 0; pieces -= Long.lowestOneBit(pieces)) {
+				int sqr = Long.numberOfTrailingZeros(pieces);
+				result += Long.bitCount(flat ? Movemasks.getQueenMoves(sqr, occ)
+						: Movemasks.getQueenMovesJagged(sqr, occ));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Hakee siirrettävän nappulan tyypin jokaiselle omalle nappulalle ja lyötävän nappulan
+	 * tyypin jokaiselle pseudolailliselle kohderuudulle, kuten siirtojen generoinnissa.
+	 *
+	 * @param state pelitilanne
+	 * @param scan käytetäänkö nappulamaskien läpikäyntiä
+	 * @return nappulatyyppien summa
+	 */
+	private static long runMoveGenerationLookups(GameState state, boolean scan)
+	{
+		BitBoard board = state.getBoard();
+		int player = state.getNextMovingPlayer();
+		long result = 0;
+		long pieces = board.getPieces(player);
+		for (; pieces != 0; pieces -= Long.lowestOneBit(pieces)) {
+			int fromSqr = Long.numberOfTrailingZeros(pieces);
+			int pieceType = scan ? getPieceTypeByScan(board, player, fromSqr)
+					: board.getPieceType(player, fromSqr);
+			long targets = state.getPseudoLegalMoves(player, pieceType, fromSqr);
+			for (; targets != 0; targets -= Long.lowestOneBit(targets)) {
+				int toSqr = Long.numberOfTrailingZeros(targets);
+				result += scan ? getPieceTypeByScan(board, 1 - player, toSqr)
+						: board.getPieceType(1 - player, toSqr);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Hakee nappulatyypin jokaiselle pelaaja-ruutu-yhdistelmälle, kuten GameState-konstruktori
+	 * Zobrist-tunnisteen alustuksessa.
+	 *
+	 * @param board lauta
+	 * @param scan käytetäänkö nappulamaskien läpikäyntiä
+	 * @return nappulatyyppien summa
+	 */
+	private static long runConstructionLookups(BitBoard board, boolean scan)
+	{
+		long result = 0;
+		for (int player = 0; player < Players.COUNT; ++player) {
+			for (int sqr = 0; sqr < 64; ++sqr) {
+				result += scan ? getPieceTypeByScan(board, player, sqr)
+						: board.getPieceType(player, sqr);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Nappulatyypin haku käymällä läpi kaikki nappulamaskit.
+	 */
+	private static int getPieceTypeByScan(BitBoard board, int player, int sqr)
+	{
+		for (int piece = 0; piece < Pieces.COUNT; ++piece) {
+			if (board.hasPiece(player, piece, sqr))
+				return piece;
+		}
+		return -1;
+	}
+
+	/**
+	 * Uhkatarkistus käymällä läpi jokainen hyökkäävän pelaajan nappula ja laskemalla sen
+	 * uhkaamat ruudut.
+	 */
+	private static boolean isThreatenedByScan(GameState state, int defendingPlayer, long sqrs)
+	{
+		int attackingPlayer = 1 - defendingPlayer;
+		for (int pieceType = 0; pieceType < Pieces.COUNT; ++pieceType) {
+			long pieces = state.getPieces(attackingPlayer, pieceType);
+			for (; pieces != 0; pieces -= Long.lowestOneBit(pieces)) {
+				int sqr = Long.numberOfTrailingZeros(pieces);
+				if ((state.getThreatenedSquares(attackingPlayer, pieceType, sqr) & sqrs) != 0)
+					return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Luo testattavat pelitilanteet. Sama siemenluku joka kerta, jotta tulokset ovat
+	 * vertailukelpoisia.
+	 */
+	private void createPositions()
+	{
+		Random rnd = new Random(12345);
+		positions = new GameState[POSITION_COUNT];
+		for (int i = 0; i < POSITION_COUNT; ++i)
+			positions[i] = GameGenerator.createGame(rnd.nextLong());
+	}
+
+	/**
+	 * Mittaa operaation keskimääräisen keston pelitilannetta kohden. Ennen varsinaista mittausta
+	 * operaatiota ajetaan hetken aikaa JIT-kääntäjän lämmittämiseksi. Suluissa tulostetaan
+	 * operaation tulosten summa yhden kierroksen ajalta, jonka tulee olla sama eri
+	 * toteutuksille.
+	 *
+	 * @param name operaation nimi
+	 * @param op operaatio
+	 */
+	private void measure(String name, Operation op) throws InterruptedException
+	{
+		runFor(op, length * 0.2);
+		long start = System.nanoTime();
+		long[] result = runFor(op, length);
+		double t = (System.nanoTime() - start) * 1e-9;
+		logger.logMessage(String.format("  %s: %.1f ns/position (%d)", name,
+				t * 1e9 / result[0], result[1] / (result[0] / positions.length)));
+	}
+
+	/**
+	 * Suorittaa operaatiota kaikille pelitilanteille toistuvasti annetun ajan.
+	 *
+	 * @return suoritettujen operaatioiden määrä sekä operaatioiden palauttamien arvojen summa
+	 */
+	private long[] runFor(Operation op, double seconds) throws InterruptedException
+	{
+		long end = System.nanoTime() + (long) (seconds * 1e9);
+		long count = 0;
+		long sum = 0;
+		do {
+			for (int i = 0; i < positions.length; ++i)
+				sum += op.run(positions[i]);
+			count += positions.length;
+			if (Thread.interrupted())
+				throw new InterruptedException();
+		} while (System.nanoTime() < end);
+		return new long[]{count, sum};
+	}
+}
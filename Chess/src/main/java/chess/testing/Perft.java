@@ -0,0 +1,330 @@
+package chess.testing;
+
+import chess.domain.GameState;
+import chess.domain.Move;
+import chess.util.InterruptableRunnable;
+import chess.util.Logger;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Perft-testi siirtogeneraattorin nopeuden mittaamiseksi ja oikeellisuuden tarkistamiseksi.
+ * Laskee kaikkien laillisten siirtosarjojen (pelipuun lehtisolmujen) lukumäärän annettuun
+ * syvyyteen asti.
+ *
+ * Viimeisellä tasolla siirtoja ei suoriteta, vaan lehtisolmujen määräksi otetaan suoraan
+ * laillisten siirtojen lukumäärä (bulk counting). Transponoituneiden alipuiden tulokset voidaan
+ * tallentaa hajautustauluun. Juurisiirrot voidaan jakaa usealle säikeelle ForkJoinPoolin avulla.
+ * Lisäksi kunkin juurisiirron alipuun koko voidaan tulostaa erikseen (divide).
+ */
+public class Perft extends InterruptableRunnable
+{
+	/**
+	 * Kerroin, jolla hakusyvyys sekoitetaan hajautustaulun avaimeen.
+	 */
+	private static final long DEPTH_KEY_MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+	/**
+	 * Loggeri tulostetta varten.
+	 */
+	private final Logger logger;
+
+	/**
+	 * Pelitilanne, josta laskenta aloitetaan.
+	 */
+	private final GameState state;
+
+	/**
+	 * Laskennan syvyys.
+	 */
+	private final int depth;
+
+	/**
+	 * Käytettävien säikeiden määrä.
+	 */
+	private final int threads;
+
+	/**
+	 * Tulostetaanko kunkin juurisiirron solmumäärä erikseen.
+	 */
+	private final boolean divide;
+
+	/**
+	 * Hajautustaulu transponoituneita alipuita varten tai null jos taulua ei käytetä.
+	 */
+	private final HashTable hashTable;
+
+	/**
+	 * Viimeisimmän laskennan tulos.
+	 */
+	private long nodeCount;
+
+	/**
+	 * Asetetaan todeksi, kun laskenta keskeytetään.
+	 */
+	private volatile boolean cancelled;
+
+	/**
+	 * Hajautustaulu alipuiden solmumäärille. Taulu on suorasti osoitettu ja uusi tietue korvaa
+	 * aina vanhan. Tietueita luetaan ja kirjoitetaan ilman lukitusta usean säikeen toimesta,
+	 * joten avain tallennetaan xorrattuna solmumäärän kanssa; jos toinen säie on kirjoittanut
+	 * tietueen vain osittain, avain ei täsmää ja tietue jätetään huomiotta.
+	 */
+	private static final class HashTable
+	{
+		/**
+		 * Avaimet xorrattuna solmumäärillä.
+		 */
+		private final long[] keys;
+
+		/**
+		 * Solmumäärät.
+		 */
+		private final long[] counts;
+
+		/**
+		 * Bittimaski indeksin laskemiseksi.
+		 */
+		private final int mask;
+
+		/**
+		 * Luo hajautustaulun.
+		 *
+		 * @param capacity tietueiden määrä (kahden potenssi)
+		 */
+		HashTable(int capacity)
+		{
+			keys = new long[capacity];
+			counts = new long[capacity];
+			mask = capacity - 1;
+		}
+
+		/**
+		 * Hakee avainta vastaavan solmumäärän.
+		 *
+		 * @param key avain
+		 * @return solmumäärä tai -1 jos ei löytynyt
+		 */
+		long get(long key)
+		{
+			int idx = (int) key & mask;
+			long count = counts[idx];
+			return (keys[idx] ^ count) == key ? count : -1;
+		}
+
+		/**
+		 * Tallentaa solmumäärän tauluun.
+		 *
+		 * @param key avain
+		 * @param count solmumäärä
+		 */
+		void put(long key, long count)
+		{
+			int idx = (int) key & mask;
+			counts[idx] = count;
+			keys[idx] = key ^ count;
+		}
+	}
+
+	/**
+	 * Yhden juurisiirron alipuun laskenta omassa tehtävässään.
+	 */
+	private final class RootMoveTask extends RecursiveTask<Long>
+	{
+		/**
+		 * Oma kopio pelitilanteesta, johon juurisiirto on jo tehty.
+		 */
+		private final GameState taskState;
+
+		/**
+		 * Luo tehtävän.
+		 *
+		 * @param move juurisiirto
+		 */
+		RootMoveTask(int move)
+		{
+			taskState = state.clone();
+			taskState.makeMove(move);
+		}
+
+		@Override
+		protected Long compute()
+		{
+			return count(taskState, depth - 1, new int[depth][GameState.MAX_MOVES]);
+		}
+	}
+
+	/**
+	 * Konstruktori.
+	 *
+	 * @param logger loki
+	 * @param state pelitilanne
+	 * @param depth syvyys (vähintään 1)
+	 * @param threads säikeiden määrä
+	 * @param hashSize hajautustaulun koko (kahden potenssi) tai 0 jos taulua ei käytetä
+	 * @param divide tulostetaanko juurisiirtojen solmumäärät erikseen
+	 */
+	public Perft(Logger logger, GameState state, int depth, int threads, int hashSize,
+			boolean divide)
+	{
+		if (depth < 1)
+			throw new IllegalArgumentException("Depth must be at least 1.");
+		if (hashSize != 0 && Integer.bitCount(hashSize) != 1)
+			throw new IllegalArgumentException("Hash size must be a power of two.");
+		this.logger = logger;
+		this.state = state.clone();
+		this.depth = depth;
+		this.threads = Math.max(threads, 1);
+		this.hashTable = hashSize != 0 ? new HashTable(hashSize) : null;
+		this.divide = divide;
+	}
+
+	/**
+	 * Laskee lehtisolmujen määrän ja tulostaa tuloksen sekä laskentanopeuden.
+	 */
+	@Override
+	public void runImpl() throws InterruptedException
+	{
+		logger.logMessage(String.format("Running perft (depth %d, %d threads)...", depth,
+				threads));
+
+		long start = System.nanoTime();
+		int[] moves = state.getLegalMoves();
+		long[] counts = depth == 1 ? countSingleMoves(moves.length) : countRootMoves(moves);
+		double t = (System.nanoTime() - start) * 1e-9;
+
+		nodeCount = 0;
+		for (int i = 0; i < moves.length; ++i) {
+			nodeCount += counts[i];
+			if (divide)
+				logger.logMessage(String.format("  %s: %d", Move.toString(moves[i]),
+						counts[i]));
+		}
+
+		logger.logMessage(String.format("  Nodes: %d", nodeCount));
+		logger.logMessage(String.format("  Time: %.3fs", t));
+		logger.logMessage(String.format("  Speed: %.0f nodes/s", nodeCount / t));
+	}
+
+	/**
+	 * Palauttaa viimeisimmän laskennan lehtisolmujen määrän.
+	 *
+	 * @return
+	 */
+	public long getNodeCount()
+	{
+		return nodeCount;
+	}
+
+	/**
+	 * Laskee lehtisolmujen määrän yhdessä säikeessä ilman hajautustaulua.
+	 *
+	 * @param state pelitilanne
+	 * @param depth syvyys (vähintään 1)
+	 * @return lehtisolmujen määrä
+	 */
+	public static long perft(GameState state, int depth)
+	{
+		return perft(state, depth, new int[depth + 1][GameState.MAX_MOVES]);
+	}
+
+	/**
+	 * Rekursiivinen perft ilman hajautustaulua.
+	 *
+	 * @param state pelitilanne
+	 * @param depth jäljellä oleva syvyys
+	 * @param moveBuffers siirtopuskurit kullekin syvyydelle
+	 * @return lehtisolmujen määrä
+	 */
+	private static long perft(GameState state, int depth, int[][] moveBuffers)
+	{
+		int[] moves = moveBuffers[depth];
+		int moveCount = state.generateLegalMoves(moves);
+		if (depth == 1)
+			return moveCount;
+		long count = 0;
+		for (int i = 0; i < moveCount; ++i) {
+			state.makeMove(moves[i]);
+			count += perft(state, depth - 1, moveBuffers);
+			state.undoMove(moves[i]);
+		}
+		return count;
+	}
+
+	/**
+	 * Syvyydellä 1 jokaisen juurisiirron alipuussa on täsmälleen yksi lehtisolmu.
+	 */
+	private long[] countSingleMoves(int moveCount)
+	{
+		long[] counts = new long[moveCount];
+		for (int i = 0; i < moveCount; ++i)
+			counts[i] = 1;
+		return counts;
+	}
+
+	/**
+	 * Laskee jokaisen juurisiirron alipuun koon. Juurisiirrot jaetaan ForkJoinPoolin
+	 * tehtäviksi.
+	 *
+	 * @param moves juurisiirrot
+	 * @return solmumäärät juurisiirroittain
+	 */
+	private long[] countRootMoves(int[] moves) throws InterruptedException
+	{
+		cancelled = false;
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			RootMoveTask[] tasks = new RootMoveTask[moves.length];
+			for (int i = 0; i < moves.length; ++i) {
+				tasks[i] = new RootMoveTask(moves[i]);
+				pool.submit(tasks[i]);
+			}
+
+			long[] counts = new long[moves.length];
+			for (int i = 0; i < moves.length; ++i)
+				counts[i] = tasks[i].get();
+			return counts;
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		} finally {
+			cancelled = true;
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * Laskee lehtisolmujen määrän rekursiivisesti.
+	 *
+	 * @param state pelitilanne
+	 * @param depth jäljellä oleva syvyys (vähintään 1)
+	 * @param moveBuffers siirtopuskurit kullekin syvyydelle
+	 * @return lehtisolmujen määrä
+	 */
+	private long count(GameState state, int depth, int[][] moveBuffers)
+	{
+		// Hajautustaulusta haetaan ennen siirtojen generointia, jotta osumat ovat halpoja.
+		long key = state.getId() ^ depth * DEPTH_KEY_MULTIPLIER;
+		if (depth > 1 && hashTable != null) {
+			long stored = hashTable.get(key);
+			if (stored != -1)
+				return stored;
+		}
+
+		int[] moves = moveBuffers[depth];
+		int moveCount = state.generateLegalMoves(moves);
+		if (depth == 1 || cancelled)
+			return moveCount;
+
+		long count = 0;
+		for (int i = 0; i < moveCount; ++i) {
+			state.makeMove(moves[i]);
+			count += count(state, depth - 1, moveBuffers);
+			state.undoMove(moves[i]);
+		}
+
+		if (hashTable != null && !cancelled)
+			hashTable.put(key, count);
+		return count;
+	}
+}
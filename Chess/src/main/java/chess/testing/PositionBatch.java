@@ -0,0 +1,248 @@
+package chess.testing;
+
+import chess.domain.EndgameGenerator;
+import chess.domain.Fen;
+import chess.domain.GameGenerator;
+import chess.domain.GameState;
+import chess.domain.PackedPosition;
+import chess.util.InterruptableRunnable;
+import chess.util.Logger;
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Luo suuren joukon satunnaisia pelitilanteita (ks. GameGenerator) rinnakkain ja kirjoittaa ne
+ * järjestysnumeron mukaisessa järjestyksessä. Kukin pelitilanne riippuu vain pääsiemenluvusta ja
+ * järjestysnumerostaan, joten tulos on sama säikeiden määrästä riippumatta.
+ *
+ * Pelitilanteet kirjoitetaan joko FEN-riveinä tai PackedPosition-muodossa (32 tavua kukin).
+ * Jos materiaali on annettu, tilanteet luodaan EndgameGenerator-luokalla.
+ * Tiedostoon kirjoitettaessa muoto valitaan päätteen mukaan: ".bin" tarkoittaa binäärimuotoa.
+ */
+public class PositionBatch extends InterruptableRunnable
+{
+	/**
+	 * Yhden rinnakkaisen tehtävän luomien pelitilanteiden määrä.
+	 */
+	private static final int CHUNK_SIZE = 4096;
+
+	/**
+	 * Loggeri tulostetta varten.
+	 */
+	private final Logger logger;
+
+	/**
+	 * Pääsiemenluku.
+	 */
+	private final long masterSeed;
+
+	/**
+	 * Luotavien pelitilanteiden määrä.
+	 */
+	private final long count;
+
+	/**
+	 * Säikeiden määrä.
+	 */
+	private final int threads;
+
+	/**
+	 * Kirjoitettavan tiedoston nimi.
+	 */
+	private final String fileName;
+
+	/**
+	 * Loppupelien generaattori tai null, jos tilanteet luodaan GameGenerator-luokalla.
+	 */
+	private final EndgameGenerator endgames;
+
+	/**
+	 * Peräkkäisten pelitilanteiden luonti omassa tehtävässään. Tulos on valmiiksi koodattu
+	 * tavujono.
+	 */
+	private static final class ChunkTask extends RecursiveTask<byte[]>
+	{
+		/**
+		 * Pääsiemenluku.
+		 */
+		private final long masterSeed;
+
+		/**
+		 * Ensimmäisen pelitilanteen järjestysnumero.
+		 */
+		private final long start;
+
+		/**
+		 * Viimeistä pelitilannetta seuraava järjestysnumero.
+		 */
+		private final long end;
+
+		/**
+		 * Loppupelien generaattori tai null.
+		 */
+		private final EndgameGenerator endgames;
+
+		/**
+		 * Kirjoitetaanko binäärimuodossa.
+		 */
+		private final boolean binary;
+
+		/**
+		 * Luo tehtävän.
+		 */
+		ChunkTask(long masterSeed, long start, long end, EndgameGenerator endgames,
+				boolean binary)
+		{
+			this.masterSeed = masterSeed;
+			this.start = start;
+			this.end = end;
+			this.endgames = endgames;
+			this.binary = binary;
+		}
+
+		@Override
+		protected byte[] compute()
+		{
+			if (binary) {
+				ByteBuffer buf = ByteBuffer.allocate((int) (end - start) * PackedPosition.SIZE);
+				for (long i = start; i < end; ++i)
+					PackedPosition.encode(createGame(i), buf);
+				return buf.array();
+			}
+			StringBuilder sb = new StringBuilder((int) (end - start) * 64);
+			for (long i = start; i < end; ++i)
+				sb.append(Fen.toString(createGame(i))).append('\n');
+			return sb.toString().getBytes(StandardCharsets.UTF_8);
+		}
+
+		/**
+		 * Luo järjestysnumeroa vastaavan pelitilanteen.
+		 */
+		private GameState createGame(long index)
+		{
+			return endgames != null ? endgames.createGame(masterSeed, index)
+					: GameGenerator.createGame(masterSeed, index);
+		}
+	}
+
+	/**
+	 * Konstruktori.
+	 *
+	 * @param logger loki
+	 * @param masterSeed pääsiemenluku
+	 * @param count luotavien pelitilanteiden määrä
+	 * @param threads säikeiden määrä
+	 * @param fileName kirjoitettavan tiedoston nimi
+	 */
+	public PositionBatch(Logger logger, long masterSeed, long count, int threads,
+			String fileName)
+	{
+		this(logger, masterSeed, count, threads, fileName, null);
+	}
+
+	/**
+	 * Konstruktori, jolla tilanteet luodaan annetulla loppupelien generaattorilla.
+	 *
+	 * @param logger loki
+	 * @param masterSeed pääsiemenluku
+	 * @param count luotavien pelitilanteiden määrä
+	 * @param threads säikeiden määrä
+	 * @param fileName kirjoitettavan tiedoston nimi
+	 * @param endgames loppupelien generaattori tai null
+	 */
+	public PositionBatch(Logger logger, long masterSeed, long count, int threads,
+			String fileName, EndgameGenerator endgames)
+	{
+		if (count < 0)
+			throw new IllegalArgumentException("Position count must not be negative.");
+		this.logger = logger;
+		this.masterSeed = masterSeed;
+		this.count = count;
+		this.threads = Math.max(threads, 1);
+		this.fileName = fileName;
+		this.endgames = endgames;
+	}
+
+	/**
+	 * Luo pelitilanteet ja kirjoittaa ne tiedostoon.
+	 */
+	@Override
+	public void runImpl() throws InterruptedException
+	{
+		logger.logMessage(String.format("Generating %d %spositions to %s (seed %d, %d threads)...",
+				count, endgames != null ? endgames.getSignature() + " " : "", fileName, masterSeed,
+				threads));
+		long start = System.nanoTime();
+		try (OutputStream out = new BufferedOutputStream(new FileOutputStream(fileName),
+				1 << 16)) {
+			write(masterSeed, count, endgames, fileName.endsWith(".bin"), threads, out);
+		} catch (IOException e) {
+			logger.logMessage("  Error writing file: " + e.getMessage());
+			return;
+		}
+		double t = (System.nanoTime() - start) * 1e-9;
+		logger.logMessage(String.format("  Time: %.3fs (%.0f positions/s)", t, count / t));
+	}
+
+	/**
+	 * Luo pelitilanteet järjestysnumeroilla 0..count-1 ja kirjoittaa ne virtaan
+	 * järjestysnumeron mukaisessa järjestyksessä. Virtaa ei suljeta.
+	 *
+	 * @param masterSeed pääsiemenluku
+	 * @param count luotavien pelitilanteiden määrä
+	 * @param binary kirjoitetaanko PackedPosition-muodossa (muuten FEN-riveinä)
+	 * @param threads säikeiden määrä
+	 * @param out virta
+	 */
+	public static void write(long masterSeed, long count, boolean binary, int threads,
+			OutputStream out) throws IOException, InterruptedException
+	{
+		write(masterSeed, count, null, binary, threads, out);
+	}
+
+	/**
+	 * Luo pelitilanteet järjestysnumeroilla 0..count-1 annetulla loppupelien generaattorilla
+	 * ja kirjoittaa ne virtaan järjestysnumeron mukaisessa järjestyksessä. Virtaa ei suljeta.
+	 *
+	 * @param masterSeed pääsiemenluku
+	 * @param count luotavien pelitilanteiden määrä
+	 * @param endgames loppupelien generaattori tai null (GameGenerator)
+	 * @param binary kirjoitetaanko PackedPosition-muodossa (muuten FEN-riveinä)
+	 * @param threads säikeiden määrä
+	 * @param out virta
+	 */
+	public static void write(long masterSeed, long count, EndgameGenerator endgames,
+			boolean binary, int threads, OutputStream out) throws IOException, InterruptedException
+	{
+		threads = Math.max(threads, 1);
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			// Tehtäviä pidetään käynnissä vain rajallinen määrä kerrallaan, jotta muistinkulutus
+			// ei riipu pelitilanteiden määrästä.
+			ArrayDeque<ChunkTask> pending = new ArrayDeque<>();
+			long next = 0;
+			while (next < count || !pending.isEmpty()) {
+				while (next < count && pending.size() < 2 * threads) {
+					long end = Math.min(count, next + CHUNK_SIZE);
+					ChunkTask task = new ChunkTask(masterSeed, next, end, endgames, binary);
+					pool.execute(task);
+					pending.add(task);
+					next = end;
+				}
+				out.write(pending.poll().get());
+			}
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+}
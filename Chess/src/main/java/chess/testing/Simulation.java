@@ -55,13 +55,14 @@ public class Simulation extends InterruptableRunnable
 		logger.logMessage("[Score (AvgScore\u00b1Error)]");
 
 		Random rnd = new Random();
+		int threads = Runtime.getRuntime().availableProcessors();
 		double sum = 0; // Pisteiden summa
 		double sqrSum = 0; // Pisteiden neliöiden summa
 		int count = 0;
 		long start = System.nanoTime();
 
 		do {
-			GameState state = BalancedGameGenerator.createGame(rnd.nextLong(), 1.0);
+			GameState state = BalancedGameGenerator.createGame(rnd.nextLong(), 1.0, threads);
 			int score = runGame(state.clone(), players[0], players[1]);
 			score -= runGame(state.clone(), players[1], players[0]);
 
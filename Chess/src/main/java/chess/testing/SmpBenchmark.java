@@ -0,0 +1,144 @@
+package chess.testing;
+
+import chess.ai.MinMaxAI;
+import chess.domain.GameGenerator;
+import chess.domain.GameState;
+import chess.util.InterruptableRunnable;
+import chess.util.Logger;
+
+/**
+ * Rinnakkaishaun skaalautuvuustesti. Laskee samoihin satunnaisiin pelitilanteisiin siirrot
+ * kiinteään syvyyteen eri säiemäärillä kummallakin rinnakkaishaun menetelmällä (Lazy SMP ja
+ * ABDADA) ja tulostaa kokonaisajan (time-to-depth), kaikkien säikeiden analysoimien solmujen
+ * määrän sekä nopeutuksen yhteen säikeeseen verrattuna.
+ */
+public class SmpBenchmark extends InterruptableRunnable
+{
+	/**
+	 * Pelitilanteiden pääsiemenluku.
+	 */
+	private static final long SEED = 12345;
+
+	/**
+	 * Vertailtavat rinnakkaishaun menetelmät.
+	 */
+	private static final int[] ALGORITHMS = {MinMaxAI.LAZY_SMP, MinMaxAI.ABDADA};
+
+	/**
+	 * Menetelmien nimet tulostusta varten.
+	 */
+	private static final String[] ALGORITHM_NAMES = {"Lazy SMP", "ABDADA"};
+
+	/**
+	 * Loggeri tulostetta varten.
+	 */
+	private final Logger logger;
+
+	/**
+	 * Hakusyvyys.
+	 */
+	private final int depth;
+
+	/**
+	 * Suurin testattava säiemäärä.
+	 */
+	private final int maxThreads;
+
+	/**
+	 * Pelitilanteiden määrä.
+	 */
+	private final int positions;
+
+	/**
+	 * Testissä käytettävä tekoäly. Sama olio kierrätetään kaikissa ajoissa.
+	 */
+	private MinMaxAI ai;
+
+	/**
+	 * Konstruktori.
+	 *
+	 * @param logger loki
+	 * @param depth hakusyvyys
+	 * @param maxThreads suurin testattava säiemäärä
+	 * @param positions pelitilanteiden määrä
+	 */
+	public SmpBenchmark(Logger logger, int depth, int maxThreads, int positions)
+	{
+		this.logger = logger;
+		this.depth = depth;
+		this.maxThreads = Math.max(maxThreads, 1);
+		this.positions = positions;
+	}
+
+	/**
+	 * Ajaa testin yhdellä säikeellä ja kummallakin menetelmällä säiemäärillä 2, 4, ... ja
+	 * maxThreads. Yhden säikeen testi ajetaan ensin kertaalleen ilman tulostusta, jotta
+	 * JIT-käännös ei vääristä vertailua.
+	 */
+	@Override
+	public void runImpl() throws InterruptedException
+	{
+		logger.logMessage(String.format("Running SMP benchmark (depth %d, %d positions)...",
+				depth, positions));
+
+		ai = new MinMaxAI(null, depth, 30, 0.0, 0);
+		try {
+			runPositions(1, MinMaxAI.LAZY_SMP);
+			double singleThreadTime = runAndPrint(1, MinMaxAI.LAZY_SMP, 0);
+			for (int i = 0; i < ALGORITHMS.length; ++i) {
+				logger.logMessage(ALGORITHM_NAMES[i] + ":");
+				for (int threads = 2; threads <= maxThreads; threads *= 2)
+					runAndPrint(threads, ALGORITHMS[i], singleThreadTime);
+				if (Integer.bitCount(maxThreads) != 1 && maxThreads > 2)
+					runAndPrint(maxThreads, ALGORITHMS[i], singleThreadTime);
+			}
+		} finally {
+			ai.shutdown();
+			ai = null;
+		}
+	}
+
+	/**
+	 * Laskee siirrot kaikkiin pelitilanteisiin ja tulostaa tulokset.
+	 *
+	 * @param threads säikeiden määrä
+	 * @param algorithm rinnakkaishaun menetelmä
+	 * @param singleThreadTime yhden säikeen kokonaisaika tai 0, jos tämä on yhden säikeen testi
+	 * @return kokonaisaika sekunteina
+	 */
+	private double runAndPrint(int threads, int algorithm, double singleThreadTime)
+			throws InterruptedException
+	{
+		long start = System.nanoTime();
+		long nodes = runPositions(threads, algorithm);
+		double t = (System.nanoTime() - start) * 1e-9;
+		if (singleThreadTime == 0)
+			singleThreadTime = t;
+
+		logger.logMessage(String.format("Threads: %d", threads));
+		logger.logMessage(String.format("  Time to depth: %.3fs", t));
+		logger.logMessage(String.format("  Nodes: %d (%.0f nodes/s)", nodes, nodes / t));
+		logger.logMessage(String.format("  Speedup: %.2f", singleThreadTime / t));
+		return t;
+	}
+
+	/**
+	 * Laskee siirrot kaikkiin pelitilanteisiin.
+	 *
+	 * @param threads säikeiden määrä
+	 * @param algorithm rinnakkaishaun menetelmä
+	 * @return kaikkien säikeiden analysoimien solmujen määrä
+	 */
+	private long runPositions(int threads, int algorithm) throws InterruptedException
+	{
+		ai.setThreadCount(threads);
+		ai.setParallelAlgorithm(algorithm);
+		long nodes = 0;
+		for (int i = 0; i < positions; ++i) {
+			GameState state = GameGenerator.createGame(SEED, i);
+			ai.getMove(state);
+			nodes += ai.getTotalNodeCount();
+		}
+		return nodes;
+	}
+}
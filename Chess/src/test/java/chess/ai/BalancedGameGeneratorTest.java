@@ -1,5 +1,6 @@
 package chess.ai;
 
+import chess.domain.GameGenerator;
 import chess.domain.GameState;
 import chess.domain.Pieces;
 import static org.junit.Assert.*;
@@ -26,4 +27,28 @@ public class BalancedGameGeneratorTest
 		int score = testAI.getSearchTree().score;
 		assertTrue(Math.abs(score) < 2.0 * Scores.PIECE_VALUES[Pieces.PAWN]);
 	}
+
+	@Test
+	public void sameSeedGivesSameGame() throws InterruptedException
+	{
+		long id = BalancedGameGenerator.createGame(77, 1.0).getId();
+		assertEquals(id, BalancedGameGenerator.createGame(77, 1.0).getId());
+		assertEquals(id, BalancedGameGenerator.createGame(77, 1.0, 3).getId());
+	}
+
+	@Test
+	public void checkPositionIsNotRejectedByQuiescenceScore() throws InterruptedException
+	{
+		// Vuorossa oleva pelaaja on shakissa. Quiescence-haun pistemäärä ylittää marginaalin, mutta
+		// varsinainen haku pitää tilannetta tasapuolisena.
+		GameState state = GameGenerator.createGame(41, 1727);
+		MinMaxAI searcher = new MinMaxAI(null, 5, 30, 0.0, 0);
+		int limit = Scores.PIECE_VALUES[Pieces.PAWN];
+		assertTrue(state.isKingChecked(state.getNextMovingPlayer()));
+		assertTrue(Math.abs(searcher.getQuiescenceScore(state))
+				>= limit + BalancedGameGenerator.QUIESCENCE_MARGIN);
+		searcher.getMove(state);
+		assertTrue(Math.abs(searcher.getSearchTree().score) < limit);
+		assertTrue(BalancedGameGenerator.isBalanced(searcher, state, 1.0));
+	}
 }
@@ -1,5 +1,6 @@
 package chess.ai;
 
+import chess.domain.GameGenerator;
 import chess.domain.GameState;
 import chess.domain.Move;
 import chess.domain.Players;
@@ -233,4 +234,73 @@ public class MinMaxAITest
 		} catch (IllegalArgumentException e) {
 		}
 	}
+
+	@Test
+	public void multiThreadedSearchFindsSameMate() throws InterruptedException
+	{
+		ai = new MinMaxAI(null, 5, 30, 0, 0);
+		ai.setThreadCount(3);
+		for (int i = 0; i < 3; ++i) {
+			GameState s = new GameState("Ke2 Rb4 Rd7", "Kf8", Players.WHITE);
+			assertEquals("Rb4-b8", Move.toString(ai.getMove(s)));
+			assertTrue(ai.getTotalNodeCount() >= ai.getNodeCount());
+		}
+	}
+
+	@Test
+	public void canBeUsedAfterShutdown() throws InterruptedException
+	{
+		ai = new MinMaxAI(null, 5, 30, 0, 0);
+		ai.setThreadCount(3);
+		GameState s = new GameState("Ke2 Rb4 Rd7", "Kf8", Players.WHITE);
+		assertEquals("Rb4-b8", Move.toString(ai.getMove(s)));
+		ai.shutdown();
+		assertEquals("Rb4-b8", Move.toString(ai.getMove(s)));
+	}
+
+	@Test
+	public void smallTranspositionTableFindsSameMate() throws InterruptedException
+	{
+		ai = new MinMaxAI(null, 5, 30, 0, 0);
+		ai.setTranspositionTableSize(2);
+		ai.setThreadCount(2);
+		GameState s = new GameState("Ke2 Rb4 Rd7", "Kf8", Players.WHITE);
+		assertEquals("Rb4-b8", Move.toString(ai.getMove(s)));
+		try {
+			ai.setTranspositionTableSize(1000);
+			fail("IllegalArgumentException not thrown");
+		} catch (IllegalArgumentException e) {
+		}
+	}
+
+	@Test
+	public void abdadaSearchFindsSameMate() throws InterruptedException
+	{
+		ai = new MinMaxAI(null, 5, 30, 0, 0);
+		ai.setParallelAlgorithm(MinMaxAI.ABDADA);
+		ai.setThreadCount(3);
+		for (int i = 0; i < 3; ++i) {
+			GameState s = new GameState("Ke2 Rb4 Rd7", "Kf8", Players.WHITE);
+			assertEquals("Rb4-b8", Move.toString(ai.getMove(s)));
+		}
+	}
+
+	@Test
+	public void parallelAlgorithmsChooseLegalMoves() throws InterruptedException
+	{
+		int[] algorithms = {MinMaxAI.LAZY_SMP, MinMaxAI.ABDADA};
+		for (int algorithm : algorithms) {
+			ai = new MinMaxAI(null, 4, 30, 0, 0);
+			ai.setThreadCount(4);
+			ai.setParallelAlgorithm(algorithm);
+			for (int i = 0; i < 10; ++i) {
+				GameState s = GameGenerator.createGame(77, i);
+				int move = ai.getMove(s);
+				boolean legal = false;
+				for (int legalMove : s.getLegalMoves())
+					legal |= legalMove == move;
+				assertTrue(legal);
+			}
+		}
+	}
 }
@@ -1,8 +1,11 @@
 package chess.ai;
 
+import chess.domain.GameGenerator;
 import chess.domain.GameState;
 import chess.domain.Move;
+import chess.domain.Pieces;
 import chess.domain.Players;
+import java.util.Random;
 import static org.junit.Assert.*;
 import org.junit.Before;
 import org.junit.Test;
@@ -61,7 +64,22 @@ public class MoveListTest
 	{
 		assertEquals(1, find("c5xQb6"));
 		assertEquals(5, find("Qf4xRe3"));
-		assertEquals(9, find("Kh7xh6"));
+	}
+
+	@Test
+	public void losingCapturesHaveLowestPriority()
+	{
+		assertEquals(MoveList.LOSING_CAPTURE_PRIORITY, find("Kh7xh6"));
+	}
+
+	@Test
+	public void losingCapturesAreExcludedFromCaptureList()
+	{
+		GameState state = new GameState("Kh1 Qd4", "Ka8 e5 f6", Players.WHITE);
+		list.populate(state, true);
+		assertEquals(-1, find("Qd4xe5"));
+		list.populate(state, false);
+		assertEquals(MoveList.LOSING_CAPTURE_PRIORITY, find("Qd4xe5"));
 	}
 
 	@Test
@@ -132,4 +150,44 @@ public class MoveListTest
 		for (int pri = 0; pri < MoveList.PRIORITIES; ++pri)
 			assertEquals(pri == 10 ? 2 : 0, list.getCount(pri));
 	}
+
+	@Test
+	public void containsAllPseudoLegalMoves()
+	{
+		Random rnd = new Random(5);
+		for (int n = 0; n < 300; ++n) {
+			GameState state = GameGenerator.createGame(rnd.nextLong());
+			list.populate(state, false);
+			int count = 0;
+			for (int pri = 0; pri < MoveList.PRIORITIES; ++pri)
+				count += list.getCount(pri);
+			int expected = 0;
+			int player = state.getNextMovingPlayer();
+			for (int sqr = 0; sqr < 64; ++sqr) {
+				long moves = state.getPseudoLegalMoves(player, sqr);
+				for (; moves != 0; moves -= Long.lowestOneBit(moves)) {
+					int toSqr = Long.numberOfTrailingZeros(moves);
+					int move = state.expandMove(sqr | toSqr << 6);
+					boolean promotion = Move.getPieceType(move) == Pieces.PAWN
+							&& (toSqr < 8 || toSqr >= 56);
+					if (promotion)
+						move = state.expandMove(sqr | toSqr << 6 | Pieces.QUEEN << 12);
+					assertTrue(Move.toString(move), findMove(move));
+					expected += promotion ? 4 : 1;
+				}
+			}
+			assertEquals(expected, count);
+		}
+	}
+
+	private boolean findMove(int move)
+	{
+		for (int pri = 0; pri < MoveList.PRIORITIES; ++pri) {
+			for (int i = 0; i < list.getCount(pri); ++i) {
+				if (list.getMove(pri, i) == move)
+					return true;
+			}
+		}
+		return false;
+	}
 }
@@ -0,0 +1,90 @@
+package chess.ai;
+
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SharedTranspositionTableTest
+{
+	private SharedTranspositionTable tt;
+
+	private static final long state1 = 1234567890123456789L;
+
+	private static final long state2 = 876543210987654321L;
+
+	@Before
+	public void setUp()
+	{
+		tt = new SharedTranspositionTable(8);
+	}
+
+	private static StateInfo createInfo(long state, int depth, int score)
+	{
+		StateInfo info = new StateInfo(state);
+		info.depth = depth;
+		info.score = score;
+		info.nodeType = StateInfo.NODE_TYPE_LOWER_BOUND;
+		info.bestMove = (short) 0xABCD;
+		return info;
+	}
+
+	@Test
+	public void getReturnsStoredFields()
+	{
+		tt.put(createInfo(state1, 7, -123456));
+		StateInfo info = tt.get(state1);
+		assertEquals(state1, info.state);
+		assertEquals(7, info.depth);
+		assertEquals(-123456, info.score);
+		assertEquals(StateInfo.NODE_TYPE_LOWER_BOUND, info.nodeType);
+		assertEquals((short) 0xABCD, info.bestMove);
+		assertNull(tt.get(state2));
+	}
+
+	@Test
+	public void clearHidesOldEntries()
+	{
+		for (int i = 0; i < 100; ++i) {
+			tt.put(createInfo(state1, 3, i));
+			assertEquals(i, tt.get(state1).score);
+			tt.clear();
+			assertNull(tt.get(state1));
+		}
+	}
+
+	@Test
+	public void deeperEntryIsNotReplacedByShallowerOne()
+	{
+		// Kaikki avaimet osuvat samaan ämpäriin.
+		tt.put(createInfo(0x10, 9, 1));
+		tt.put(createInfo(0x20, 2, 2));
+		tt.put(createInfo(0x30, 3, 3));
+		assertEquals(1, tt.get(0x10).score);
+		assertNull(tt.get(0x20));
+		assertEquals(3, tt.get(0x30).score);
+		tt.put(createInfo(0x40, 9, 4));
+		assertNull(tt.get(0x10));
+		assertEquals(4, tt.get(0x40).score);
+	}
+
+	@Test
+	public void searchMarks()
+	{
+		tt.enableSearchMarks();
+		assertFalse(tt.isSearching(state1));
+		tt.markSearching(state1);
+		assertTrue(tt.isSearching(state1));
+		assertFalse(tt.isSearching(state2));
+		// Samaan paikkaan osuva merkintä korvaa vanhan, eikä vanhan poisto poista uutta.
+		long other = state1 + (1L << 40);
+		tt.markSearching(other);
+		assertFalse(tt.isSearching(state1));
+		tt.unmarkSearching(state1);
+		assertTrue(tt.isSearching(other));
+		tt.unmarkSearching(other);
+		assertFalse(tt.isSearching(other));
+		tt.markSearching(state2);
+		tt.clear();
+		assertFalse(tt.isSearching(state2));
+	}
+}
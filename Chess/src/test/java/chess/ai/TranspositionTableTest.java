@@ -46,6 +46,28 @@ public class TranspositionTableTest
 		assertSame(info, tt.get(state1));
 	}
 
+	@Test
+	public void verifiedGetReturnsEntryWithMatchingKey()
+	{
+		StateInfo info = new StateInfo(state1, 42);
+		tt.put(info);
+		assertSame(info, tt.get(state1, 42));
+		assertEquals(1, tt.getVerifiedHitCount());
+		assertEquals(0, tt.getCollisionCount());
+	}
+
+	@Test
+	public void verifiedGetDetectsCollision()
+	{
+		tt.put(new StateInfo(state1, 42));
+		assertNull(tt.get(state1, 43));
+		assertNull(tt.get(state2, 43));
+		assertEquals(1, tt.getVerifiedHitCount());
+		assertEquals(1, tt.getCollisionCount());
+		tt.clear();
+		assertEquals(1, tt.getCollisionCount());
+	}
+
 	@Test
 	public void insertingIncreasesSize()
 	{
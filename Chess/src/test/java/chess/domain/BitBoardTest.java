@@ -106,6 +106,42 @@ public class BitBoardTest
 		assertEquals(-1, bb.getPlayer(26));
 	}
 
+	@Test
+	public void testGetPieceType()
+	{
+		bb.addPiece(Players.WHITE, Pieces.QUEEN, 40);
+		bb.addPiece(Players.BLACK, Pieces.KNIGHT, 27);
+		assertEquals(Pieces.QUEEN, bb.getPieceType(40));
+		assertEquals(Pieces.QUEEN, bb.getPieceType(Players.WHITE, 40));
+		assertEquals(-1, bb.getPieceType(Players.BLACK, 40));
+		assertEquals(Pieces.KNIGHT, bb.getPieceType(Players.BLACK, 27));
+		assertEquals(-1, bb.getPieceType(26));
+	}
+
+	@Test
+	public void pieceTypeIsUpdatedAfterRemoveAndClear()
+	{
+		bb.addPiece(Players.BLACK, Pieces.KNIGHT, 27);
+		bb.addPiece(Players.WHITE, Pieces.PAWN, 25);
+		bb.removePiece(Players.BLACK, Pieces.KNIGHT, 27);
+		assertEquals(-1, bb.getPieceType(27));
+		assertEquals(-1, bb.getPlayer(27));
+		assertEquals(Pieces.PAWN, bb.getPieceType(Players.WHITE, 25));
+		bb.clear();
+		assertEquals(-1, bb.getPieceType(25));
+		assertEquals(-1, bb.getPlayer(25));
+	}
+
+	@Test
+	public void cloneCopiesPieceTypes()
+	{
+		bb.addPiece(Players.BLACK, Pieces.BISHOP, 63);
+		BitBoard bb2 = bb.clone();
+		bb.removePiece(Players.BLACK, Pieces.BISHOP, 63);
+		assertEquals(Pieces.BISHOP, bb2.getPieceType(Players.BLACK, 63));
+		assertEquals(-1, bb.getPieceType(63));
+	}
+
 	@Test
 	public void testClone()
 	{
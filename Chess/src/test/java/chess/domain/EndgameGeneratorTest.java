@@ -0,0 +1,72 @@
+package chess.domain;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class EndgameGeneratorTest
+{
+	@Test
+	public void positionsHaveGivenMaterial()
+	{
+		EndgameGenerator gen = new EndgameGenerator("KRPvKR");
+		for (int i = 0; i < 1000; ++i) {
+			GameState s = gen.createGame(5, i);
+			BitBoard board = s.getBoard();
+			assertEquals(5, Long.bitCount(board.getPieces()));
+			assertEquals(1, Long.bitCount(board.getPieces(Players.WHITE, Pieces.KING)));
+			assertEquals(1, Long.bitCount(board.getPieces(Players.WHITE, Pieces.ROOK)));
+			assertEquals(1, Long.bitCount(board.getPieces(Players.WHITE, Pieces.PAWN)));
+			assertEquals(1, Long.bitCount(board.getPieces(Players.BLACK, Pieces.KING)));
+			assertEquals(1, Long.bitCount(board.getPieces(Players.BLACK, Pieces.ROOK)));
+			assertEquals(0, board.getPieces(Players.WHITE, Pieces.PAWN) & 0xFF000000000000FFL);
+			assertEquals(0, s.getCastlingRights());
+			assertEquals(-1, s.getEnPassantSquare());
+		}
+	}
+
+	@Test
+	public void kingsAreNotInCheck()
+	{
+		EndgameGenerator gen = new EndgameGenerator("KQvKNN");
+		int whiteToMove = 0;
+		for (int i = 0; i < 2000; ++i) {
+			GameState s = gen.createGame(11, i);
+			assertFalse(s.isKingChecked(Players.WHITE));
+			assertFalse(s.isKingChecked(Players.BLACK));
+			if (s.getNextMovingPlayer() == Players.WHITE)
+				++whiteToMove;
+		}
+		assertTrue(whiteToMove > 800 && whiteToMove < 1200);
+	}
+
+	@Test
+	public void kingsCoverWholeBoard()
+	{
+		EndgameGenerator gen = new EndgameGenerator("KvK");
+		long whiteKings = 0;
+		for (int i = 0; i < 5000; ++i)
+			whiteKings |= gen.createGame(2, i).getBoard().getPieces(Players.WHITE, Pieces.KING);
+		assertEquals(-1L, whiteKings);
+	}
+
+	@Test
+	public void sameSeedGivesSamePosition()
+	{
+		EndgameGenerator gen = new EndgameGenerator("KBNvK");
+		assertEquals(gen.createGame(3, 17).getId(), gen.createGame(3, 17).getId());
+		assertFalse(gen.createGame(3, 17).getId() == gen.createGame(3, 18).getId());
+	}
+
+	@Test
+	public void invalidSignaturesAreRejected()
+	{
+		String[] signatures = {"KRvKvK", "KRK", "KRvR", "KKvK", "KXvK", "vK", ""};
+		for (String signature : signatures) {
+			try {
+				new EndgameGenerator(signature);
+				fail(signature);
+			} catch (IllegalArgumentException e) {
+			}
+		}
+	}
+}
@@ -0,0 +1,63 @@
+package chess.domain;
+
+import java.io.IOException;
+import java.io.StringReader;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class EpdReaderTest
+{
+	private static EpdReader reader(String s)
+	{
+		return new EpdReader(new StringReader(s));
+	}
+
+	@Test
+	public void readsPositionsAndOperations() throws IOException
+	{
+		EpdReader r = reader("rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq e3 bm e5; "
+				+ "id \"test; 1\";\n"
+				+ "\n"
+				+ "# comment\n"
+				+ "4k3/8/8/8/8/8/8/4K3 w - - hmvc 4; fmvn 20;\n");
+		assertTrue(r.next());
+		assertEquals(1, r.getLineNumber());
+		assertEquals(44, r.getState().getEnPassantSquare());
+		assertEquals("e5", r.getOperation("bm"));
+		assertEquals("test; 1", r.getOperation("id"));
+		assertEquals(2, r.getOperations().size());
+
+		assertTrue(r.next());
+		assertEquals(4, r.getLineNumber());
+		assertEquals(4, r.getState().getHalfMoveClock());
+		assertEquals(20, r.getState().getFullMoveNumber());
+		assertNull(r.getOperation("bm"));
+
+		assertFalse(r.next());
+		assertNull(r.getState());
+	}
+
+	@Test
+	public void acceptsFullFenWithPerftOperations() throws IOException
+	{
+		EpdReader r = reader("8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 5 30;D1 14 ;D2 191\n");
+		assertTrue(r.next());
+		assertEquals(5, r.getState().getHalfMoveClock());
+		assertEquals(30, r.getState().getFullMoveNumber());
+		assertEquals("14", r.getOperation("D1"));
+		assertEquals("191", r.getOperation("D2"));
+	}
+
+	@Test
+	public void invalidLineReportsLineNumber() throws IOException
+	{
+		EpdReader r = reader("4k3/8/8/8/8/8/8/4K3 w - -\n4k3/8/8 w - -\n");
+		assertTrue(r.next());
+		try {
+			r.next();
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertTrue(e.getMessage().startsWith("Line 2:"));
+		}
+	}
+}
@@ -0,0 +1,123 @@
+package chess.domain;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class FenTest
+{
+	@Test
+	public void initialPositionMatchesDefaultState()
+	{
+		GameState s = Fen.parse(Fen.INITIAL_POSITION);
+		GameState s2 = new GameState();
+		assertTrue(s.equals(s2));
+		assertEquals(s2.getId(), s.getId());
+		assertEquals(Fen.INITIAL_POSITION, Fen.toString(s2));
+	}
+
+	@Test
+	public void roundTripKeepsAllFields()
+	{
+		String fen = "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R b Kq e3 7 42";
+		assertEquals(fen, Fen.toString(Fen.parse(fen)));
+	}
+
+	@Test
+	public void parsesStateFields()
+	{
+		GameState s = Fen.parse("4k3/8/8/8/3pP3/8/8/R3K2R b KQ e3 3 12");
+		assertEquals(Players.BLACK, s.getNextMovingPlayer());
+		assertEquals(44, s.getEnPassantSquare());
+		assertEquals(1L << 56 | 1L << 63, s.getCastlingRights());
+		assertEquals(3, s.getHalfMoveClock());
+		assertEquals(12, s.getFullMoveNumber());
+		assertEquals(Pieces.PAWN, s.getBoard().getPieceType(Players.WHITE, 36));
+		assertEquals(Pieces.PAWN, s.getBoard().getPieceType(Players.BLACK, 35));
+	}
+
+	@Test
+	public void stateMatchesPositionReachedByMoves()
+	{
+		GameState s = new GameState();
+		s.makeMove(Move.fromString("e2-e4"));
+		GameState s2 = Fen.parse("rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq e3 0 1");
+		assertTrue(s.equals(s2));
+		assertEquals(s.getId(), s2.getId());
+		assertEquals(Fen.toString(s), Fen.toString(s2));
+	}
+
+	@Test
+	public void fullMoveNumberIncreasesAfterBlackMove()
+	{
+		GameState s = Fen.parse("4k3/8/8/8/8/8/8/4K3 b - - 0 5");
+		s.makeMove(Move.fromString("Ke8-e7"));
+		assertEquals(6, s.getFullMoveNumber());
+		s.makeMove(Move.fromString("Ke1-e2"));
+		assertEquals(6, s.getFullMoveNumber());
+	}
+
+	@Test
+	public void fourFieldsUseDefaultCounters()
+	{
+		GameState s = Fen.parse("4k3/8/8/8/8/8/8/4K3 w - -");
+		assertEquals(0, s.getHalfMoveClock());
+		assertEquals(1, s.getFullMoveNumber());
+	}
+
+	@Test
+	public void castlingRightsWithoutRookAreIgnored()
+	{
+		GameState s = Fen.parse("r3k3/8/8/8/8/8/8/4K2R w KQkq - 0 1");
+		assertEquals(1L << 63 | 1L << 0, s.getCastlingRights());
+	}
+
+	@Test
+	public void shredderCastlingRights()
+	{
+		GameState s = Fen.parse("r3k2r/8/8/8/8/8/8/R3K2R w HAha - 0 1");
+		assertEquals(Movemasks.INITIAL_CASTLING_RIGHTS, s.getCastlingRights());
+	}
+
+	@Test
+	public void highHalfMoveClockDoesNotBreakRepetitionCheck()
+	{
+		GameState s = Fen.parse("4k3/8/8/8/8/8/4P3/4K3 w - - 30 80");
+		assertFalse(s.isStaleMate());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void shortRankIsRejected()
+	{
+		Fen.parse("rnbqkbnr/ppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void missingRankIsRejected()
+	{
+		Fen.parse("rnbqkbnr/pppppppp/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void invalidSideIsRejected()
+	{
+		Fen.parse("4k3/8/8/8/8/8/8/4K3 x - - 0 1");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void enPassantOnWrongRankIsRejected()
+	{
+		Fen.parse("4k3/8/8/8/8/8/8/4K3 w - e3 0 1");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void tooManyFieldsAreRejected()
+	{
+		Fen.parse("4k3/8/8/8/8/8/8/4K3 w - - 0 1 x");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void missingFullMoveNumberIsRejected()
+	{
+		Fen.parse("4k3/8/8/8/8/8/8/4K3 w - - 0");
+	}
+}
@@ -1,5 +1,6 @@
 package chess.domain;
 
+import java.util.Random;
 import static org.junit.Assert.*;
 import org.junit.Before;
 import org.junit.Test;
@@ -609,6 +610,96 @@ public class GameStateTest
 		assertFalse(h == s.getId());
 	}
 
+	@Test
+	public void pawnKeyDependsOnlyOnPawns()
+	{
+		GameState s = new GameState("Kc3 Nd2 a2", "Kf5 d7", Players.WHITE);
+		GameState s2 = new GameState("Kc4 Qd1 a2", "Kf6 d7", Players.BLACK);
+		GameState s3 = new GameState("Kc3 Nd2 a3", "Kf5 d7", Players.WHITE);
+		assertEquals(s.getPawnKey(), s2.getPawnKey());
+		assertFalse(s.getPawnKey() == s3.getPawnKey());
+		s.makeMove(Move.fromString("Nd2-f3"));
+		assertEquals(s2.getPawnKey(), s.getPawnKey());
+		s.makeMove(Move.fromString("d7-d6"));
+		assertFalse(s2.getPawnKey() == s.getPawnKey());
+	}
+
+	@Test
+	public void materialKeyCountsPieces()
+	{
+		GameState s = new GameState();
+		long key = s.getMaterialKey();
+		assertEquals(8, GameState.getPieceCount(key, Players.WHITE, Pieces.PAWN));
+		assertEquals(2, GameState.getPieceCount(key, Players.BLACK, Pieces.KNIGHT));
+		assertEquals(1, GameState.getPieceCount(key, Players.BLACK, Pieces.QUEEN));
+		GameState s2 = new GameState("Kc3 Nd2 a7", "Kf5 d7", Players.WHITE);
+		s2.makeMove(Move.pack(8, 0, Pieces.PAWN, -1, Pieces.QUEEN));
+		key = s2.getMaterialKey();
+		assertEquals(0, GameState.getPieceCount(key, Players.WHITE, Pieces.PAWN));
+		assertEquals(1, GameState.getPieceCount(key, Players.WHITE, Pieces.QUEEN));
+		assertEquals(new GameState("Kc3 Nd2 Qa8", "Kf5 d7", Players.BLACK).getMaterialKey(),
+				key);
+	}
+
+	@Test
+	public void verificationKeyIsUpdatedIncrementally()
+	{
+		if (!GameState.VERIFICATION_KEYS) {
+			assertEquals(0, new GameState().getVerificationKey());
+			return;
+		}
+		Random rnd = new Random(13);
+		for (int game = 0; game < 20; ++game) {
+			GameState s = new GameState();
+			long[] keys = new long[101];
+			keys[0] = s.getVerificationKey();
+			int[] moves = new int[100];
+			int moveCount = 0;
+			while (moveCount < moves.length && s.getGameStatus() == GameStatus.ONGOING) {
+				int[] legal = s.getLegalMoves();
+				moves[moveCount] = legal[rnd.nextInt(legal.length)];
+				s.makeMove(moves[moveCount++]);
+				keys[moveCount] = s.getVerificationKey();
+				assertEquals(Fen.parse(Fen.toString(s)).getVerificationKey(),
+						s.getVerificationKey());
+				assertFalse(s.getVerificationKey() == s.getId());
+			}
+			long[] earlier = s.getEarlierVerificationKeys();
+			for (int i = 0; i < moveCount; ++i)
+				assertEquals(keys[i], earlier[i]);
+			s.makeNullMove();
+			assertFalse(keys[moveCount] == s.getVerificationKey());
+			s.undoNullMove();
+			for (int i = moveCount - 1; i >= 0; --i) {
+				s.undoMove(moves[i]);
+				assertEquals(keys[i], s.getVerificationKey());
+			}
+		}
+	}
+
+	@Test
+	public void pawnAndMaterialKeysAreUpdatedIncrementally()
+	{
+		Random rnd = new Random(11);
+		for (int game = 0; game < 20; ++game) {
+			GameState s = new GameState();
+			int[] moves = new int[100];
+			int moveCount = 0;
+			while (moveCount < moves.length && s.getGameStatus() == GameStatus.ONGOING) {
+				int[] legal = s.getLegalMoves();
+				moves[moveCount] = legal[rnd.nextInt(legal.length)];
+				s.makeMove(moves[moveCount++]);
+				GameState fresh = Fen.parse(Fen.toString(s));
+				assertEquals(fresh.getPawnKey(), s.getPawnKey());
+				assertEquals(fresh.getMaterialKey(), s.getMaterialKey());
+			}
+			for (int i = moveCount - 1; i >= 0; --i)
+				s.undoMove(moves[i]);
+			assertEquals(new GameState().getPawnKey(), s.getPawnKey());
+			assertEquals(new GameState().getMaterialKey(), s.getMaterialKey());
+		}
+	}
+
 	@Test
 	public void undoRestoresOldStateWhenNoCapture()
 	{
@@ -797,16 +888,128 @@ public class GameStateTest
 	}
 
 	@Test
-	public void repeatedPositionIsAStaleMate()
+	public void testLegalMoveGenerationWithCastlingAndPins()
+	{
+		// http://chessprogramming.wikispaces.com/Perft+Results (Position 2, "Kiwipete")
+		GameState s = new GameState("Ke1 Ra1 Rh1 Qf3 Bd2 Be2 Nc3 Ne5 a2 b2 c2 d5 e4 f2 g2 h2",
+				"Ke8 Ra8 Rh8 Qe7 Bg7 Ba6 Nb6 Nf6 a7 c7 d7 f7 e6 g6 b4 h3", Players.WHITE);
+		assertEquals(48, perft(s, 1));
+		assertEquals(2039, perft(s, 2));
+		assertEquals(97862, perft(s, 3));
+	}
+
+	@Test
+	public void testLegalMoveGenerationWithEnPassantPins()
+	{
+		// http://chessprogramming.wikispaces.com/Perft+Results (Position 3)
+		GameState s = new GameState("Ka5 Rb4 b5 e2 g2", "Kh4 Rh5 c7 d6 f4", Players.WHITE);
+		assertEquals(14, perft(s, 1));
+		assertEquals(191, perft(s, 2));
+		assertEquals(2812, perft(s, 3));
+		assertEquals(43238, perft(s, 4));
+	}
+
+	@Test
+	public void onlyKingMovesInDoubleCheck()
+	{
+		GameState s = new GameState("Ke1 Qd1 Nb1", "Ke8 Rh1 Bb4", Players.WHITE);
+		int[] moves = s.getLegalMoves();
+		assertTrue(moves.length > 0);
+		for (int i = 0; i < moves.length; ++i)
+			assertEquals(Pieces.KING, Move.getPieceType(moves[i]));
+	}
+
+	@Test
+	public void pinnedPieceMovesOnlyAlongPinLine()
+	{
+		GameState s = new GameState("Ke1 Re2 Nd2", "Ke8 Re7 Bb4", Players.WHITE);
+		assertEquals(0, s.getLegalMoves(sq("d2")).length);
+		assertEquals(5, s.getLegalMoves(sq("e2")).length);
+	}
+
+	@Test
+	public void attackedSquaresIncludeAllPieces()
+	{
+		GameState s = new GameState("Ka1 Nh1 d2", "Kh8", Players.WHITE);
+		assertEquals("c3 e3 g3 a2 b2 f2 b1", str(s.getAttackedSquares(Players.WHITE)));
+		assertEquals("g8 g7 h7", str(s.getAttackedSquares(Players.BLACK)));
+	}
+
+	@Test
+	public void attackedSquaresAreUpdatedAfterMoveAndUndo()
+	{
+		GameState s = new GameState("Ke1 Ra1", "Ke8", Players.WHITE);
+		long before = s.getAttackedSquares(Players.WHITE);
+		int move = Move.fromString("Ra1-a8");
+		s.makeMove(move);
+		assertTrue(s.isKingChecked(Players.BLACK));
+		assertTrue(s.getAttackedSquares(Players.WHITE) != before);
+		s.undoMove(move);
+		assertFalse(s.isKingChecked(Players.BLACK));
+		assertEquals(before, s.getAttackedSquares(Players.WHITE));
+	}
+
+	@Test
+	public void generateLegalMovesMatchesGetLegalMoves()
+	{
+		GameState s = new GameState("Kg1 Qd1 Ra1 Rf1 Ba4 Bb4 Nf3 Nh6 a2 a7 b5 c4 d2 e4 g2 h2",
+				"Ke8 Qa3 Ra8 Rh8 Bb6 Bg6 Na5 Nf6 b7 b2 c7 d7 f7 g7 h7", Players.BLACK);
+		int[] expected = s.getLegalMoves();
+		int[] moves = new int[GameState.MAX_MOVES];
+		assertEquals(expected.length, s.generateLegalMoves(moves));
+		for (int i = 0; i < expected.length; ++i)
+			assertEquals(expected[i], moves[i]);
+	}
+
+	@Test
+	public void generateLegalMovesFromSquareAppendsToBuffer()
+	{
+		GameState s = new GameState();
+		int[] moves = new int[GameState.MAX_MOVES];
+		int count = s.generateLegalMoves(sq("b1"), moves, 0);
+		assertEquals(2, count);
+		count = s.generateLegalMoves(sq("e2"), moves, count);
+		assertEquals(4, count);
+		assertEquals(Move.fromString("e2-e4"), moves[2]);
+		assertEquals(Move.fromString("e2-e3"), moves[3]);
+	}
+
+	@Test
+	public void threefoldRepeatedPositionIsAStaleMate()
 	{
 		GameState s = new GameState("Ka1 Qb1", "Kg7 Qh8", Players.WHITE);
-		s.makeMove(Move.fromString("Qb1-c1"));
-		s.makeMove(Move.fromString("Qh8-g8"));
-		s.makeMove(Move.fromString("Qc1-b1"));
-		s.makeMove(Move.fromString("Qg8-h8"));
+		for (int i = 0; i < 2; ++i) {
+			assertFalse(s.isStaleMate());
+			s.makeMove(Move.fromString("Qb1-c1"));
+			s.makeMove(Move.fromString("Qh8-g8"));
+			s.makeMove(Move.fromString("Qc1-b1"));
+			s.makeMove(Move.fromString("Qg8-h8"));
+		}
 		assertTrue(s.isStaleMate());
 	}
 
+	@Test
+	public void repetitionCountIsUpdatedInMakeAndUndo()
+	{
+		GameState s = new GameState("Ka1 Qb1", "Kg7 Qh8", Players.WHITE);
+		assertEquals(1, s.getRepetitionCount());
+		int[] moves = {Move.fromString("Qb1-c1"), Move.fromString("Qh8-g8"),
+			Move.fromString("Qc1-b1"), Move.fromString("Qg8-h8")};
+		for (int move : moves)
+			s.makeMove(move);
+		assertEquals(2, s.getRepetitionCount());
+		GameState s2 = s.clone();
+		s.undoMove(moves[3]);
+		assertEquals(1, s.getRepetitionCount());
+		s.makeMove(moves[3]);
+		assertEquals(2, s.getRepetitionCount());
+		s.makeNullMove();
+		assertEquals(1, s.getRepetitionCount());
+		s.undoNullMove();
+		assertEquals(2, s.getRepetitionCount());
+		assertEquals(2, s2.getRepetitionCount());
+	}
+
 	@Test
 	public void notRepeatedPositionIfDifferentEnPassantSquare()
 	{
@@ -816,6 +1019,7 @@ public class GameStateTest
 		s.makeMove(Move.fromString("Qb1-c1"));
 		s.makeMove(Move.fromString("Qg8-h8"));
 		s.makeMove(Move.fromString("Qc1-b1"));
+		assertEquals(1, s.getRepetitionCount());
 		assertFalse(s.isStaleMate());
 	}
 
@@ -827,6 +1031,7 @@ public class GameStateTest
 		s.makeMove(Move.fromString("Ke8-e7"));
 		s.makeMove(Move.fromString("Ra2-a1"));
 		s.makeMove(Move.fromString("Ke7-e8"));
+		assertEquals(1, s.getRepetitionCount());
 		assertFalse(s.isStaleMate());
 	}
 
@@ -873,4 +1078,212 @@ public class GameStateTest
 		}
 		assertTrue(s.isStaleMate());
 	}
+
+	@Test
+	public void hasAnyLegalMoveMatchesMoveGeneration()
+	{
+		int[] moves = new int[GameState.MAX_MOVES];
+		Random rnd = new Random(7);
+		for (int i = 0; i < 200; ++i) {
+			GameState s = GameGenerator.createGame(rnd.nextLong());
+			for (int j = 0; j < 40; ++j) {
+				int count = s.generateLegalMoves(moves);
+				assertEquals(count > 0, s.hasAnyLegalMove());
+				if (count == 0)
+					break;
+				s.makeMove(moves[rnd.nextInt(count)]);
+			}
+		}
+	}
+
+	@Test
+	public void enPassantIsOnlyLegalMove()
+	{
+		GameState s = Fen.parse("8/3B4/7R/k7/1Pp5/8/N7/7K b - b3 0 1");
+		int[] moves = new int[GameState.MAX_MOVES];
+		assertEquals(1, s.generateLegalMoves(moves));
+		assertEquals(Move.fromString("c4xb3"), moves[0]);
+		assertTrue(s.hasAnyLegalMove());
+		assertEquals(GameStatus.ONGOING, s.getGameStatus());
+	}
+
+	@Test
+	public void gameStatusValues()
+	{
+		assertEquals(GameStatus.ONGOING, new GameState().getGameStatus());
+		GameState s = new GameState("Ka8 Qb7", "Kc6", Players.BLACK);
+		assertEquals(GameStatus.ONGOING, s.getGameStatus());
+		s = new GameState("Kc6 Qb7", "Ka8", Players.BLACK);
+		assertEquals(GameStatus.CHECKMATE, s.getGameStatus());
+		s = new GameState("Kc7 Qb6", "Ka8", Players.BLACK);
+		assertEquals(GameStatus.STALEMATE, s.getGameStatus());
+	}
+
+	@Test
+	public void gameStatusIsUpdatedAfterMoveAndUndo()
+	{
+		GameState s = new GameState("Kc6 Qb1", "Ka8", Players.WHITE);
+		assertEquals(GameStatus.ONGOING, s.getGameStatus());
+		int move = Move.fromString("Qb1-b7");
+		s.makeMove(move);
+		assertEquals(GameStatus.CHECKMATE, s.getGameStatus());
+		s.undoMove(move);
+		assertEquals(GameStatus.ONGOING, s.getGameStatus());
+		move = Move.fromString("Qb1-b6");
+		s.makeMove(move);
+		assertEquals(GameStatus.STALEMATE, s.getGameStatus());
+		s.undoMove(move);
+		s.makeMove(Move.fromString("Qb1-b2"));
+		assertEquals(GameStatus.ONGOING, s.getGameStatus());
+	}
+
+	@Test
+	public void repeatedPositionIsADraw()
+	{
+		GameState s = new GameState("Ka1 Qb1", "Kg7 Qh8", Players.WHITE);
+		s.makeMove(Move.fromString("Qb1-c1"));
+		s.makeMove(Move.fromString("Qh8-g8"));
+		s.makeMove(Move.fromString("Qc1-b1"));
+		s.makeMove(Move.fromString("Qg8-h8"));
+		s.makeMove(Move.fromString("Qb1-c1"));
+		s.makeMove(Move.fromString("Qh8-g8"));
+		s.makeMove(Move.fromString("Qc1-b1"));
+		assertEquals(GameStatus.ONGOING, s.getGameStatus());
+		s.makeMove(Move.fromString("Qg8-h8"));
+		assertEquals(GameStatus.DRAW, s.getGameStatus());
+	}
+
+	@Test
+	public void compactMovesExpandToLegalMoves()
+	{
+		Random rnd = new Random(17);
+		for (int i = 0; i < 200; ++i) {
+			GameState s = GameGenerator.createGame(rnd.nextLong());
+			for (int move : s.getLegalMoves()) {
+				assertEquals(move, s.expandMove(Move.toCompact(move)));
+				assertTrue(s.isPseudoLegal(move));
+			}
+		}
+	}
+
+	@Test
+	public void isPseudoLegalRejectsInvalidMoves()
+	{
+		GameState s = new GameState("Ke1 Rh1 b2 e2 b7", "Ke8 Nc3 d4", Players.WHITE);
+		assertTrue(s.isPseudoLegal(Move.fromString("Ke1-g1")));
+		assertTrue(s.isPseudoLegal(Move.fromString("b2xNc3")));
+		assertTrue(s.isPseudoLegal(Move.fromString("b7-b8N")));
+		assertTrue(s.isPseudoLegal(Move.fromString("e2-e4")));
+		assertTrue(s.isPseudoLegal(Move.fromString("e2-e3")));
+		assertTrue(s.isPseudoLegal(Move.fromString("Rh1-h8")));
+		assertFalse(s.isPseudoLegal(Move.fromString("b7-b8")));
+		assertFalse(s.isPseudoLegal(Move.fromString("e2-d3")));
+		assertFalse(s.isPseudoLegal(Move.fromString("b2xBc3")));
+		assertFalse(s.isPseudoLegal(Move.fromString("Re1-e4")));
+		assertFalse(s.isPseudoLegal(Move.fromString("Ke1-c1")));
+		assertFalse(s.isPseudoLegal(Move.fromString("Nc3-e2")));
+		assertFalse(s.isPseudoLegal(0));
+		s.makeMove(Move.fromString("e2-e4"));
+		int move = Move.fromString("d4xe3");
+		assertTrue(s.isPseudoLegal(move));
+		assertEquals(move, s.expandMove(Move.toCompact(move)));
+		assertFalse(s.isPseudoLegal(Move.fromString("d4-e3")));
+	}
+
+	private static final int[] SEE_VALUES = {100000, 900, 500, 300, 300, 100};
+
+	@Test
+	public void staticExchangeScoreOfUndefendedCapture()
+	{
+		GameState s = new GameState("Ke1 Rd1", "Ke8 d5", Players.WHITE);
+		assertEquals(100, s.getStaticExchangeScore(Move.fromString("Rd1xd5"), SEE_VALUES));
+	}
+
+	@Test
+	public void staticExchangeScoreOfQueenTakingDefendedPawn()
+	{
+		GameState s = new GameState("Ke1 Qd4", "Ke8 e5 f6", Players.WHITE);
+		assertEquals(-800, s.getStaticExchangeScore(Move.fromString("Qd4xe5"), SEE_VALUES));
+	}
+
+	@Test
+	public void staticExchangeScoreIncludesXRayAttackers()
+	{
+		// Rd8 puolustaa d5:tä vasta, kun Rd7 on lyönyt.
+		GameState s = new GameState("Ke1 Rd1 Nf4", "Kh8 Rd8 Rd7 d5", Players.WHITE);
+		assertEquals(-200, s.getStaticExchangeScore(Move.fromString("Nf4xd5"), SEE_VALUES));
+		// Valkoisen toinen torni tasoittaa vaihdon.
+		s = new GameState("Ke1 Rd1 Rd2 Nf4", "Kh8 Rd8 Rd7 d5", Players.WHITE);
+		assertEquals(100, s.getStaticExchangeScore(Move.fromString("Nf4xd5"), SEE_VALUES));
+	}
+
+	@Test
+	public void staticExchangeScoreOfEnPassant()
+	{
+		GameState s = new GameState("Ke1 e5", "Ke8 d7", Players.BLACK);
+		s.makeMove(Move.fromString("d7-d5"));
+		assertEquals(100, s.getStaticExchangeScore(Move.fromString("e5xd6"), SEE_VALUES));
+		assertEquals(0, s.getStaticExchangeScore(Move.fromString("e5-e6"), SEE_VALUES));
+	}
+
+	@Test
+	public void attackersToFindsPiecesOfBothPlayers()
+	{
+		GameState s = new GameState("Ka1 Rd1 Nc3 e4", "Kh8 Qd8 e6 Bh1", Players.WHITE);
+		long occupied = s.getBoard().getPieces();
+		assertEquals("d8 e6 e4 c3 d1", str(s.getAttackersTo(sq("d5"), occupied)));
+		// Lähetti uhkaa d5:tä vasta, kun e4 poistetaan laudalta.
+		occupied &= ~(1L << sq("e4"));
+		assertEquals("d8 e6 c3 d1 h1", str(s.getAttackersTo(sq("d5"), occupied)));
+	}
+
+	@Test
+	public void squareLookupMatchesAttackMaps()
+	{
+		Random rnd = new Random(23);
+		for (int i = 0; i < 200; ++i) {
+			GameState s = GameGenerator.createGame(rnd.nextLong());
+			for (int move : s.getLegalMoves()) {
+				s.makeMove(move);
+				for (int player = 0; player < Players.COUNT; ++player) {
+					for (int sqr = 0; sqr < 64; ++sqr) {
+						GameState copy = s.clone();
+						boolean threatened = copy.isSquareThreatened(player, 1L << sqr);
+						assertEquals((s.getAttackedSquares(1 - player) & 1L << sqr) != 0,
+								threatened);
+					}
+				}
+				s.undoMove(move);
+			}
+		}
+	}
+	@Test
+	public void insufficientMaterial()
+	{
+		assertTrue(new GameState("Ke1", "Ke8", Players.WHITE).isInsufficientMaterial());
+		assertTrue(new GameState("Ke1 Bc1", "Ke8", Players.WHITE).isInsufficientMaterial());
+		assertTrue(new GameState("Ke1", "Ke8 Ng8", Players.WHITE).isInsufficientMaterial());
+		// Samanväriset lähetit eivät voi tehdä mattia.
+		assertTrue(new GameState("Ke1 Bc1", "Ke8 Bh6", Players.WHITE).isInsufficientMaterial());
+		assertTrue(new GameState("Ke1 Bc1 Be3", "Ke8", Players.WHITE).isInsufficientMaterial());
+		assertFalse(new GameState("Ke1 Bc1", "Ke8 Bc8", Players.WHITE).isInsufficientMaterial());
+		assertFalse(new GameState("Ke1 Nb1 Ng1", "Ke8", Players.WHITE).isInsufficientMaterial());
+		assertFalse(new GameState("Ke1 Bc1", "Ke8 Ng8", Players.WHITE).isInsufficientMaterial());
+		assertFalse(new GameState("Ke1 e2", "Ke8", Players.WHITE).isInsufficientMaterial());
+		assertFalse(new GameState("Ke1 Ra1", "Ke8", Players.WHITE).isInsufficientMaterial());
+	}
+
+	@Test
+	public void insufficientMaterialIsDraw()
+	{
+		GameState s = new GameState("Ke1 Bc1", "Ke8 Bh6", Players.WHITE);
+		assertEquals(GameStatus.DRAW, s.getGameStatus());
+		assertTrue(s.isStaleMate());
+		assertFalse(s.isCheckMate());
+		// Kun viimeinen sotilas lyödään, tilanne muuttuu tasapeliksi.
+		s = new GameState("Ke1 Bd3", "Ke8 e4", Players.WHITE);
+		assertEquals(GameStatus.ONGOING, s.getGameStatus());
+		s.makeMove(Move.pack(sq("d3"), sq("e4"), Pieces.BISHOP, Pieces.PAWN, Pieces.BISHOP));
+		assertEquals(GameStatus.DRAW, s.getGameStatus());
+	}
 }
@@ -127,4 +127,15 @@ public class MoveTest
 		} catch (IllegalArgumentException e) {
 		}
 	}
+
+	@Test
+	public void compactMoveKeepsSquaresAndPromotion()
+	{
+		int compact = Move.toCompact(Move.fromString("b7xRa8N"));
+		assertEquals(9, Move.getCompactFromSqr(compact));
+		assertEquals(0, Move.getCompactToSqr(compact));
+		assertEquals(Pieces.KNIGHT, Move.getCompactPromotion(compact));
+		assertEquals(0, Move.getCompactPromotion(Move.toCompact(move2)));
+		assertTrue(compact >= 0 && compact < 1 << 15);
+	}
 }
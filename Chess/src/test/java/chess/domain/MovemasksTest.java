@@ -1,5 +1,9 @@
 package chess.domain;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
 import static org.junit.Assert.*;
 import org.junit.Before;
 import org.junit.Test;
@@ -53,6 +57,36 @@ public class MovemasksTest
 		assertEquals(toStr(sqrs(54, 55, 62)), toStr(Movemasks.KING_MOVES[63]));
 	}
 
+	@Test
+	public void pawnAttacksNearBorder()
+	{
+		assertEquals(toStr(sqrs(33)), toStr(Movemasks.PAWN_ATTACKS[Players.WHITE][40]));
+		assertEquals(toStr(sqrs(46)), toStr(Movemasks.PAWN_ATTACKS[Players.BLACK][39]));
+		assertEquals(toStr(sqrs(17, 19)), toStr(Movemasks.PAWN_ATTACKS[Players.WHITE][26]));
+		assertEquals(0, Movemasks.PAWN_ATTACKS[Players.WHITE][3]);
+	}
+
+	@Test
+	public void setWisePawnMoves()
+	{
+		// Valkoiset sotilaat a2, e2 ja h7; e3 on varattu.
+		long pawns = sqrs(48, 52, 15);
+		long empty = ~(pawns | sqrs(44, 7));
+		assertEquals(toStr(sqrs(40)), toStr(Movemasks.getPawnPushes(Players.WHITE, pawns,
+				empty)));
+		assertEquals(toStr(sqrs(32)), toStr(Movemasks.getPawnDoublePushes(Players.WHITE, pawns,
+				empty)));
+		assertEquals(toStr(sqrs(43, 6)), toStr(Movemasks.getPawnWestCaptures(Players.WHITE,
+				pawns, -1L)));
+		assertEquals(toStr(sqrs(41, 45)), toStr(Movemasks.getPawnEastCaptures(Players.WHITE,
+				pawns, -1L)));
+		long blackPawns = sqrs(8, 15);
+		assertEquals(toStr(sqrs(24, 31)), toStr(Movemasks.getPawnDoublePushes(Players.BLACK,
+				blackPawns, ~blackPawns)));
+		assertEquals(toStr(sqrs(17, 22)), toStr(Movemasks.getPawnAttacks(Players.BLACK,
+				blackPawns)));
+	}
+
 	@Test
 	public void rookMovesOnEmptyBoard()
 	{
@@ -88,4 +122,67 @@ public class MovemasksTest
 		assertEquals(toStr(sqrs(19, 18, 11, 2, 12, 4, 13, 6, 21, 29, 28, 27, 34, 41, 22, 36)),
 				toStr(moves));
 	}
+
+	@Test
+	public void squaresBetweenOnSameLine()
+	{
+		assertEquals(toStr(sqrs(9, 18, 27)), toStr(Movemasks.getSquaresBetween(0, 36)));
+		assertEquals(toStr(sqrs(9, 18, 27)), toStr(Movemasks.getSquaresBetween(36, 0)));
+		assertEquals(toStr(sqrs(13, 21)), toStr(Movemasks.getSquaresBetween(5, 29)));
+		assertEquals(toStr(sqrs()), toStr(Movemasks.getSquaresBetween(5, 6)));
+	}
+
+	@Test
+	public void noSquaresBetweenWhenNotOnSameLine()
+	{
+		assertEquals(0, Movemasks.getSquaresBetween(0, 17));
+		assertEquals(0, Movemasks.getSquaresBetween(7, 8));
+	}
+
+	@Test
+	public void flatAndJaggedLayoutsGiveSameMoves()
+	{
+		Random rnd = new Random(1);
+		for (int i = 0; i < 1000; ++i) {
+			long occ = rnd.nextLong() & rnd.nextLong();
+			for (int sqr = 0; sqr < 64; ++sqr) {
+				assertEquals(Movemasks.getRookMovesJagged(sqr, occ),
+						Movemasks.getRookMoves(sqr, occ));
+				assertEquals(Movemasks.getBishopMovesJagged(sqr, occ),
+						Movemasks.getBishopMoves(sqr, occ));
+				assertEquals(Movemasks.getQueenMovesJagged(sqr, occ),
+						Movemasks.getQueenMoves(sqr, occ));
+			}
+		}
+	}
+
+	@Test
+	public void tablesSurviveWriteAndRead() throws IOException
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		Movemasks.writeTables(out);
+		long[][] tables = Movemasks.readTables(new ByteArrayInputStream(out.toByteArray()));
+		assertNotNull(tables);
+		assertEquals(5, tables.length);
+		assertArrayEquals(Movemasks.KING_MOVES, tables[0]);
+		assertArrayEquals(Movemasks.KNIGHT_MOVES, tables[1]);
+	}
+
+	@Test
+	public void corruptedTablesAreRejected() throws IOException
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		Movemasks.writeTables(out);
+		byte[] data = out.toByteArray();
+		data[1000] ^= 1;
+		assertNull(Movemasks.readTables(new ByteArrayInputStream(data)));
+		assertNull(Movemasks.readTables(new ByteArrayInputStream(new byte[0])));
+	}
+
+	@Test
+	public void tablesAreLoadedWhenResourceExists()
+	{
+		if (Movemasks.class.getResource("movemasks.bin") != null)
+			assertTrue(Movemasks.isLoadedFromResource());
+	}
 }
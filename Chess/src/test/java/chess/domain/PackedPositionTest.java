@@ -0,0 +1,84 @@
+package chess.domain;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class PackedPositionTest
+{
+	private static GameState roundTrip(GameState s)
+	{
+		ByteBuffer buf = ByteBuffer.allocate(PackedPosition.SIZE);
+		PackedPosition.encode(s, buf);
+		assertEquals(PackedPosition.SIZE, buf.position());
+		buf.flip();
+		GameState s2 = PackedPosition.decode(buf);
+		assertEquals(PackedPosition.SIZE, buf.position());
+		return s2;
+	}
+
+	@Test
+	public void initialPositionSurvivesRoundTrip()
+	{
+		GameState s = new GameState();
+		GameState s2 = roundTrip(s);
+		assertTrue(s.equals(s2));
+		assertEquals(s.getId(), s2.getId());
+		assertEquals(Fen.toString(s), Fen.toString(s2));
+	}
+
+	@Test
+	public void allFieldsSurviveRoundTrip()
+	{
+		String fen = "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R b Kq e3 37 142";
+		assertEquals(fen, Fen.toString(roundTrip(Fen.parse(fen))));
+		fen = "4k3/8/8/3pP3/8/8/8/4K3 w - d6 0 1";
+		assertEquals(fen, Fen.toString(roundTrip(Fen.parse(fen))));
+	}
+
+	@Test
+	public void randomPositionsSurviveRoundTrip()
+	{
+		Random rnd = new Random(5);
+		for (int i = 0; i < 100; ++i) {
+			GameState s = GameGenerator.createGame(rnd.nextLong());
+			GameState s2 = roundTrip(s);
+			assertTrue(s.equals(s2));
+			assertEquals(s.getId(), s2.getId());
+		}
+	}
+
+	@Test
+	public void positionsCanBeStoredBackToBackInDirectBuffer()
+	{
+		GameState s = new GameState();
+		GameState s2 = Fen.parse("8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1");
+		ByteBuffer buf = ByteBuffer.allocateDirect(3 * PackedPosition.SIZE);
+		buf.position(PackedPosition.SIZE);
+		PackedPosition.encode(s, buf);
+		PackedPosition.encode(s2, buf);
+		buf.position(PackedPosition.SIZE);
+		assertEquals(s.getId(), PackedPosition.decode(buf).getId());
+		assertEquals(s2.getId(), PackedPosition.decode(buf).getId());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void tooManyPiecesAreRejected()
+	{
+		BitBoard board = new BitBoard();
+		for (int sqr = 0; sqr < 33; ++sqr)
+			board.addPiece(Players.WHITE, Pieces.PAWN, sqr + 8);
+		PackedPosition.encode(new GameState(board, Players.WHITE),
+				ByteBuffer.allocate(PackedPosition.SIZE));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void invalidPieceCodeIsRejected()
+	{
+		ByteBuffer buf = ByteBuffer.allocate(PackedPosition.SIZE);
+		buf.putLong(1L).putLong(7L).putLong(0L).putLong(1L << 25);
+		buf.flip();
+		PackedPosition.decode(buf);
+	}
+}
@@ -0,0 +1,78 @@
+package chess.domain;
+
+import java.util.Random;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class PositionSnapshotTest
+{
+	private static void assertSameState(GameState expected, PositionSnapshot actual)
+	{
+		assertEquals(expected.getId(), actual.getId());
+		assertEquals(expected.getNextMovingPlayer(), actual.getNextMovingPlayer());
+		assertEquals(expected.getCastlingRights(), actual.getCastlingRights());
+		assertEquals(expected.getEnPassantSquare(), actual.getEnPassantSquare());
+		assertEquals(expected.getHalfMoveClock(), actual.getHalfMoveClock());
+		for (int player = 0; player < Players.COUNT; ++player) {
+			for (int piece = 0; piece < Pieces.COUNT; ++piece)
+				assertEquals(expected.getPieces(player, piece), actual.getPieces(player, piece));
+			assertEquals(expected.isKingChecked(player), actual.isKingChecked(player));
+		}
+	}
+
+	@Test
+	public void copyMakeMatchesMakeMoveInRandomGames()
+	{
+		Random rnd = new Random(5);
+		for (int game = 0; game < 50; ++game) {
+			GameState state = new GameState();
+			PositionSnapshot snapshot = new PositionSnapshot(state);
+			PositionSnapshot child = new PositionSnapshot();
+			for (int i = 0; i < 150 && state.getGameStatus() == GameStatus.ONGOING; ++i) {
+				int[] moves = state.getLegalMoves();
+				int move = moves[rnd.nextInt(moves.length)];
+				long parentId = snapshot.getId();
+				snapshot.makeMove(move, child);
+				assertEquals(parentId, snapshot.getId());
+				state.makeMove(move);
+				assertSameState(state, child);
+				PositionSnapshot tmp = snapshot;
+				snapshot = child;
+				child = tmp;
+			}
+		}
+	}
+
+	@Test
+	public void specialMovesAreHandled()
+	{
+		String[] fens = {
+			"r3k2r/8/8/8/8/8/8/R3K2R w KQkq - 3 10",
+			"r3k2r/8/8/8/8/8/8/R3K2R b KQkq - 3 10",
+			"8/8/8/2k5/3Pp3/8/8/4K3 b - d3 0 1",
+			"r3k3/1P6/8/8/8/8/8/4K3 w q - 0 1"};
+		for (String fen : fens) {
+			GameState state = Fen.parse(fen);
+			PositionSnapshot snapshot = new PositionSnapshot(state);
+			for (int move : state.getLegalMoves()) {
+				PositionSnapshot child = snapshot.makeMove(move);
+				state.makeMove(move);
+				assertSameState(state, child);
+				assertEquals(state.getBoard(), child.toGameState().getBoard());
+				state.undoMove(move);
+			}
+		}
+	}
+
+	@Test
+	public void toGameStateKeepsPositionData()
+	{
+		GameState state = Fen.parse("r3k2r/8/8/8/4Pp2/8/8/R3K2R b Kq e3 7 20");
+		GameState copy = new PositionSnapshot(state).toGameState();
+		String fen = Fen.toString(state);
+		String copyFen = Fen.toString(copy);
+		assertEquals(fen.substring(0, fen.lastIndexOf(' ')),
+				copyFen.substring(0, copyFen.lastIndexOf(' ')));
+		assertEquals(state.getId(), copy.getId());
+	}
+}
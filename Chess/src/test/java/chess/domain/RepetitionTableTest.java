@@ -0,0 +1,70 @@
+package chess.domain;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class RepetitionTableTest
+{
+	@Test
+	public void countsIncrementsAndDecrements()
+	{
+		RepetitionTable t = new RepetitionTable(4);
+		assertEquals(0, t.get(123));
+		assertEquals(1, t.increment(123));
+		assertEquals(2, t.increment(123));
+		assertEquals(1, t.increment(456));
+		t.decrement(123);
+		assertEquals(1, t.get(123));
+		t.decrement(123);
+		assertEquals(0, t.get(123));
+		assertEquals(1, t.get(456));
+	}
+
+	@Test
+	public void collidingKeysSurviveRemoval()
+	{
+		// Samat alimmat bitit, joten avaimet päätyvät samaan ketjuun.
+		RepetitionTable t = new RepetitionTable(16);
+		long[] keys = {1L << 40 | 5, 2L << 40 | 5, 3L << 40 | 5, 6};
+		for (long key : keys)
+			t.increment(key);
+		t.decrement(keys[0]);
+		assertEquals(0, t.get(keys[0]));
+		for (int i = 1; i < keys.length; ++i)
+			assertEquals(1, t.get(keys[i]));
+	}
+
+	@Test
+	public void matchesHashMapInRandomOperations()
+	{
+		RepetitionTable t = new RepetitionTable(2);
+		Map<Long, Integer> reference = new HashMap<>();
+		Random rnd = new Random(3);
+		for (int i = 0; i < 100000; ++i) {
+			long key = rnd.nextInt(200) * 0x100000001L;
+			Integer count = reference.get(key);
+			if (count != null && rnd.nextBoolean()) {
+				t.decrement(key);
+				if (count == 1)
+					reference.remove(key);
+				else
+					reference.put(key, count - 1);
+			} else {
+				assertEquals((count == null ? 0 : count) + 1, t.increment(key));
+				reference.put(key, count == null ? 1 : count + 1);
+			}
+			long probe = rnd.nextInt(200) * 0x100000001L;
+			Integer expected = reference.get(probe);
+			assertEquals(expected == null ? 0 : (int) expected, t.get(probe));
+		}
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void decrementingMissingKeyFails()
+	{
+		new RepetitionTable(4).decrement(1);
+	}
+}
@@ -0,0 +1,91 @@
+package chess.testing;
+
+import chess.domain.GameState;
+import chess.domain.Players;
+import chess.util.Logger;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PerftTest
+{
+	private Logger logger;
+
+	private int messageCount;
+
+	@Before
+	public void setUp()
+	{
+		messageCount = 0;
+		logger = new Logger()
+		{
+			@Override
+			public void logMessage(String message)
+			{
+				++messageCount;
+			}
+		};
+	}
+
+	@Test
+	public void staticPerftCountsInitialPosition()
+	{
+		GameState s = new GameState();
+		assertEquals(20, Perft.perft(s, 1));
+		assertEquals(400, Perft.perft(s, 2));
+		assertEquals(8902, Perft.perft(s, 3));
+	}
+
+	@Test
+	public void singleThreadWithoutHashTable() throws InterruptedException
+	{
+		Perft perft = new Perft(logger, new GameState(), 3, 1, 0, false);
+		perft.runImpl();
+		assertEquals(8902, perft.getNodeCount());
+	}
+
+	@Test
+	public void multipleThreadsWithHashTable() throws InterruptedException
+	{
+		// http://chessprogramming.wikispaces.com/Perft+Results (Position 4)
+		GameState s = new GameState("Kg1 Qd1 Ra1 Rf1 Ba4 Bb4 Nf3 Nh6 a2 a7 b5 c4 d2 e4 g2 h2",
+				"Ke8 Qa3 Ra8 Rh8 Bb6 Bg6 Na5 Nf6 b7 b2 c7 d7 f7 g7 h7", Players.WHITE);
+		Perft perft = new Perft(logger, s, 4, 4, 1 << 12, false);
+		perft.runImpl();
+		assertEquals(422333, perft.getNodeCount());
+	}
+
+	@Test
+	public void depthOneCountsLegalMoves() throws InterruptedException
+	{
+		Perft perft = new Perft(logger, new GameState(), 1, 2, 0, false);
+		perft.runImpl();
+		assertEquals(20, perft.getNodeCount());
+	}
+
+	@Test
+	public void divideLogsEveryRootMove() throws InterruptedException
+	{
+		new Perft(logger, new GameState(), 2, 2, 0, false).runImpl();
+		int withoutDivide = messageCount;
+		messageCount = 0;
+		new Perft(logger, new GameState(), 2, 2, 0, true).runImpl();
+		assertEquals(withoutDivide + 20, messageCount);
+	}
+
+	@Test
+	public void originalStateIsNotModified() throws InterruptedException
+	{
+		GameState s = new GameState();
+		GameState s2 = s.clone();
+		new Perft(logger, s, 3, 2, 1 << 10, false).runImpl();
+		assertTrue(s.equals(s2));
+		assertEquals(s2.getId(), s.getId());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void hashSizeMustBePowerOfTwo()
+	{
+		new Perft(logger, new GameState(), 3, 1, 1000, false);
+	}
+}
@@ -0,0 +1,66 @@
+package chess.testing;
+
+import chess.domain.EndgameGenerator;
+import chess.domain.Fen;
+import chess.domain.GameGenerator;
+import chess.domain.GameState;
+import chess.domain.PackedPosition;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class PositionBatchTest
+{
+	private static byte[] write(long seed, long count, boolean binary, int threads)
+			throws IOException, InterruptedException
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		PositionBatch.write(seed, count, binary, threads, out);
+		return out.toByteArray();
+	}
+
+	@Test
+	public void outputDoesNotDependOnThreadCount() throws IOException, InterruptedException
+	{
+		byte[] single = write(7, 10000, true, 1);
+		byte[] parallel = write(7, 10000, true, 3);
+		assertEquals(10000 * PackedPosition.SIZE, single.length);
+		assertTrue(Arrays.equals(single, parallel));
+		assertFalse(Arrays.equals(single, write(8, 10000, true, 3)));
+	}
+
+	@Test
+	public void positionsDependOnlyOnSeedAndIndex() throws IOException, InterruptedException
+	{
+		ByteBuffer buf = ByteBuffer.wrap(write(3, 5000, true, 2));
+		for (int i = 0; i < 5000; ++i) {
+			GameState decoded = PackedPosition.decode(buf);
+			assertEquals(GameGenerator.createGame(3, i).getId(), decoded.getId());
+		}
+		String[] lines = new String(write(3, 5000, false, 2), StandardCharsets.UTF_8).split("\n");
+		assertEquals(5000, lines.length);
+		assertEquals(Fen.toString(GameGenerator.createGame(3, 4321)), lines[4321]);
+	}
+
+	@Test
+	public void indexSeedsAreDistinct()
+	{
+		assertFalse(GameGenerator.getIndexSeed(0, 0) == GameGenerator.getIndexSeed(0, 1));
+		assertFalse(GameGenerator.getIndexSeed(0, 1) == GameGenerator.getIndexSeed(1, 0));
+	}
+
+	@Test
+	public void endgamePositionsUseGivenGenerator() throws IOException, InterruptedException
+	{
+		EndgameGenerator endgames = new EndgameGenerator("KRPvKR");
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		PositionBatch.write(9, 3000, endgames, true, 2, out);
+		ByteBuffer buf = ByteBuffer.wrap(out.toByteArray());
+		for (int i = 0; i < 3000; ++i)
+			assertEquals(endgames.createGame(9, i).getId(), PackedPosition.decode(buf).getId());
+	}
+}